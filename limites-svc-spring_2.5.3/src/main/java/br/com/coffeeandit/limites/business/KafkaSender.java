@@ -1,7 +1,6 @@
 package br.com.coffeeandit.limites.business;
 
 import br.com.coffeeandit.limites.dto.TransactionDTO;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -11,33 +10,39 @@ import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Objects;
+
 
 @Service
 @Transactional
 @Slf4j
 public class KafkaSender {
 
+    public static final String KEY_SEPARATOR = "#";
+    public static final String IDEMPOTENCY_KEY = "X-Idempotency-Key";
 
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
 
     @Value("${app.returnTopic}")
     private String topic;
 
-    private ObjectMapper objectMapper;
+    private TransactionCodec transactionCodec;
 
-    public KafkaSender(final KafkaTemplate kafkaTemplate, final ObjectMapper objectMapper) {
+    public KafkaSender(final KafkaTemplate<String, byte[]> kafkaTemplate, final TransactionCodec transactionCodec) {
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
+        this.transactionCodec = transactionCodec;
     }
 
-    public void send(final TransactionDTO transactionDTO) {
+    // a chave de idempotência do transaction-bff segue no retorno, para o transaction-svc descartar reentregas
+    public void send(final TransactionDTO transactionDTO, final String idempotencyKey) {
         try {
 
-            String payload = objectMapper.writeValueAsString(transactionDTO);
-            Message<String> message = MessageBuilder
+            byte[] payload = transactionCodec.serialize(transactionDTO);
+            Message<byte[]> message = MessageBuilder
                     .withPayload(payload)
                     .setHeader(KafkaHeaders.TOPIC, topic)
-                    .setHeader(KafkaHeaders.PARTITION_ID, 0)
+                    .setHeader(KafkaHeaders.MESSAGE_KEY, messageKey(transactionDTO))
+                    .setHeader(IDEMPOTENCY_KEY, idempotencyKey)
                     .build();
 
             kafkaTemplate.send(message);
@@ -47,4 +52,13 @@ public class KafkaSender {
 
 
     }
-}
\ No newline at end of file
+
+    // mesma chave do transaction-bff: as mensagens de uma conta ficam sempre na mesma partição
+    public static String messageKey(final TransactionDTO transactionDTO) {
+        var conta = transactionDTO.getConta();
+        if (Objects.isNull(conta)) {
+            return null;
+        }
+        return conta.getCodigoAgencia() + KEY_SEPARATOR + conta.getCodigoConta();
+    }
+}
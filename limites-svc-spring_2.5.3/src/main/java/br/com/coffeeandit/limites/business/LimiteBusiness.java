@@ -30,7 +30,7 @@ public class LimiteBusiness {
     private BigDecimal valorTotal;
 
     @NewSpan
-    public void limiteDiario(final TransactionDTO transactionDTO) {
+    public void limiteDiario(final TransactionDTO transactionDTO, final String idempotencyKey) {
         var limiteDiario = limiteDiarioRepository.findByAgenciaAndContaAndData(
                 transactionDTO.getConta().getCodigoAgencia(),
                 transactionDTO.getConta().getCodigoConta(), LocalDate.now());
@@ -62,7 +62,7 @@ public class LimiteBusiness {
             limiteDiario.setValor(limiteDiario.getValor().subtract(transactionDTO.getValor()));
             limiteDiarioRepository.save(limiteDiario);
         }
-        kafkaSender.send(transactionDTO);
+        kafkaSender.send(transactionDTO, idempotencyKey);
 
     }
 }
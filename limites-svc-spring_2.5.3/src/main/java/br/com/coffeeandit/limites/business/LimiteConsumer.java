@@ -1,44 +1,68 @@
 package br.com.coffeeandit.limites.business;
 
 import br.com.coffeeandit.limites.dto.TransactionDTO;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.annotation.PartitionOffset;
-import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Objects;
 
 @Service
 @Slf4j
 public class LimiteConsumer {
 
-    private ObjectMapper objectMapper;
+    public static final String DLT = "limite.kafka.dlt";
+
+    private TransactionCodec transactionCodec;
     private LimiteBusiness limiteBusiness;
+    private MeterRegistry meterRegistry;
 
 
-    public LimiteConsumer(final ObjectMapper objectMapper, final LimiteBusiness limiteBusiness) {
-        this.objectMapper = objectMapper;
+    public LimiteConsumer(final TransactionCodec transactionCodec, final LimiteBusiness limiteBusiness, final MeterRegistry meterRegistry) {
+        this.transactionCodec = transactionCodec;
         this.limiteBusiness = limiteBusiness;
+        this.meterRegistry = meterRegistry;
     }
 
 
+    // falhas seguem para transaction-limites-retry-1000/10000/60000 e depois para transaction-limites-dlt, sem travar a
+    // partição; mensagens inválidas vão direto para o DLT
+    @RetryableTopic(attempts = "4", backoff = @Backoff(delay = 1000, multiplier = 10, maxDelay = 60000),
+            retryTopicSuffix = "-limites-retry", dltTopicSuffix = "-limites-dlt",
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_DELAY_VALUE,
+            exclude = {JsonProcessingException.class, SerializationException.class}, autoCreateTopics = "false")
     @KafkaListener(topics = "${app.topic}")
-    public void onConsume(final String message) {
-        try {
-            log.info("Lendo " + message);
-            TransactionDTO transaction = getTransaction(message);
-            limiteBusiness.limiteDiario(transaction);
-
-        } catch (IOException ioexception) {
-            log.error(ioexception.getMessage());
-        }
+    public void onConsume(final byte[] message,
+                          @Header(value = KafkaSender.IDEMPOTENCY_KEY, required = false) final String idempotencyKey) throws IOException {
+        TransactionDTO transaction = getTransaction(message);
+        log.info("Lendo " + transaction);
+        limiteBusiness.limiteDiario(transaction, idempotencyKey);
+    }
+
+    @DltHandler
+    public void onDeadLetter(final byte[] message, @Header(KafkaHeaders.RECEIVED_TOPIC) final String topic,
+                             @Header(value = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) final byte[] exception) {
+        log.error("Mensagem enviada para o {} após falhar: {} - {}", topic,
+                Objects.nonNull(exception) ? new String(exception, StandardCharsets.UTF_8) : null, Base64.getEncoder().encodeToString(message));
+        meterRegistry.counter(DLT).increment();
     }
 
-    private TransactionDTO getTransaction(String message) throws IOException {
-        TransactionDTO transactionDTO = objectMapper.readValue(message, TransactionDTO.class);
+    // aceita JSON e o formato binário do TransactionCodec
+    private TransactionDTO getTransaction(byte[] message) throws IOException {
+        TransactionDTO transactionDTO = transactionCodec.decode(message);
         transactionDTO.setData(LocalDateTime.now());
         return transactionDTO;
     }
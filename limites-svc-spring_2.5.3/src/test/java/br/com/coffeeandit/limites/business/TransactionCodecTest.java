@@ -0,0 +1,38 @@
+package br.com.coffeeandit.limites.business;
+
+import br.com.coffeeandit.limites.dto.SituacaoEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TransactionCodecTest {
+
+    // a mesma mensagem está nos testes do transaction-bff e do transaction-svc: as três cópias do codec precisam concordar
+    private static final String REFERENCIA = "/kafka/transaction-v1.bin";
+
+    private final TransactionCodec transactionCodec = new TransactionCodec(new ObjectMapper().findAndRegisterModules());
+
+    @Test
+    @DisplayName("Mensagem de referência, compartilhada com o transaction-bff e o transaction-svc.")
+    public void testMensagemDeReferencia() throws Exception {
+        var referencia = Objects.requireNonNull(getClass().getResourceAsStream(REFERENCIA)).readAllBytes();
+
+        var decoded = transactionCodec.decode(referencia);
+
+        assertThat(decoded.getUui(), is(UUID.fromString("5d3c1a7e-8b2f-4c6d-9e0a-1f2b3c4d5e6f")));
+        assertThat(decoded.getValor(), is(new BigDecimal("1234.56")));
+        assertThat(decoded.getData(), is(LocalDateTime.of(2021, 7, 20, 10, 15, 30, 123_000_000)));
+        assertThat(decoded.getConta().getCodigoConta(), is(1242L));
+        assertThat(decoded.getBeneficiario().getNomeFavorecido(), is("João da Silva"));
+        assertThat(decoded.getSituacao(), is(SituacaoEnum.ANALISADA));
+        assertThat(TransactionCodec.encode(decoded), is(referencia));
+    }
+}
@@ -5,6 +5,7 @@ import br.com.coffeeandit.transaction.events.dto.RequisicaoTransacaoDTO;
 import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
 import br.com.coffeeandit.transaction.events.kafka.KafkaSender;
 import br.com.coffeeandit.transaction.exception.InfrastructureException;
+import br.com.coffeeandit.transaction.exception.ServiceUnavailableException;
 import br.com.coffeeandit.transaction.http.TransactionHttpService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -25,6 +26,8 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
 import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
 
 @RestController
 @Slf4j
@@ -33,6 +36,8 @@ import java.time.Duration;
 @Tag(name = "/v1/transactions", description = "Grupo de API's para manipulação de transações financeiras")
 public class TransactionController {
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     @Value("${app.timeout}")
     private int timeout;
     @Value("${app.retries}")
@@ -52,19 +57,21 @@ public class TransactionController {
             @ApiResponse(responseCode = "401", description = "Erro de autenticação dessa API"),
             @ApiResponse(responseCode = "403", description = "Erro de autorização dessa API"),
             @ApiResponse(responseCode = "404", description = "Recurso não encontrado")})
-    public Mono<TransactionDTO> save( @Valid @RequestBody RequisicaoTransacaoDTO transactionDTO) {
-
-        return Mono.just(
-                        kafkaSender.send(transactionDTO)
+    public Mono<TransactionDTO> save(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) final String idempotencyKey,
+                                     @Valid @RequestBody RequisicaoTransacaoDTO transactionDTO) {
 
-                ).timeout(Duration.ofSeconds(timeout))
+        // a chave é definida uma vez por requisição, e as novas tentativas não geram uma segunda transação
+        var chave = Objects.nonNull(idempotencyKey) ? idempotencyKey : UUID.randomUUID().toString();
+        return Mono.defer(() -> kafkaSender.send(transactionDTO, chave))
+                .timeout(Duration.ofSeconds(timeout))
                 .doOnSuccess(result -> {
                     log.info(String.format("Property sended.: %s", result.toString()));
                 })
                 .doOnError(throwable -> {
                     log.error(throwable.getLocalizedMessage());
-                    throw new InfrastructureException(throwable);
-
+                    if (!(throwable instanceof ServiceUnavailableException)) {
+                        throw new InfrastructureException(throwable);
+                    }
                 })
                 .doFinally(signalType -> {
                     log.info(String.format("Finally.: %s", signalType.toString()));
@@ -83,18 +90,18 @@ public class TransactionController {
     @Parameters({@Parameter(in = ParameterIn.PATH, description = "Hash da Transação", name = "id"),
             @Parameter(in = ParameterIn.QUERY, description = "Status da Transação", name = "situacao")
     })
-    public ResponseEntity patch( @PathVariable("id") String uuid, @Valid @RequestBody AlteracaoSituacaoDTO alteracaoSituacaoDTO) {
-        transactionHttpService.alterarSituacao(uuid, alteracaoSituacaoDTO);
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    public Mono<ResponseEntity<Object>> patch( @PathVariable("id") String uuid, @Valid @RequestBody AlteracaoSituacaoDTO alteracaoSituacaoDTO) {
+        return transactionHttpService.alterarSituacao(uuid, alteracaoSituacaoDTO)
+                .thenReturn(ResponseEntity.status(HttpStatus.NO_CONTENT).build());
 
     }
 
     @Operation(description = "API para remover as transações persistidas", security = @SecurityRequirement(name = "bearerAuth"))
     @DeleteMapping(value = "/transactions/{id}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity deleteById(@PathVariable("id") String uuid, @RequestHeader(name = "content-type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType) {
+    public Mono<ResponseEntity<Object>> deleteById(@PathVariable("id") String uuid, @RequestHeader(name = "content-type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType) {
 
-        transactionHttpService.removeById(uuid);
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        return transactionHttpService.removeById(uuid)
+                .thenReturn(ResponseEntity.status(HttpStatus.NO_CONTENT).build());
     }
 
     private void changeStatusUnanalyzed(TransactionDTO transactionDTO) {
@@ -124,7 +131,7 @@ public class TransactionController {
     @GetMapping(value = "/transactions/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
     @Parameters(@Parameter(in = ParameterIn.PATH, description = "Id da transação", name = "id"))
     public Mono<TransactionDTO> findById( @PathVariable("id") String uuid) {
-        return Mono.just(transactionHttpService.findById(uuid));
+        return transactionHttpService.findById(uuid);
     }
 
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -25,6 +26,12 @@ import reactor.core.publisher.Mono;
 import javax.validation.Valid;
 import java.io.FileNotFoundException;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static br.com.coffeeandit.transaction.api.TransactionController.IDEMPOTENCY_KEY_HEADER;
 
 @RestController
 @Slf4j
@@ -54,12 +61,13 @@ public class TransactionControllerV2 {
             @ApiResponse(responseCode = "401", description = "Erro de autenticação dessa API"),
             @ApiResponse(responseCode = "403", description = "Erro de autorização dessa API"),
             @ApiResponse(responseCode = "404", description = "Recurso não encontrado")})
-    public Mono<TransactionDTO> save( @Valid @RequestBody RequisicaoTransacaoDTO transactionDTO) {
-
-        return Mono.just(
-                        kafkaSender.send(transactionDTO)
+    public Mono<TransactionDTO> save(@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) final String idempotencyKey,
+                                     @Valid @RequestBody RequisicaoTransacaoDTO transactionDTO) {
 
-                ).timeout(Duration.ofSeconds(timeout))
+        // a chave é definida uma vez por requisição, e as novas tentativas não geram uma segunda transação
+        var chave = Objects.nonNull(idempotencyKey) ? idempotencyKey : UUID.randomUUID().toString();
+        return Mono.defer(() -> kafkaSender.send(transactionDTO, chave))
+                .timeout(Duration.ofSeconds(timeout))
                 .doOnSuccess(result -> {
                     log.info(String.format("Property sended.: %s", result.toString()));
                 })
@@ -79,21 +87,21 @@ public class TransactionControllerV2 {
             @ApiResponse(responseCode = "401", description = "Erro de autenticação dessa API"),
             @ApiResponse(responseCode = "403", description = "Erro de autorização dessa API"),
             @ApiResponse(responseCode = "404", description = "Recurso não encontrado")})
-    public ResponseEntity patch( @PathVariable("id") String uuid, @RequestParam SituacaoEnum situacao,
+    public Mono<ResponseEntity<Object>> patch( @PathVariable("id") String uuid, @RequestParam SituacaoEnum situacao,
                                 @RequestHeader(name = "content-type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType
 
     ) {
-        transactionHttpService.alterarSituacao(uuid, situacao);
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        return transactionHttpService.alterarSituacao(uuid, situacao)
+                .thenReturn(ResponseEntity.status(HttpStatus.NO_CONTENT).build());
 
     }
 
     @Operation(description = "API para remover as transações persistidas", security = @SecurityRequirement(name = "bearerAuth"))
     @DeleteMapping(value = "/transactions/{id}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity deleteById( @PathVariable("id") String uuid, @RequestHeader(name = "content-type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType) {
+    public Mono<ResponseEntity<Object>> deleteById( @PathVariable("id") String uuid, @RequestHeader(name = "content-type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType) {
 
-        transactionHttpService.removeById(uuid);
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        return transactionHttpService.removeById(uuid)
+                .thenReturn(ResponseEntity.status(HttpStatus.NO_CONTENT).build());
     }
 
     private void changeStatusUnanalyzed(TransactionDTO transactionDTO) {
@@ -115,6 +123,45 @@ public class TransactionControllerV2 {
 
     }
 
+    @Operation(description = "API para consultar o histórico de transações da conta por período, repassado à medida que é lido", security = @SecurityRequirement(name = "bearerAuth"))
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Transações do período; o header X-Continuation-Token indica a próxima página."),
+            @ApiResponse(responseCode = "401", description = "Erro de autenticação dessa API"),
+            @ApiResponse(responseCode = "403", description = "Erro de autorização dessa API"),
+            @ApiResponse(responseCode = "422", description = "Período ou token de continuação inválido")})
+    @Parameters({@Parameter(in = ParameterIn.QUERY, description = "Número da Conta", name = "conta"),
+            @Parameter(in = ParameterIn.QUERY, description = "Número da Agência", name = "agencia"),
+            @Parameter(in = ParameterIn.QUERY, description = "Início do período", name = "from", example = "2021-08-01T00:00:00"),
+            @Parameter(in = ParameterIn.QUERY, description = "Fim do período", name = "to", example = "2021-08-31T23:59:59"),
+            @Parameter(in = ParameterIn.QUERY, description = "Quantidade máxima de transações por página", name = "limit"),
+            @Parameter(in = ParameterIn.QUERY, description = "Token de continuação da página anterior", name = "cursor")})
+    @GetMapping(value = "/transactions/history", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Flux<TransactionDTO>>> queryHistory(
+            @RequestParam("conta") final Long conta, @RequestParam("agencia") final Long agencia,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime to,
+            @RequestParam(value = "limit", required = false) final Integer limit,
+            @RequestParam(value = "cursor", required = false) final String cursor
+    ) {
+        return transactionHttpService.queryHistory(agencia, conta, from, to, limit, cursor)
+                .map(history -> {
+                    var response = ResponseEntity.ok();
+                    if (Objects.nonNull(history.getCursor())) {
+                        response.header(TransactionHttpService.CONTINUATION_TOKEN, history.getCursor());
+                    }
+                    return response.body(history.getTransactions());
+                });
+    }
+
+    @Operation(description = "API para buscar várias transações pelo Id em uma única chamada ao transaction-svc", security = @SecurityRequirement(name = "bearerAuth"))
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Retorno OK com as transações encontradas."),
+            @ApiResponse(responseCode = "401", description = "Erro de autenticação dessa API"),
+            @ApiResponse(responseCode = "403", description = "Erro de autorização dessa API")})
+    @Parameters(@Parameter(in = ParameterIn.QUERY, description = "Ids das transações separados por vírgula", name = "ids"))
+    @GetMapping(value = "/transactions", params = "ids", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<TransactionDTO> findByIds(@RequestParam("ids") final List<String> uuids) {
+        return transactionHttpService.findByIds(uuids);
+    }
+
     @Operation(description = "API para buscar  transações pelo Id", security = @SecurityRequirement(name = "bearerAuth"))
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Retorno OK com a transação encontrada."),
             @ApiResponse(responseCode = "401", description = "Erro de autenticação dessa API"),
@@ -124,6 +171,6 @@ public class TransactionControllerV2 {
     @Parameters(@Parameter(in = ParameterIn.PATH, description = "Id da transação", name = "id"))
     @GetMapping(value = "/transactions/{id}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     public Mono<TransactionDTO> findById( @PathVariable("id") String uuid, @RequestHeader(name = "content-type", defaultValue = MediaType.APPLICATION_JSON_VALUE) String contentType) {
-        return Mono.just(transactionHttpService.findById(uuid));
+        return transactionHttpService.findById(uuid);
     }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package br.com.coffeeandit.transaction.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+@Configuration
+public class RedisConfiguration {
+
+    // os valores já chegam serializados pelo TransactionCodec
+    @Bean
+    public ReactiveRedisTemplate<String, byte[]> transactionRedisTemplate(final ReactiveRedisConnectionFactory connectionFactory) {
+        var context = RedisSerializationContext.<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, context);
+    }
+}
@@ -0,0 +1,55 @@
+package br.com.coffeeandit.transaction.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP não bloqueante para o transaction-svc. O pool é limitado: acima de {@code maxConnections} as chamadas
+ * aguardam na fila até {@code pendingAcquireTimeout}, e a fila também tem tamanho máximo. As métricas do pool ficam em
+ * {@code reactor.netty.connection.provider.*} e a latência por URI em {@code http.client.requests}.
+ */
+@Configuration
+public class WebClientConfiguration {
+
+    public static final String POOL_NAME = "transaction-svc";
+
+    @Value("${app.webclient.maxConnections}")
+    private int maxConnections;
+    @Value("${app.webclient.pendingAcquireMaxCount}")
+    private int pendingAcquireMaxCount;
+    @Value("${app.webclient.pendingAcquireTimeout}")
+    private Duration pendingAcquireTimeout;
+    @Value("${app.webclient.maxIdleTime}")
+    private Duration maxIdleTime;
+    @Value("${app.webclient.connectTimeout}")
+    private Duration connectTimeout;
+    @Value("${app.webclient.responseTimeout}")
+    private Duration responseTimeout;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider transactionConnectionProvider() {
+        return ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient transactionWebClient(final WebClient.Builder builder, final ConnectionProvider transactionConnectionProvider) {
+        var httpClient = HttpClient.create(transactionConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout);
+        return builder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    }
+}
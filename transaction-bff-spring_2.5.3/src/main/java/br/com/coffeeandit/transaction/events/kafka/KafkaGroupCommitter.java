@@ -0,0 +1,128 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Group commit dos envios ao Kafka: os envios que chegam dentro da janela {@code window} (até {@code maxBatchSize}) vão
+ * juntos em uma única transação, e o Mono de cada envio termina quando essa transação é confirmada. Falhando o commit, a
+ * transação é abortada e todos os envios do grupo recebem o erro.
+ * <p>
+ * Até {@code concurrency} transações ficam abertas ao mesmo tempo, cada uma com um producer do pool do
+ * {@code DefaultKafkaProducerFactory} (transactional ids {@code transaction-id-prefix} + número).
+ */
+@Component
+@Slf4j
+public class KafkaGroupCommitter {
+
+    public static final String COMMITS = "transaction.kafka.producer.group.commits";
+    public static final String GROUP_SIZE = "transaction.kafka.producer.group.size";
+    public static final String COMMIT_LATENCY = "transaction.kafka.producer.group.commit.latency";
+    public static final String RESULT = "result";
+    private static final String ENCERRADO = "Envio de transações encerrado.";
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Sinks.Many<Pending> pending = Sinks.many().unicast().onBackpressureBuffer();
+
+    @Value("${app.kafka.producer.groupCommit.window}")
+    private Duration window;
+    @Value("${app.kafka.producer.groupCommit.maxBatchSize}")
+    private int maxBatchSize;
+    @Value("${app.kafka.producer.groupCommit.concurrency}")
+    private int concurrency;
+
+    private DistributionSummary groupSize;
+    private Timer commitLatency;
+    private volatile boolean closed;
+
+    public KafkaGroupCommitter(final KafkaTemplate<String, byte[]> kafkaTemplate, final MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        groupSize = DistributionSummary.builder(GROUP_SIZE)
+                .description("Envios por transação do Kafka")
+                .register(meterRegistry);
+        commitLatency = meterRegistry.timer(COMMIT_LATENCY);
+        pending.asFlux()
+                .bufferTimeout(maxBatchSize, window)
+                .flatMap(this::commit, concurrency)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        closed = true;
+        // o complete envia o último grupo da janela antes de encerrar
+        pending.tryEmitComplete();
+    }
+
+    public Mono<Void> send(final Message<byte[]> message) {
+        return Mono.defer(() -> {
+            if (closed) {
+                return Mono.error(new IllegalStateException(ENCERRADO));
+            }
+            var envio = new Pending(message);
+            try {
+                // várias threads do event loop emitem ao mesmo tempo
+                pending.emitNext(envio, (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+            } catch (Sinks.EmissionException e) {
+                // destroy() concorrente: o sink já foi completado
+                return Mono.error(new IllegalStateException(ENCERRADO, e));
+            }
+            return envio.result.asMono();
+        });
+    }
+
+    private Mono<Void> commit(final List<Pending> grupo) {
+        groupSize.record(grupo.size());
+        var sample = Timer.start(meterRegistry);
+        // o commit bloqueia até o ack de todos os envios do grupo
+        return Mono.fromCallable(() -> kafkaTemplate.executeInTransaction(operations -> {
+                    for (var envio : grupo) {
+                        operations.send(envio.message);
+                    }
+                    return grupo.size();
+                }))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnSuccess(enviados -> {
+                    sample.stop(commitLatency);
+                    meterRegistry.counter(COMMITS, RESULT, "success").increment();
+                    grupo.forEach(envio -> envio.result.tryEmitEmpty());
+                })
+                .doOnError(throwable -> {
+                    meterRegistry.counter(COMMITS, RESULT, "failure").increment();
+                    log.error("Transação abortada com {} envios: {}", grupo.size(), throwable.getMessage());
+                    grupo.forEach(envio -> envio.result.tryEmitError(throwable));
+                })
+                .onErrorResume(throwable -> Mono.empty())
+                .then();
+    }
+
+    private static class Pending {
+
+        private final Message<byte[]> message;
+        private final Sinks.Empty<Void> result = Sinks.empty();
+
+        Pending(final Message<byte[]> message) {
+            this.message = message;
+        }
+    }
+}
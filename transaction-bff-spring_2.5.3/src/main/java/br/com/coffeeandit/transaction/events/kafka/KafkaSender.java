@@ -1,67 +1,86 @@
 package br.com.coffeeandit.transaction.events.kafka;
 
 import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import br.com.coffeeandit.transaction.exception.ServiceUnavailableException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 import java.util.UUID;
 
 
 @Service
-@Transactional
 @Slf4j
 public class KafkaSender {
 
-    public static final String
-            HEADER_VALUE = "999";
+    public static final String KEY_SEPARATOR = "#";
+    public static final String IDEMPOTENCY_KEY = "X-Idempotency-Key";
 
 
     @Value("${app.topic}")
     private String topic;
 
-    public KafkaSender(ObjectMapper objectMapper, KafkaTemplate<String, String> kafkaTemplate) {
-        this.objectMapper = objectMapper;
-        this.kafkaTemplate = kafkaTemplate;
+    public KafkaSender(TransactionCodec transactionCodec, KafkaGroupCommitter kafkaGroupCommitter,
+                       KafkaSendMetrics kafkaSendMetrics) {
+        this.transactionCodec = transactionCodec;
+        this.kafkaGroupCommitter = kafkaGroupCommitter;
+        this.kafkaSendMetrics = kafkaSendMetrics;
     }
 
-    private ObjectMapper objectMapper;
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private TransactionCodec transactionCodec;
+    private KafkaGroupCommitter kafkaGroupCommitter;
+    private KafkaSendMetrics kafkaSendMetrics;
 
-    public TransactionDTO send(final TransactionDTO transactionDTO) {
+    /**
+     * Envia sem bloquear: o Mono termina com o commit da transação do Kafka que levou o envio, dividida com os envios
+     * simultâneos (ver {@link KafkaGroupCommitter}). Com o buffer do producer quase cheio o envio é recusado, em vez de
+     * bloquear a thread até o {@code max.block.ms}.
+     */
+    public Mono<TransactionDTO> send(final TransactionDTO transactionDTO, final String idempotencyKey) {
 
 
-        transactionDTO.setUui(getId());
+        // o mesmo uui em todas as tentativas de envio da mesma requisição
+        transactionDTO.setUui(getId(idempotencyKey));
 
+        if (kafkaSendMetrics.saturated()) {
+            return Mono.error(new ServiceUnavailableException("Envio de transações temporariamente indisponível."));
+        }
 
         try {
 
-            String payload = objectMapper.writeValueAsString(transactionDTO);
-            Message<String> message = MessageBuilder
+            byte[] payload = transactionCodec.serialize(transactionDTO);
+            Message<byte[]> message = MessageBuilder
                     .withPayload(payload)
                     .setHeader(KafkaHeaders.TOPIC, topic)
-                    .setHeader(KafkaHeaders.MESSAGE_KEY, HEADER_VALUE)
-                    .setHeader(KafkaHeaders.PARTITION_ID, 0)
+                    .setHeader(KafkaHeaders.MESSAGE_KEY, messageKey(transactionDTO))
                     .setHeader("X-CoffeeAndIT-Header", "transaction" + transactionDTO.getUui())
+                    .setHeader(IDEMPOTENCY_KEY, idempotencyKey)
                     .build();
 
-            kafkaTemplate.send(message);
+            return kafkaGroupCommitter.send(message)
+                    .thenReturn(transactionDTO);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            return Mono.error(e);
         }
+    }
 
-
-        return transactionDTO;
+    // a chave por agência/conta mantém a ordem das transações da conta e distribui as contas entre as partições
+    public static String messageKey(final TransactionDTO transactionDTO) {
+        var conta = transactionDTO.getConta();
+        if (Objects.isNull(conta)) {
+            return null;
+        }
+        return conta.getCodigoAgencia() + KEY_SEPARATOR + conta.getCodigoConta();
     }
 
-    private UUID getId() {
-        return UUID.randomUUID();
+    private UUID getId(final String idempotencyKey) {
+        return UUID.nameUUIDFromBytes(idempotencyKey.getBytes(StandardCharsets.UTF_8));
     }
 }
\ No newline at end of file
@@ -42,6 +42,7 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
         httpStatus = domainBusinessException(throwable, errorDetails, httpStatus);
         httpStatus = infrastructureException(throwable, errorDetails, httpStatus);
         httpStatus = resourceNotFoundException(throwable, errorDetails, httpStatus);
+        httpStatus = serviceUnavailable(throwable, httpStatus);
 
         serverWebExchange.getResponse().setStatusCode(httpStatus);
         serverWebExchange.getResponse().getHeaders().setContentType(MediaType.TEXT_PLAIN);
@@ -85,6 +86,14 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
         return httpStatus;
     }
 
+    // o cliente deve tentar de novo mais tarde, com a mesma Idempotency-Key
+    protected HttpStatus serviceUnavailable(Throwable throwable, HttpStatus httpStatus) {
+        if (throwable instanceof ServiceUnavailableException) {
+            httpStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        return httpStatus;
+    }
+
     protected HttpStatus constraintViolation(Throwable throwable, ErrorDetails errorDetails, HttpStatus httpStatus) {
         if (throwable instanceof WebExchangeBindException) {
             var webExchangeBindException = (WebExchangeBindException) throwable;
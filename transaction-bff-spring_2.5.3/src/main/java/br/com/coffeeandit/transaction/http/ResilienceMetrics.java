@@ -0,0 +1,59 @@
+package br.com.coffeeandit.transaction.http;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Conta as transições de estado dos circuit breakers e as chamadas recusadas pelo bulkhead. O estado atual e as chamadas
+ * recusadas com o circuito aberto já vêm do resilience4j ({@code resilience4j.circuitbreaker.state},
+ * {@code resilience4j.circuitbreaker.not.permitted.calls}).
+ */
+@Component
+@Log4j2
+public class ResilienceMetrics {
+
+    public static final String TRANSITIONS = "transaction.bff.circuitbreaker.transitions";
+    public static final String BULKHEAD_REJECTED = "transaction.bff.bulkhead.rejected";
+    public static final String NAME = "name";
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public ResilienceMetrics(final CircuitBreakerRegistry circuitBreakerRegistry, final BulkheadRegistry bulkheadRegistry,
+                             final MeterRegistry meterRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(this::register);
+        circuitBreakerRegistry.getEventPublisher().onEntryAdded(event -> register(event.getAddedEntry()));
+        bulkheadRegistry.getAllBulkheads().forEach(this::register);
+        bulkheadRegistry.getEventPublisher().onEntryAdded(event -> register(event.getAddedEntry()));
+    }
+
+    private void register(final CircuitBreaker circuitBreaker) {
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            var transition = event.getStateTransition();
+            log.warn("Circuit breaker {} passou de {} para {}", event.getCircuitBreakerName(),
+                    transition.getFromState(), transition.getToState());
+            meterRegistry.counter(TRANSITIONS, NAME, event.getCircuitBreakerName(),
+                    "from", transition.getFromState().name(), "to", transition.getToState().name()).increment();
+        });
+    }
+
+    private void register(final Bulkhead bulkhead) {
+        bulkhead.getEventPublisher().onCallRejected(event ->
+                meterRegistry.counter(BULKHEAD_REJECTED, NAME, event.getBulkheadName()).increment());
+    }
+}
@@ -0,0 +1,125 @@
+package br.com.coffeeandit.transaction.http;
+
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.exception.NotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Busca de transações por Id com coalescência: buscas simultâneas do mesmo Id dividem a mesma chamada ao transaction-svc,
+ * e Ids diferentes que chegam dentro da janela {@code batchWindow} vão juntos em uma única chamada de até
+ * {@code maxBatchSize} Ids.
+ */
+@Log4j2
+class SingleFlightLookup {
+
+    public static final String REQUESTS = "transaction.bff.lookup.requests";
+    public static final String COALESCED = "transaction.bff.lookup.coalesced";
+    public static final String UPSTREAM_CALLS = "transaction.bff.lookup.upstream.calls";
+    public static final String BATCH_SIZE = "transaction.bff.lookup.batch.size";
+    public static final String COALESCING_RATIO = "transaction.bff.lookup.coalescing.ratio";
+    public static final int CONCURRENT_BATCHES = 16;
+
+    private final Map<String, Sinks.One<TransactionDTO>> inFlight = new ConcurrentHashMap<>();
+    private final Sinks.Many<String> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final Function<List<String>, Flux<TransactionDTO>> fetch;
+    private final Counter requests;
+    private final Counter coalesced;
+    private final Counter upstreamCalls;
+    private final DistributionSummary batchSize;
+    private final Disposable subscription;
+
+    SingleFlightLookup(final Function<List<String>, Flux<TransactionDTO>> fetch, final Duration batchWindow,
+                       final int maxBatchSize, final MeterRegistry meterRegistry) {
+        this.fetch = fetch;
+        this.requests = meterRegistry.counter(REQUESTS);
+        this.coalesced = meterRegistry.counter(COALESCED);
+        this.upstreamCalls = meterRegistry.counter(UPSTREAM_CALLS);
+        this.batchSize = DistributionSummary.builder(BATCH_SIZE)
+                .description("Ids por chamada ao transaction-svc")
+                .register(meterRegistry);
+        Gauge.builder(COALESCING_RATIO, this, SingleFlightLookup::coalescingRatio)
+                .description("Buscas atendidas por chamada ao transaction-svc")
+                .register(meterRegistry);
+        this.subscription = pending.asFlux()
+                .bufferTimeout(maxBatchSize, batchWindow)
+                .flatMap(this::flush, CONCURRENT_BATCHES)
+                .subscribe();
+    }
+
+    Mono<TransactionDTO> find(final String uuid) {
+        requests.increment();
+        var criado = new AtomicBoolean();
+        var sink = inFlight.computeIfAbsent(uuid, id -> {
+            criado.set(true);
+            return Sinks.one();
+        });
+        if (criado.get()) {
+            // várias threads do event loop emitem ao mesmo tempo
+            pending.emitNext(uuid, (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+        } else {
+            coalesced.increment();
+        }
+        return sink.asMono();
+    }
+
+    void dispose() {
+        subscription.dispose();
+    }
+
+    private Mono<Void> flush(final List<String> uuids) {
+        upstreamCalls.increment();
+        batchSize.record(uuids.size());
+        return fetch.apply(uuids)
+                .collectMap(transaction -> normalize(transaction.getUui().toString()))
+                .doOnNext(found -> complete(uuids, found))
+                .doOnError(throwable -> fail(uuids, throwable))
+                .onErrorResume(throwable -> Mono.empty())
+                .then();
+    }
+
+    private void complete(final List<String> uuids, final Map<String, TransactionDTO> found) {
+        for (var uuid : uuids) {
+            // sai do mapa antes de emitir: quem chegar depois faz uma nova busca
+            var sink = inFlight.remove(uuid);
+            var transaction = found.get(normalize(uuid));
+            if (transaction != null) {
+                sink.tryEmitValue(transaction);
+            } else {
+                sink.tryEmitError(new NotFoundException(String.format("Não foi possivel encontrar a transação %s", uuid)));
+            }
+        }
+    }
+
+    private void fail(final List<String> uuids, final Throwable throwable) {
+        log.warn("Falha na busca de {} transações: {}", uuids.size(), throwable.getMessage());
+        for (var uuid : uuids) {
+            inFlight.remove(uuid).tryEmitError(throwable);
+        }
+    }
+
+    private double coalescingRatio() {
+        var calls = upstreamCalls.count();
+        return calls > 0 ? requests.count() / calls : 0;
+    }
+
+    private static String normalize(final String uuid) {
+        return uuid.toLowerCase(Locale.ROOT);
+    }
+}
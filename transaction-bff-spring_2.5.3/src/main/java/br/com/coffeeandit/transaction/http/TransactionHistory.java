@@ -0,0 +1,15 @@
+package br.com.coffeeandit.transaction.http;
+
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import reactor.core.publisher.Flux;
+
+@Getter
+@AllArgsConstructor
+public class TransactionHistory {
+
+    // token de continuação repassado pelo transaction-svc; nulo na última página
+    private final String cursor;
+    private final Flux<TransactionDTO> transactions;
+}
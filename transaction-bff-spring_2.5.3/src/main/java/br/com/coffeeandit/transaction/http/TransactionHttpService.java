@@ -3,38 +3,73 @@ package br.com.coffeeandit.transaction.http;
 import br.com.coffeeandit.transaction.events.AlteracaoSituacaoDTO;
 import br.com.coffeeandit.transaction.events.dto.SituacaoEnum;
 import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.exception.DomainBusinessException;
 import br.com.coffeeandit.transaction.exception.InfrastructureException;
 import br.com.coffeeandit.transaction.exception.NotFoundException;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import br.com.coffeeandit.transaction.exception.ServiceUnavailableException;
+import br.com.coffeeandit.transaction.infrastructure.AccountTransactionsCache;
+import br.com.coffeeandit.transaction.infrastructure.TransactionCache;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
 
-import javax.validation.constraints.NotNull;
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
+/**
+ * Chamadas ao transaction-svc pelo {@link WebClient} do pool configurado em
+ * {@link br.com.coffeeandit.transaction.config.WebClientConfiguration}; nenhuma bloqueia o event loop. As listas em
+ * NDJSON são decodificadas à medida que chegam.
+ * <p>
+ * Cada operação tem o seu circuit breaker ({@link #FIND_BY_ID}, {@link #QUERY}, {@link #PATCH}, {@link #DELETE}) e todas
+ * dividem o bulkhead {@link #BULKHEAD}, que limita as chamadas simultâneas. Com o circuito aberto ou o bulkhead cheio a
+ * chamada falha na hora com {@link ServiceUnavailableException} (503), sem esperar pelo transaction-svc.
+ * <p>
+ * As buscas por Id que não estão no cache passam pelo {@link SingleFlightLookup}, e as listas por conta pelo
+ * {@link AccountTransactionsCache}.
+ */
 @Service
 @Log4j2
 public class TransactionHttpService {
 
-    public static final String ACCEPT = "accept";
-    private final HttpClient httpClient = HttpClient.newBuilder()
-            .version(HttpClient.Version.HTTP_2)
-            .build();
+    public static final int MAX_BATCH_GET = 100;
+    public static final String CONTINUATION_TOKEN = "X-Continuation-Token";
+    public static final String FIND_BY_ID = "findById";
+    public static final String QUERY = "query";
+    public static final String PATCH = "patch";
+    public static final String DELETE = "delete";
+    public static final String BULKHEAD = "transaction-svc";
 
-    private ObjectMapper objectMapper;
+    private final WebClient webClient;
+    private final TransactionCache transactionCache;
+    private final AccountTransactionsCache accountTransactionsCache;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Bulkhead bulkhead;
+    private final MeterRegistry meterRegistry;
+    private SingleFlightLookup singleFlightLookup;
 
     @Value("${app.urlTransaction}")
     private String queryTransaction;
@@ -42,134 +77,213 @@ public class TransactionHttpService {
     @Value("${app.urlTransactionById}")
     private String urlTransactionById;
 
+    @Value("${app.urlTransactionBatchGet}")
+    private String urlTransactionBatchGet;
 
-    public TransactionHttpService(final ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    @Value("${app.urlTransactionHistory}")
+    private String urlTransactionHistory;
+
+    // as consultas de uma transação respondem rápido; as listas usam o responseTimeout do cliente
+    @Value("${app.webclient.lookupTimeout}")
+    private Duration lookupTimeout;
+
+    @Value("${app.lookup.batchWindow}")
+    private Duration batchWindow;
+
+    @Value("${app.lookup.maxBatchSize}")
+    private int maxBatchSize;
+
+
+    public TransactionHttpService(final WebClient transactionWebClient, final TransactionCache transactionCache,
+                                  final AccountTransactionsCache accountTransactionsCache,
+                                  final CircuitBreakerRegistry circuitBreakerRegistry, final BulkheadRegistry bulkheadRegistry,
+                                  final MeterRegistry meterRegistry) {
+        this.webClient = transactionWebClient;
+        this.transactionCache = transactionCache;
+        this.accountTransactionsCache = accountTransactionsCache;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkhead = bulkheadRegistry.bulkhead(BULKHEAD);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        // um Id sozinho na janela vai pelo GET por Id
+        singleFlightLookup = new SingleFlightLookup(uuids -> protect(FIND_BY_ID, uuids.size() == 1
+                ? fetchById(uuids.get(0)).flux()
+                : batchGet(uuids)), batchWindow, Math.min(maxBatchSize, MAX_BATCH_GET), meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        singleFlightLookup.dispose();
     }
 
     public Flux<TransactionDTO> queryTransactionBlock(
             final Long conta, final Long agencia
     ) {
-        return Flux.fromIterable(queryTransaction(agencia, conta))
-                .limitRate(100).cache(Duration.ofSeconds(3));
+        return accountTransactionsCache.get(agencia, conta, () -> fetchAccount(conta, agencia))
+                .switchIfEmpty(Flux.error(() -> new NotFoundException(
+                        String.format("Não foi possivel encontrar dados para agência %s e conta %s", agencia, conta))));
+    }
+
+    private Flux<TransactionDTO> fetchAccount(final Long conta, final Long agencia) {
+        return webClient.get()
+                .uri(String.format(queryTransaction, agencia, conta))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .onStatus(status -> status != HttpStatus.OK, response -> infrastructure(response,
+                        "Não foi possivel consultar as transações, status %d"))
+                .bodyToFlux(TransactionDTO.class)
+                .onErrorMap(WebClientRequestException.class, InfrastructureException::new)
+                .transformDeferred(call -> protect(QUERY, call));
     }
 
-    @Cacheable(value = "transactions", key = "#uuid")
-    public TransactionDTO findById(String uuid) {
+    public Mono<TransactionHistory> queryHistory(final Long agencia, final Long conta, final LocalDateTime from,
+                                                 final LocalDateTime to, final Integer limit, final String cursor) {
+        var urlTransaction = UriComponentsBuilder.fromHttpUrl(String.format(urlTransactionHistory, agencia, conta, from, to));
+        if (Objects.nonNull(limit)) {
+            urlTransaction.queryParam("limit", limit);
+        }
+        if (Objects.nonNull(cursor)) {
+            urlTransaction.queryParam("cursor", cursor);
+        }
+        var uri = urlTransaction.encode().build().toUri();
+        log.info("Consultando o histórico de {}", uri);
+
+        return webClient.get()
+                .uri(uri)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .onStatus(status -> status == HttpStatus.BAD_REQUEST, response -> response.releaseBody()
+                        .then(Mono.error(new DomainBusinessException("Período ou token de continuação inválido"))))
+                .onStatus(status -> status != HttpStatus.OK, response -> infrastructure(response,
+                        "Não foi possivel consultar o histórico, status %d"))
+                .toEntityFlux(TransactionDTO.class)
+                .map(response -> new TransactionHistory(response.getHeaders().getFirst(CONTINUATION_TOKEN),
+                        Objects.requireNonNull(response.getBody())))
+                .onErrorMap(WebClientRequestException.class, InfrastructureException::new)
+                .transformDeferred(call -> protect(QUERY, call));
+    }
+
+    public Mono<TransactionDTO> findById(final String uuid) {
+        return transactionCache.get(uuid)
+                .switchIfEmpty(Mono.defer(() -> singleFlightLookup.find(uuid))
+                        .flatMap(transaction -> transactionCache.put(uuid, transaction).thenReturn(transaction)));
+    }
+
+    private Mono<TransactionDTO> fetchById(final String uuid) {
         var urlTransaction = String.format(urlTransactionById, uuid);
         log.info("Buscando uuid - {} de {}", uuid, urlTransaction);
 
-        var request = HttpRequest.newBuilder()
-                .GET()
-                .uri(URI.create(
-                        urlTransaction
-                ))
-                .setHeader(ACCEPT, MediaType.APPLICATION_JSON_VALUE)
-                .setHeader("Content-type", MediaType.APPLICATION_JSON_VALUE)
-                .build();
-        try {
-            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            log.info("response status code {}", response.statusCode());
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                return objectMapper.readValue(response.body(), TransactionDTO.class);
-
-            } else if (response.statusCode() == HttpStatus.NOT_FOUND.value()) {
-                throw new NotFoundException(String.format("Não foi possivel encontrar a transação %s", uuid));
-            }
-        } catch (IOException | InterruptedException e) {
-            log.error(e.getMessage(), e);
-            throw new InfrastructureException(e);
-        }
-        return null;
+        return webClient.get()
+                .uri(urlTransaction)
+                .accept(MediaType.APPLICATION_JSON)
+                .httpRequest(lookupTimeout())
+                .retrieve()
+                .onStatus(status -> status == HttpStatus.NOT_FOUND, response -> response.releaseBody()
+                        .then(Mono.error(new NotFoundException(String.format("Não foi possivel encontrar a transação %s", uuid)))))
+                .onStatus(status -> status != HttpStatus.OK, response -> infrastructure(response,
+                        "Não foi possivel buscar a transação, status %d"))
+                .bodyToMono(TransactionDTO.class)
+                .onErrorMap(WebClientRequestException.class, InfrastructureException::new);
+    }
+
+    public Flux<TransactionDTO> findByIds(final List<String> uuids) {
+        return Flux.fromIterable(uuids)
+                .distinct()
+                .buffer(MAX_BATCH_GET)
+                .concatMap(batch -> protect(QUERY, batchGet(batch)));
     }
 
-    public void removeById(final String uuid) {
+    private Flux<TransactionDTO> batchGet(final List<String> uuids) {
+        log.info("Buscando {} transações em {}", uuids.size(), urlTransactionBatchGet);
+        return webClient.post()
+                .uri(urlTransactionBatchGet)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(uuids)
+                .retrieve()
+                .onStatus(status -> status != HttpStatus.OK, response -> infrastructure(response,
+                        "Não foi possivel buscar as transações, status %d"))
+                .bodyToFlux(TransactionDTO.class)
+                .onErrorMap(WebClientRequestException.class, InfrastructureException::new);
+    }
+
+    public Mono<Void> removeById(final String uuid) {
         var urlTransaction = String.format(urlTransactionById, uuid);
 
-        var request = HttpRequest.newBuilder()
-                .DELETE()
-                .uri(URI.create(
-                        urlTransaction
-                ))
-                .setHeader(ACCEPT, MediaType.APPLICATION_JSON_VALUE)
-                .setHeader("Content-type", MediaType.APPLICATION_JSON_VALUE)
-                .build();
-        try {
-            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == HttpStatus.NO_CONTENT.value()) {
-                return;
-            }
-        } catch (IOException | InterruptedException e) {
-            log.error(e.getMessage(), e);
-            throw new InfrastructureException(e);
+        return webClient.delete()
+                .uri(urlTransaction)
+                .accept(MediaType.APPLICATION_JSON)
+                .httpRequest(lookupTimeout())
+                .exchangeToMono(response -> noContent(response,
+                        String.format("Não foi possivel remover a transação %s", uuid)))
+                .onErrorMap(WebClientRequestException.class, InfrastructureException::new)
+                .transformDeferred(call -> protect(DELETE, call))
+                .then(transactionCache.evict(uuid));
+    }
 
-        }
-        throw new NotFoundException(String.format("Não foi possivel remover a transação %s", uuid));
-
-    }
-
-    public void alterarSituacao(final String uuid, final AlteracaoSituacaoDTO alteracaoSituacaoDTO) {
-        try {
-            var urlTransaction = String.format(urlTransactionById, uuid);
-            log.info("Alterando a situação uuid - {} de {}", uuid, urlTransaction);
-
-            var request = HttpRequest.newBuilder()
-                    .method("PATCH", HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(alteracaoSituacaoDTO)))
-                    .uri(URI.create(
-                            urlTransaction
-                    ))
-                    .setHeader(ACCEPT, MediaType.APPLICATION_JSON_VALUE)
-                    .setHeader("Content-type", MediaType.APPLICATION_JSON_VALUE)
-                    .build();
-            try {
-                var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                if (response.statusCode() == HttpStatus.NO_CONTENT.value()) {
-                    return;
-                }
-            } catch (IOException | InterruptedException e) {
-                log.error(e.getMessage(), e);
-            }
-            throw new NotFoundException(String.format("Não foi possivel atualizar a situacao da transação %s", uuid));
-        } catch (JsonProcessingException e) {
-            throw new InfrastructureException(e);
-        }
+    public Mono<Void> alterarSituacao(final String uuid, final AlteracaoSituacaoDTO alteracaoSituacaoDTO) {
+        var urlTransaction = String.format(urlTransactionById, uuid);
+        log.info("Alterando a situação uuid - {} de {}", uuid, urlTransaction);
 
+        return webClient.patch()
+                .uri(urlTransaction)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .httpRequest(lookupTimeout())
+                .bodyValue(alteracaoSituacaoDTO)
+                .exchangeToMono(response -> noContent(response,
+                        String.format("Não foi possivel atualizar a situacao da transação %s", uuid)))
+                .onErrorMap(WebClientRequestException.class, InfrastructureException::new)
+                .transformDeferred(call -> protect(PATCH, call))
+                .then(transactionCache.evict(uuid));
     }
 
-    public void alterarSituacao(final String uuid, final SituacaoEnum situacaoEnum) {
+    public Mono<Void> alterarSituacao(final String uuid, final SituacaoEnum situacaoEnum) {
 
         var alteracaoSituacaoDTO = new AlteracaoSituacaoDTO();
         alteracaoSituacaoDTO.setSituacao(situacaoEnum);
-        alterarSituacao(uuid, alteracaoSituacaoDTO);
-
-    }
-
-    private List<TransactionDTO> queryTransaction(@NotNull final Long agencia, @NotNull final Long conta) {
-
-        var urlTransaction = String.format(queryTransaction, agencia, conta);
-
-        var request = HttpRequest.newBuilder()
-                .GET()
-                .uri(URI.create(
-                        urlTransaction
-                ))
-                .setHeader(ACCEPT, MediaType.APPLICATION_JSON_VALUE)
-                .build();
-        try {
-            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                var transactionDTOS = objectMapper.readValue(response.body(), new TypeReference<List<TransactionDTO>>() {
-                });
-                if (transactionDTOS.isEmpty()) {
-                    throw new NotFoundException(String.format("Não foi possivel encontrar dados para agência %s e conta %s", agencia, conta));
-                }
-                return transactionDTOS;
-
-            }
-        } catch (IOException | InterruptedException e) {
-            log.error(e.getMessage(), e);
+        return alterarSituacao(uuid, alteracaoSituacaoDTO);
+
+    }
+
+    // o bulkhead fica dentro do circuit breaker, que ignora as rejeições do bulkhead (resilience4j.circuitbreaker.*)
+    private <T> Mono<T> protect(final String operation, final Mono<T> call) {
+        return call.transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreakerRegistry.circuitBreaker(operation)))
+                .onErrorMap(TransactionHttpService::rejected, throwable -> unavailable(operation, throwable));
+    }
+
+    private <T> Flux<T> protect(final String operation, final Flux<T> call) {
+        return call.transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreakerRegistry.circuitBreaker(operation)))
+                .onErrorMap(TransactionHttpService::rejected, throwable -> unavailable(operation, throwable));
+    }
+
+    private static boolean rejected(final Throwable throwable) {
+        return throwable instanceof CallNotPermittedException || throwable instanceof BulkheadFullException;
+    }
+
+    private static ServiceUnavailableException unavailable(final String operation, final Throwable throwable) {
+        log.warn("Chamada {} ao transaction-svc recusada: {}", operation, throwable.getMessage());
+        return new ServiceUnavailableException("transaction-svc temporariamente indisponível.");
+    }
+
+    private Consumer<ClientHttpRequest> lookupTimeout() {
+        return request -> request.<HttpClientRequest>getNativeRequest().responseTimeout(lookupTimeout);
+    }
+
+    private Mono<Void> noContent(final ClientResponse response, final String notFound) {
+        if (response.statusCode() == HttpStatus.NO_CONTENT) {
+            return response.releaseBody();
         }
+        return response.releaseBody().then(Mono.error(new NotFoundException(notFound)));
+    }
 
-        return null;
+    private <T> Mono<T> infrastructure(final ClientResponse response, final String message) {
+        return response.releaseBody()
+                .then(Mono.error(new InfrastructureException(String.format(message, response.rawStatusCode()), null)));
     }
 }
@@ -0,0 +1,178 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.events.kafka.TransactionCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache das transações por agência e conta no Redis, com stale-while-revalidate: passado o {@code softTtl} a lista em
+ * cache continua sendo devolvida na hora, enquanto uma única atualização roda em segundo plano. O {@code hardTtl} é o TTL
+ * da chave no Redis e limita o quanto a lista pode estar desatualizada; listas acima de {@code maxTransactions} não
+ * entram no cache.
+ * <p>
+ * Cargas e atualizações da mesma conta não se repetem: na réplica, quem chega durante uma carga espera por ela; entre
+ * réplicas, só quem obtém a trava {@code :refresh} no Redis atualiza a lista.
+ */
+@Component
+@Log4j2
+public class AccountTransactionsCache {
+
+    public static final String KEY_PREFIX = "transaction-bff:account:";
+    public static final String REFRESH_SUFFIX = ":refresh";
+    public static final String GETS = "transaction.bff.account.cache.gets";
+    public static final String REFRESHES = "transaction.bff.account.cache.refreshes";
+    public static final String RESULT = "result";
+    public static final String FRESH = "fresh";
+    public static final String STALE = "stale";
+    public static final String MISS = "miss";
+
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+    private final TransactionCodec transactionCodec;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Mono<List<TransactionDTO>>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${app.cache.account.softTtl}")
+    private Duration softTtl;
+    @Value("${app.cache.account.hardTtl}")
+    private Duration hardTtl;
+    @Value("${app.cache.account.maxTransactions}")
+    private int maxTransactions;
+    @Value("${app.cache.account.refreshTimeout}")
+    private Duration refreshTimeout;
+
+    public AccountTransactionsCache(final ReactiveRedisTemplate<String, byte[]> transactionRedisTemplate,
+                                    final TransactionCodec transactionCodec, final MeterRegistry meterRegistry) {
+        this.redisTemplate = transactionRedisTemplate;
+        this.transactionCodec = transactionCodec;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Flux<TransactionDTO> get(final Long agencia, final Long conta, final Supplier<Flux<TransactionDTO>> loader) {
+        var key = KEY_PREFIX + agencia + "#" + conta;
+        return redisTemplate.opsForValue().get(key)
+                .map(this::decode)
+                .onErrorResume(throwable -> {
+                    log.warn("Falha na leitura do cache da conta {}: {}", key, throwable.getMessage());
+                    return Mono.empty();
+                })
+                .map(entry -> {
+                    if (System.currentTimeMillis() - entry.fetchedAt > softTtl.toMillis()) {
+                        meterRegistry.counter(GETS, RESULT, STALE).increment();
+                        refresh(key, loader);
+                    } else {
+                        meterRegistry.counter(GETS, RESULT, FRESH).increment();
+                    }
+                    return entry.transactions;
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    meterRegistry.counter(GETS, RESULT, MISS).increment();
+                    return load(key, loader);
+                }))
+                .flatMapIterable(transactions -> transactions);
+    }
+
+    private Mono<List<TransactionDTO>> load(final String key, final Supplier<Flux<TransactionDTO>> loader) {
+        // o cache() compartilha a carga com quem chegar enquanto ela roda
+        return inFlight.computeIfAbsent(key, id -> loader.get()
+                .collectList()
+                .flatMap(transactions -> write(key, transactions).thenReturn(transactions))
+                .doFinally(signalType -> inFlight.remove(key))
+                .cache());
+    }
+
+    private void refresh(final String key, final Supplier<Flux<TransactionDTO>> loader) {
+        if (inFlight.containsKey(key)) {
+            meterRegistry.counter(REFRESHES, RESULT, "skipped").increment();
+            return;
+        }
+        redisTemplate.opsForValue().setIfAbsent(key + REFRESH_SUFFIX, new byte[0], refreshTimeout)
+                .filter(Boolean::booleanValue)
+                .switchIfEmpty(Mono.<Boolean>fromRunnable(() -> meterRegistry.counter(REFRESHES, RESULT, "skipped").increment()))
+                .flatMap(acquired -> load(key, loader)
+                        .doFinally(signalType -> redisTemplate.delete(key + REFRESH_SUFFIX).subscribe()))
+                .subscribe(transactions -> meterRegistry.counter(REFRESHES, RESULT, "success").increment(),
+                        throwable -> {
+                            meterRegistry.counter(REFRESHES, RESULT, "failure").increment();
+                            log.warn("Falha na atualização do cache da conta {}: {}", key, throwable.getMessage());
+                        });
+    }
+
+    private Mono<Void> write(final String key, final List<TransactionDTO> transactions) {
+        if (transactions.size() > maxTransactions) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().set(key, encode(System.currentTimeMillis(), transactions), hardTtl)
+                .then()
+                .onErrorResume(throwable -> {
+                    log.warn("Falha na gravação do cache da conta {}: {}", key, throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // momento da leitura no transaction-svc, quantidade de transações e cada uma no formato do TransactionCodec
+    static byte[] encode(final long fetchedAt, final List<TransactionDTO> transactions) {
+        var encoded = new ArrayList<byte[]>(transactions.size());
+        var size = Long.BYTES + Integer.BYTES;
+        for (var transaction : transactions) {
+            var bytes = TransactionCodec.encode(transaction);
+            encoded.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putLong(fetchedAt);
+        buffer.putInt(encoded.size());
+        for (var bytes : encoded) {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        return buffer.array();
+    }
+
+    private Entry decode(final byte[] value) {
+        try {
+            var buffer = ByteBuffer.wrap(value);
+            var fetchedAt = buffer.getLong();
+            var count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / Integer.BYTES) {
+                throw new IllegalArgumentException("Quantidade de transações inválida: " + count);
+            }
+            var transactions = new ArrayList<TransactionDTO>(count);
+            for (int i = 0; i < count; i++) {
+                var bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                transactions.add(transactionCodec.decode(bytes));
+            }
+            return new Entry(fetchedAt, transactions);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new SerializationException("Lista de transações em cache inválida", e);
+        }
+    }
+
+    private static class Entry {
+
+        private final long fetchedAt;
+        private final List<TransactionDTO> transactions;
+
+        Entry(final long fetchedAt, final List<TransactionDTO> transactions) {
+            this.fetchedAt = fetchedAt;
+            this.transactions = transactions;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.events.kafka.TransactionCodec;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Cache das transações em dois níveis: L1 local (Caffeine, TTL curto) na frente do L2 no Redis, compartilhado pelas
+ * réplicas. No Redis a transação fica no formato binário do {@link TransactionCodec}.
+ * <p>
+ * As alterações feitas pelo BFF removem a transação dos dois níveis e publicam o Id no canal
+ * {@code app.cache.invalidationChannel}; cada réplica remove a entrada do seu L1 ao receber a mensagem. Falhas do Redis
+ * viram cache miss, nunca erro da requisição.
+ */
+@Component
+@Log4j2
+public class TransactionCache {
+
+    public static final String KEY_PREFIX = "transaction-bff:transactions:";
+    public static final String GETS = "transaction.bff.cache.gets";
+    public static final String LATENCY = "transaction.bff.cache.latency";
+    public static final String HIT_RATIO = "transaction.bff.cache.hit.ratio";
+    public static final String INVALIDATIONS = "transaction.bff.cache.invalidations";
+    public static final String TIER = "tier";
+    public static final String RESULT = "result";
+    public static final String L1 = "l1";
+    public static final String L2 = "l2";
+
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+    private final TransactionCodec transactionCodec;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.cache.l1.ttl}")
+    private Duration l1Ttl;
+    @Value("${app.cache.l1.maximumSize}")
+    private long l1MaximumSize;
+    @Value("${app.cache.l2.ttl}")
+    private Duration l2Ttl;
+    @Value("${app.cache.invalidationChannel}")
+    private String invalidationChannel;
+
+    private Cache<String, TransactionDTO> local;
+    private Disposable invalidations;
+    private Counter l2Hits;
+    private Counter l2Misses;
+    private Timer l1Latency;
+    private Timer l2Latency;
+
+    public TransactionCache(final ReactiveRedisTemplate<String, byte[]> transactionRedisTemplate,
+                            final TransactionCodec transactionCodec, final MeterRegistry meterRegistry) {
+        this.redisTemplate = transactionRedisTemplate;
+        this.transactionCodec = transactionCodec;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        local = Caffeine.newBuilder()
+                .maximumSize(l1MaximumSize)
+                .expireAfterWrite(l1Ttl)
+                .recordStats()
+                .build();
+        FunctionCounter.builder(GETS, local, cache -> cache.stats().hitCount())
+                .tags(TIER, L1, RESULT, "hit").register(meterRegistry);
+        FunctionCounter.builder(GETS, local, cache -> cache.stats().missCount())
+                .tags(TIER, L1, RESULT, "miss").register(meterRegistry);
+        Gauge.builder(HIT_RATIO, local, cache -> cache.stats().hitRate())
+                .tag(TIER, L1).register(meterRegistry);
+        l2Hits = meterRegistry.counter(GETS, TIER, L2, RESULT, "hit");
+        l2Misses = meterRegistry.counter(GETS, TIER, L2, RESULT, "miss");
+        Gauge.builder(HIT_RATIO, this, TransactionCache::l2HitRatio)
+                .tag(TIER, L2).register(meterRegistry);
+        l1Latency = meterRegistry.timer(LATENCY, TIER, L1);
+        l2Latency = meterRegistry.timer(LATENCY, TIER, L2);
+
+        invalidations = redisTemplate.listenToChannel(invalidationChannel)
+                .doOnNext(message -> {
+                    local.invalidate(new String(message.getMessage(), StandardCharsets.UTF_8));
+                    meterRegistry.counter(INVALIDATIONS).increment();
+                })
+                .doOnError(throwable -> log.warn("Falha na escuta do canal {}: {}", invalidationChannel, throwable.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        invalidations.dispose();
+    }
+
+    public Mono<TransactionDTO> get(final String uuid) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            var transaction = local.getIfPresent(uuid);
+            l1Latency.record(Duration.ofNanos(System.nanoTime() - start));
+            if (Objects.nonNull(transaction)) {
+                return Mono.just(transaction);
+            }
+            var sample = Timer.start(meterRegistry);
+            return redisTemplate.opsForValue().get(key(uuid))
+                    .map(this::decode)
+                    .doOnNext(value -> {
+                        l2Hits.increment();
+                        local.put(uuid, value);
+                    })
+                    .switchIfEmpty(Mono.<TransactionDTO>fromRunnable(l2Misses::increment))
+                    .doFinally(signalType -> sample.stop(l2Latency))
+                    .onErrorResume(throwable -> {
+                        log.warn("Falha na leitura do cache da transação {}: {}", uuid, throwable.getMessage());
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    public Mono<Void> put(final String uuid, final TransactionDTO transaction) {
+        return Mono.defer(() -> {
+                    local.put(uuid, transaction);
+                    return redisTemplate.opsForValue().set(key(uuid), TransactionCodec.encode(transaction), l2Ttl);
+                })
+                .then()
+                .onErrorResume(throwable -> {
+                    log.warn("Falha na gravação do cache da transação {}: {}", uuid, throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Void> evict(final String uuid) {
+        return Mono.defer(() -> {
+                    local.invalidate(uuid);
+                    return Mono.when(redisTemplate.delete(key(uuid)),
+                            redisTemplate.convertAndSend(invalidationChannel, uuid.getBytes(StandardCharsets.UTF_8)));
+                })
+                .onErrorResume(throwable -> {
+                    log.warn("Falha na invalidação do cache da transação {}: {}", uuid, throwable.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private TransactionDTO decode(final byte[] value) {
+        try {
+            return transactionCodec.decode(value);
+        } catch (IOException e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    private double l2HitRatio() {
+        var total = l2Hits.count() + l2Misses.count();
+        return total > 0 ? l2Hits.count() / total : 0;
+    }
+
+    private static String key(final String uuid) {
+        return KEY_PREFIX + uuid;
+    }
+}
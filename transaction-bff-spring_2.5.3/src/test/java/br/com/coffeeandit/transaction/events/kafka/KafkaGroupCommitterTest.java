@@ -0,0 +1,91 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KafkaGroupCommitterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private KafkaGroupCommitter kafkaGroupCommitter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        kafkaTemplate = Mockito.mock(KafkaTemplate.class);
+        kafkaGroupCommitter = new KafkaGroupCommitter(kafkaTemplate, meterRegistry);
+        ReflectionTestUtils.setField(kafkaGroupCommitter, "window", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(kafkaGroupCommitter, "maxBatchSize", 3);
+        ReflectionTestUtils.setField(kafkaGroupCommitter, "concurrency", 2);
+        kafkaGroupCommitter.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        kafkaGroupCommitter.destroy();
+    }
+
+    @Test
+    @DisplayName("Envios simultâneos vão juntos em uma única transação do Kafka.")
+    @SuppressWarnings("unchecked")
+    public void testGroupCommit() {
+        Mockito.when(kafkaTemplate.executeInTransaction(Mockito.any()))
+                .thenAnswer(invocation -> invocation.<KafkaOperations.OperationsCallback<String, byte[], Integer>>getArgument(0)
+                        .doInOperations(kafkaTemplate));
+
+        StepVerifier.create(Mono.when(kafkaGroupCommitter.send(message()), kafkaGroupCommitter.send(message()),
+                        kafkaGroupCommitter.send(message())))
+                .verifyComplete();
+
+        Mockito.verify(kafkaTemplate, Mockito.times(1)).executeInTransaction(Mockito.any());
+        Mockito.verify(kafkaTemplate, Mockito.times(3)).send(Mockito.<Message<byte[]>>any());
+        assertThat(meterRegistry.get(KafkaGroupCommitter.GROUP_SIZE).summary().totalAmount(), is(3.0));
+    }
+
+    @Test
+    @DisplayName("Falha no commit devolve o erro a todos os envios do grupo.")
+    public void testCommitAbortado() {
+        Mockito.when(kafkaTemplate.executeInTransaction(Mockito.any())).thenThrow(new KafkaException("fenced"));
+
+        StepVerifier.create(kafkaGroupCommitter.send(message()).and(kafkaGroupCommitter.send(message())))
+                .expectError(KafkaException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(meterRegistry.get(KafkaGroupCommitter.COMMITS).tag(KafkaGroupCommitter.RESULT, "failure")
+                .counter().count(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Envio depois do encerramento é recusado.")
+    public void testEncerrado() {
+        kafkaGroupCommitter.destroy();
+
+        StepVerifier.create(kafkaGroupCommitter.send(message()))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+
+        Mockito.verify(kafkaTemplate, Mockito.never()).executeInTransaction(Mockito.any());
+    }
+
+    private Message<byte[]> message() {
+        return MessageBuilder.withPayload(new byte[]{1}).build();
+    }
+}
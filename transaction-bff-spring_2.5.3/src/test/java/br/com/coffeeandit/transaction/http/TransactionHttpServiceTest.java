@@ -1,22 +1,219 @@
 package br.com.coffeeandit.transaction.http;
 
+import br.com.coffeeandit.transaction.config.WebClientConfiguration;
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.exception.InfrastructureException;
+import br.com.coffeeandit.transaction.exception.NotFoundException;
+import br.com.coffeeandit.transaction.exception.ServiceUnavailableException;
+import br.com.coffeeandit.transaction.infrastructure.AccountTransactionsCache;
+import br.com.coffeeandit.transaction.infrastructure.TransactionCache;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.codec.CodecsAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.WebClientAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.TestPropertySource;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @SpringBootTest
-@ContextConfiguration(classes = {TransactionHttpService.class})
-@TestPropertySource(properties = {"app.urlTransaction=http://server/v1/transaction/",
-        "app.urlTransactionById=http://server/v1/transaction/%s"
-})
+@ContextConfiguration(classes = {TransactionHttpService.class, WebClientConfiguration.class,
+        TransactionHttpServiceTest.Dependencias.class})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, CodecsAutoConfiguration.class, WebClientAutoConfiguration.class})
 public class TransactionHttpServiceTest {
 
+    private static final String ID = UUID.randomUUID().toString();
+    private static final AtomicInteger chamadas = new AtomicInteger();
+    private static final AtomicInteger lotes = new AtomicInteger();
+    private static DisposableServer server;
+
+    @Autowired
+    private TransactionHttpService transactionHttpService;
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    @MockBean
+    private TransactionCache transactionCache;
     @MockBean
-    private RestTemplate restTemplate;
+    private AccountTransactionsCache accountTransactionsCache;
+    private final Map<String, TransactionDTO> cache = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    public static void startServer() {
+        // transaction-svc simulado
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/v1/transaction/block", (request, response) -> response
+                                .header("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                                .sendString(Mono.just("{\"uui\":\"" + ID + "\",\"valor\":10}\n{\"uui\":\"" + UUID.randomUUID() + "\",\"valor\":20}\n")))
+                        .get("/v1/transaction/slow", (request, response) -> response
+                                .sendString(Mono.just("{}").delayElement(Duration.ofSeconds(2))))
+                        .get("/v1/transaction/{id}", (request, response) -> {
+                            chamadas.incrementAndGet();
+                            if (!ID.equals(request.param("id"))) {
+                                return response.status(404).send();
+                            }
+                            return response.header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                                    .sendString(Mono.just("{\"uui\":\"" + ID + "\",\"valor\":10}"));
+                        })
+                        .delete("/v1/transaction/{id}", (request, response) -> response.status(ID.equals(request.param("id")) ? 204 : 404).send())
+                        .post("/v1/transaction/batch-get", (request, response) -> request.receive().aggregate().asString()
+                                .flatMap(body -> {
+                                    lotes.incrementAndGet();
+                                    if (body.contains("falha")) {
+                                        return response.status(503).send().then();
+                                    }
+                                    return response.header("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                                            .sendString(Mono.just(body.contains(ID) ? "{\"uui\":\"" + ID + "\",\"valor\":10}\n" : ""))
+                                            .then();
+                                })))
+                .bindNow();
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.disposeNow();
+    }
+
     @BeforeEach
-    public void setUp() {}
+    public void setUp() {
+        Mockito.when(transactionCache.get(Mockito.anyString()))
+                .thenAnswer(invocation -> Mono.fromSupplier(() -> cache.get(invocation.<String>getArgument(0))));
+        Mockito.when(transactionCache.put(Mockito.anyString(), Mockito.any()))
+                .thenAnswer(invocation -> Mono.fromRunnable(() -> cache.put(invocation.getArgument(0), invocation.getArgument(1))));
+        Mockito.when(transactionCache.evict(Mockito.anyString()))
+                .thenAnswer(invocation -> Mono.fromRunnable(() -> cache.remove(invocation.<String>getArgument(0))));
+        Mockito.when(accountTransactionsCache.get(Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenAnswer(invocation -> invocation.<Supplier<Flux<TransactionDTO>>>getArgument(2).get());
+    }
+
+    @DynamicPropertySource
+    public static void properties(final DynamicPropertyRegistry registry) {
+        var url = "http://localhost:" + server.port() + "/v1/transaction/";
+        registry.add("app.urlTransaction", () -> url + "block?agencia=%d&conta=%d");
+        registry.add("app.urlTransactionById", () -> url + "%s");
+        registry.add("app.urlTransactionBatchGet", () -> url + "batch-get");
+        registry.add("app.urlTransactionHistory", () -> url + "history?agencia=%d&conta=%d&from=%s&to=%s");
+        registry.add("app.webclient.maxConnections", () -> 4);
+        registry.add("app.webclient.pendingAcquireMaxCount", () -> 16);
+        registry.add("app.webclient.pendingAcquireTimeout", () -> "1s");
+        registry.add("app.webclient.maxIdleTime", () -> "30s");
+        registry.add("app.webclient.connectTimeout", () -> "1s");
+        registry.add("app.webclient.responseTimeout", () -> "5s");
+        registry.add("app.webclient.lookupTimeout", () -> "500ms");
+        registry.add("app.lookup.batchWindow", () -> "100ms");
+        registry.add("app.lookup.maxBatchSize", () -> 50);
+    }
+
+    @Test
+    @DisplayName("Lista em NDJSON e transação por Id, com a segunda busca servida pelo cache.")
+    public void testConsultas() {
+        StepVerifier.create(transactionHttpService.queryTransactionBlock(1L, 2L))
+                .expectNextMatches(transaction -> transaction.getUui().toString().equals(ID))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        var antes = chamadas.get();
+        StepVerifier.create(transactionHttpService.findById(ID).then(transactionHttpService.findById(ID)))
+                .expectNextMatches(transaction -> transaction.getUui().toString().equals(ID))
+                .verifyComplete();
+        Assertions.assertEquals(antes + 1, chamadas.get());
+
+        StepVerifier.create(transactionHttpService.removeById(ID)).verifyComplete();
+        Mockito.verify(transactionCache).evict(ID);
+    }
+
+    @Test
+    @DisplayName("Status de erro e timeout do transaction-svc viram exceções do BFF.")
+    public void testErros() {
+        StepVerifier.create(transactionHttpService.findById(UUID.randomUUID().toString()))
+                .verifyError(NotFoundException.class);
+        StepVerifier.create(transactionHttpService.removeById(UUID.randomUUID().toString()))
+                .verifyError(NotFoundException.class);
+        StepVerifier.create(transactionHttpService.findByIds(List.of(ID, "falha")))
+                .verifyError(InfrastructureException.class);
+        StepVerifier.create(transactionHttpService.findById("slow"))
+                .expectError(InfrastructureException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Buscas simultâneas do mesmo Id e de Ids diferentes viram uma única chamada.")
+    public void testCoalescencia() {
+        var antes = chamadas.get();
+        var lotesAntes = lotes.get();
+
+        var mesmoId = Flux.range(0, 10).flatMap(i -> transactionHttpService.findById(ID));
+        var outroId = transactionHttpService.findById(UUID.randomUUID().toString())
+                .onErrorResume(NotFoundException.class, e -> Mono.empty());
+        StepVerifier.create(Flux.merge(mesmoId, outroId))
+                .expectNextCount(10)
+                .verifyComplete();
+
+        Assertions.assertEquals(antes, chamadas.get());
+        Assertions.assertEquals(lotesAntes + 1, lotes.get());
+    }
+
+    @Test
+    @DisplayName("Com o circuito aberto a chamada falha na hora com 503.")
+    public void testCircuitoAberto() {
+        var circuitBreaker = circuitBreakerRegistry.circuitBreaker(TransactionHttpService.FIND_BY_ID);
+        circuitBreaker.transitionToOpenState();
+        var antes = chamadas.get();
+        try {
+            StepVerifier.create(transactionHttpService.findById(UUID.randomUUID().toString()))
+                    .verifyError(ServiceUnavailableException.class);
+            Assertions.assertEquals(antes, chamadas.get());
+        } finally {
+            circuitBreaker.reset();
+        }
+    }
+
+    @Configuration
+    static class Dependencias {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        public CircuitBreakerRegistry circuitBreakerRegistry() {
+            return CircuitBreakerRegistry.ofDefaults();
+        }
 
+        @Bean
+        public BulkheadRegistry bulkheadRegistry() {
+            return BulkheadRegistry.ofDefaults();
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.events.kafka.TransactionCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AccountTransactionsCacheTest {
+
+    private static final String KEY = AccountTransactionsCache.KEY_PREFIX + "1#2";
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReactiveValueOperations<String, byte[]> valueOperations;
+    private AccountTransactionsCache accountTransactionsCache;
+    private final AtomicInteger cargas = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReactiveRedisTemplate<String, byte[]> redisTemplate = Mockito.mock(ReactiveRedisTemplate.class);
+        valueOperations = Mockito.mock(ReactiveValueOperations.class);
+        Mockito.when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        Mockito.when(redisTemplate.delete(Mockito.anyString())).thenReturn(Mono.just(1L));
+        Mockito.when(valueOperations.set(Mockito.eq(KEY), Mockito.any(), Mockito.any(Duration.class))).thenReturn(Mono.just(true));
+
+        accountTransactionsCache = new AccountTransactionsCache(redisTemplate, new TransactionCodec(new ObjectMapper()), meterRegistry);
+        ReflectionTestUtils.setField(accountTransactionsCache, "softTtl", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(accountTransactionsCache, "hardTtl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(accountTransactionsCache, "maxTransactions", 100);
+        ReflectionTestUtils.setField(accountTransactionsCache, "refreshTimeout", Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("Buscas simultâneas da mesma conta sem cache dividem uma única carga.")
+    public void testMiss() {
+        Mockito.when(valueOperations.get(KEY)).thenReturn(Mono.empty());
+        Sinks.Many<TransactionDTO> resposta = Sinks.many().replay().all();
+
+        var primeira = accountTransactionsCache.get(1L, 2L, () -> carregar(resposta.asFlux()));
+        var segunda = accountTransactionsCache.get(1L, 2L, () -> carregar(resposta.asFlux()));
+        StepVerifier.create(Flux.merge(primeira, segunda))
+                .then(() -> {
+                    resposta.tryEmitNext(getDataMock());
+                    resposta.tryEmitComplete();
+                })
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertThat(cargas.get(), is(1));
+        Mockito.verify(valueOperations).set(Mockito.eq(KEY), Mockito.any(), Mockito.any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("Lista vencida devolvida na hora, com uma única atualização em segundo plano.")
+    public void testStaleWhileRevalidate() {
+        var antiga = getDataMock();
+        var vencida = AccountTransactionsCache.encode(System.currentTimeMillis() - Duration.ofMinutes(1).toMillis(), List.of(antiga));
+        Mockito.when(valueOperations.get(KEY)).thenReturn(Mono.just(vencida));
+        var trava = Sinks.<Boolean>one();
+        Mockito.when(valueOperations.setIfAbsent(Mockito.eq(KEY + AccountTransactionsCache.REFRESH_SUFFIX), Mockito.any(),
+                Mockito.any(Duration.class))).thenReturn(trava.asMono()).thenReturn(Mono.just(false));
+        Sinks.Many<TransactionDTO> resposta = Sinks.many().replay().all();
+
+        StepVerifier.create(accountTransactionsCache.get(1L, 2L, () -> carregar(resposta.asFlux())))
+                .expectNextMatches(transaction -> transaction.getUui().equals(antiga.getUui()))
+                .verifyComplete();
+        StepVerifier.create(accountTransactionsCache.get(1L, 2L, () -> carregar(resposta.asFlux())))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        trava.tryEmitValue(true);
+        resposta.tryEmitNext(getDataMock());
+        resposta.tryEmitComplete();
+
+        assertThat(cargas.get(), is(1));
+        assertThat(meterRegistry.get(AccountTransactionsCache.GETS).tag(AccountTransactionsCache.RESULT,
+                AccountTransactionsCache.STALE).counter().count(), is(2.0));
+        Mockito.verify(valueOperations).set(Mockito.eq(KEY), Mockito.any(), Mockito.any(Duration.class));
+    }
+
+    private Flux<TransactionDTO> carregar(final Flux<TransactionDTO> resposta) {
+        cargas.incrementAndGet();
+        return resposta;
+    }
+
+    private TransactionDTO getDataMock() {
+        var transaction = new TransactionDTO();
+        transaction.setUui(UUID.randomUUID());
+        transaction.setValor(new BigDecimal("10.00"));
+        return transaction;
+    }
+}
@@ -0,0 +1,111 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.events.dto.TransactionDTO;
+import br.com.coffeeandit.transaction.events.kafka.TransactionCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TransactionCacheTest {
+
+    private static final String CHANNEL = "invalidate";
+
+    private final Sinks.Many<ReactiveSubscription.Message<String, byte[]>> mensagens = Sinks.many().multicast().directBestEffort();
+    private SimpleMeterRegistry meterRegistry;
+    private ReactiveValueOperations<String, byte[]> valueOperations;
+    private TransactionCache transactionCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReactiveRedisTemplate<String, byte[]> redisTemplate = Mockito.mock(ReactiveRedisTemplate.class);
+        valueOperations = Mockito.mock(ReactiveValueOperations.class);
+        Mockito.when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        Mockito.doReturn(mensagens.asFlux()).when(redisTemplate).listenToChannel(CHANNEL);
+        Mockito.when(redisTemplate.delete(Mockito.anyString())).thenReturn(Mono.just(1L));
+        Mockito.when(redisTemplate.convertAndSend(Mockito.eq(CHANNEL), Mockito.any())).thenReturn(Mono.just(1L));
+
+        transactionCache = new TransactionCache(redisTemplate, new TransactionCodec(new ObjectMapper()), meterRegistry);
+        ReflectionTestUtils.setField(transactionCache, "l1Ttl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(transactionCache, "l1MaximumSize", 100L);
+        ReflectionTestUtils.setField(transactionCache, "l2Ttl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(transactionCache, "invalidationChannel", CHANNEL);
+        transactionCache.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        transactionCache.destroy();
+    }
+
+    @Test
+    @DisplayName("Leitura do Redis preenche o L1, e a segunda leitura não vai ao Redis.")
+    public void testDoisNiveis() {
+        var transaction = getDataMock();
+        var uuid = transaction.getUui().toString();
+        Mockito.when(valueOperations.get(TransactionCache.KEY_PREFIX + uuid))
+                .thenReturn(Mono.just(TransactionCodec.encode(transaction)));
+
+        StepVerifier.create(transactionCache.get(uuid).then(transactionCache.get(uuid)))
+                .expectNextMatches(cached -> cached.getValor().equals(transaction.getValor()))
+                .verifyComplete();
+
+        Mockito.verify(valueOperations, Mockito.times(1)).get(TransactionCache.KEY_PREFIX + uuid);
+        assertThat(hits(TransactionCache.L1), is(1.0));
+        assertThat(hits(TransactionCache.L2), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Invalidação publicada por outra réplica remove a entrada do L1.")
+    public void testInvalidacao() {
+        var transaction = getDataMock();
+        var uuid = transaction.getUui().toString();
+        Mockito.when(valueOperations.set(Mockito.eq(TransactionCache.KEY_PREFIX + uuid), Mockito.any(), Mockito.any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        Mockito.when(valueOperations.get(TransactionCache.KEY_PREFIX + uuid)).thenReturn(Mono.empty());
+
+        StepVerifier.create(transactionCache.put(uuid, transaction).then(transactionCache.get(uuid)))
+                .expectNext(transaction)
+                .verifyComplete();
+
+        mensagens.tryEmitNext(new ReactiveSubscription.ChannelMessage<>(CHANNEL, uuid.getBytes(StandardCharsets.UTF_8)));
+
+        StepVerifier.create(transactionCache.get(uuid)).verifyComplete();
+        Mockito.verify(valueOperations, Mockito.times(1)).get(TransactionCache.KEY_PREFIX + uuid);
+        assertThat(meterRegistry.find(TransactionCache.INVALIDATIONS).counter().count(), is(1.0));
+    }
+
+    // o L1 conta pelas estatísticas do Caffeine (FunctionCounter) e o L2 por Counter
+    private double hits(final String tier) {
+        return meterRegistry.get(TransactionCache.GETS)
+                .tags(TransactionCache.TIER, tier, TransactionCache.RESULT, "hit")
+                .meter().measure().iterator().next().getValue();
+    }
+
+    private TransactionDTO getDataMock() {
+        var transaction = new TransactionDTO();
+        transaction.setUui(UUID.randomUUID());
+        transaction.setValor(new BigDecimal("150.25"));
+        return transaction;
+    }
+}
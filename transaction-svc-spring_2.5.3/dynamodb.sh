@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# Índice de transações por agência/conta ordenado pela data da transação.
+aws dynamodb update-table --region us-west-2 --table-name transacao \
+  --attribute-definitions AttributeName=agenciaConta,AttributeType=S AttributeName=dtTransaction,AttributeType=S \
+  --global-secondary-index-updates \
+  '[{"Create":{"IndexName":"agenciaConta-dtTransaction-index","KeySchema":[{"AttributeName":"agenciaConta","KeyType":"HASH"},{"AttributeName":"dtTransaction","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}}}]'
+
+# Índice do layout compacto (v2): agência/conta em "ac" e data em epoch millis em "dt".
+aws dynamodb update-table --region us-west-2 --table-name transacao \
+  --attribute-definitions AttributeName=ac,AttributeType=S AttributeName=dt,AttributeType=N \
+  --global-secondary-index-updates \
+  '[{"Create":{"IndexName":"ac-dt-index","KeySchema":[{"AttributeName":"ac","KeyType":"HASH"},{"AttributeName":"dt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}}}]'
+
+# Índice particionado por tempo (app.dynamo.sharding): "bk" = agencia#conta#yyyyMMddHHmm#shard e data em "dt".
+aws dynamodb update-table --region us-west-2 --table-name transacao \
+  --attribute-definitions AttributeName=bk,AttributeType=S AttributeName=dt,AttributeType=N \
+  --global-secondary-index-updates \
+  '[{"Create":{"IndexName":"bk-dt-index","KeySchema":[{"AttributeName":"bk","KeyType":"HASH"},{"AttributeName":"dt","KeyType":"RANGE"}],"Projection":{"ProjectionType":"ALL"},"ProvisionedThroughput":{"ReadCapacityUnits":5,"WriteCapacityUnits":5}}}]'
+
+# Marcadores de idempotência das mensagens do tópico transaction, expirados pelo TTL no atributo "expira".
+aws dynamodb create-table --region us-west-2 --table-name transacao_idempotencia \
+  --attribute-definitions AttributeName=id,AttributeType=S \
+  --key-schema AttributeName=id,KeyType=HASH \
+  --provisioned-throughput ReadCapacityUnits=5,WriteCapacityUnits=5
+aws dynamodb update-time-to-live --region us-west-2 --table-name transacao_idempotencia \
+  --time-to-live-specification "Enabled=true, AttributeName=expira"
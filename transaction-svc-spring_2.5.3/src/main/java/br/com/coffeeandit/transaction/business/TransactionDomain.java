@@ -1,13 +1,15 @@
 package br.com.coffeeandit.transaction.business;
 
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
 import br.com.coffeeandit.transaction.domain.TransactionDTO;
 import br.com.coffeeandit.transaction.infrastructure.TransactionBusiness;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
 import java.math.BigDecimal;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.UUID;
 
 @Service
@@ -17,71 +19,50 @@ public class TransactionDomain {
     private TransactionBusiness transactionBusiness;
 
 
-    public boolean analisarTransacao(@Valid final TransactionDTO transactionDTO) {
+    public Mono<Boolean> analisarTransacao(@Valid final TransactionDTO transactionDTO) {
 
-        final Optional<TransactionDTO> optionalTransactionDTO = buscarTransacao(transactionDTO);
-        if (optionalTransactionDTO.isPresent()) {
-            final TransactionDTO dto = optionalTransactionDTO.get();
-            if (dto.getValor().compareTo(BigDecimal.valueOf(LIMITE_MAXIMO)) < 0) {
-                dto.analisada();
-                criarTransacao(dto);
-                return true;
-            }
-        }
-        return false;
+        return transactionBusiness.analisarItem(transactionDTO.getUui().toString(), BigDecimal.valueOf(LIMITE_MAXIMO),
+                        SituacaoEnum.ANALISADA)
+                .map(analisada -> analisada.getValor().compareTo(BigDecimal.valueOf(LIMITE_MAXIMO)) < 0)
+                .defaultIfEmpty(false);
 
     }
 
 
 
-    public TransactionDTO aprovarTransacao(@Valid final TransactionDTO transactionDTO) {
+    public Mono<TransactionDTO> aprovarTransacao(@Valid final TransactionDTO transactionDTO) {
 
-        final Optional<TransactionDTO> optionalTransactionDTO = buscarTransacao(transactionDTO);
-        if (optionalTransactionDTO.isPresent()) {
-            final TransactionDTO dto = optionalTransactionDTO.get();
-            analisarTransacao(dto);
-            if (dto.isAnalisada()) {
-                dto.aprovada();
-                transactionBusiness.aprovarTransacao(dto);
-                return dto;
-            }
-        }
-        throw new IllegalArgumentException("Não foi possivel atualizar a transacao");
+        // a condição do update é a análise: abaixo do limite ou já analisada, a transação é gravada como aprovada
+        return transactionBusiness.analisarItem(transactionDTO.getUui().toString(), BigDecimal.valueOf(LIMITE_MAXIMO),
+                        SituacaoEnum.APROVADA)
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Não foi possivel atualizar a transacao")));
 
     }
 
-    public void atualizarTransacao(TransactionDTO dto) {
-        transactionBusiness.insertOrUpdate(dto);
+    public Mono<TransactionDTO> atualizarTransacao(TransactionDTO dto) {
+        return transactionBusiness.insertOrUpdate(dto);
     }
 
-    public TransactionDTO inserirTransacao(@Valid final TransactionDTO transactionDTO) {
+    public Mono<TransactionDTO> inserirTransacao(@Valid final TransactionDTO transactionDTO) {
 
         transactionDTO.setUui(UUID.randomUUID());
         transactionDTO.naoAnalisada();
-        criarTransacao(transactionDTO);
-        final Optional<TransactionDTO> optionalTransactionDTO = buscarTransacao(transactionDTO);
-        if (optionalTransactionDTO.isPresent()) {
-            return optionalTransactionDTO.get();
-        }
-        throw new IllegalStateException("Não foi possivel inserir a transação");
-    }
-
-    private Optional<TransactionDTO> buscarTransacao(@Valid TransactionDTO transactionDTO) {
-        return transactionBusiness.retrieveItem(transactionDTO.getUui().toString());
+        return transactionBusiness.putItem(transactionDTO);
     }
 
-    public TransactionDTO rejeitarTransacao(@Valid final TransactionDTO transactionDTO) {
+    public Mono<TransactionDTO> receberTransacao(@Valid final TransactionDTO transactionDTO) {
 
-        final Optional<TransactionDTO> optionalTransactionDTO = buscarTransacao(transactionDTO);
-        if (optionalTransactionDTO.isPresent()) {
-            final TransactionDTO dto = optionalTransactionDTO.get();
-            dto.rejeitada();
-            atualizarTransacao(dto);
-            return dto;
+        // o transaction-bff deriva o uui da chave de idempotência: a reentrega grava o mesmo item
+        if (Objects.isNull(transactionDTO.getUui())) {
+            transactionDTO.setUui(UUID.randomUUID());
         }
-        throw new IllegalArgumentException("Não foi possivel localizar a transacao");
+        transactionDTO.naoAnalisada();
+        return transactionBusiness.writeBehind(transactionDTO);
     }
-    private void criarTransacao(TransactionDTO dto) {
-        transactionBusiness.insertOrUpdate(dto);
+
+    public Mono<TransactionDTO> rejeitarTransacao(@Valid final TransactionDTO transactionDTO) {
+
+        return transactionBusiness.alterarSituacao(transactionDTO.getUui().toString(), SituacaoEnum.REJEITADA)
+                .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("Não foi possivel localizar a transacao")));
     }
 }
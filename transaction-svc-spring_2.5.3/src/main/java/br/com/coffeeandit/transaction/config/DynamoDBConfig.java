@@ -11,6 +11,10 @@ import org.socialsignin.spring.data.dynamodb.repository.config.EnableDynamoDBRep
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 
 @Configuration
 @EnableDynamoDBRepositories
@@ -18,6 +22,7 @@ public class DynamoDBConfig {
 
 
     public static final String TRANSACAO = "transacao";
+    public static final String BLOCKING_PROFILE = "dynamo-blocking";
     @Value("${amazon.aws.accesskey}")
     private String amazonAWSAccessKey;
 
@@ -42,6 +47,16 @@ public class DynamoDBConfig {
         return new DynamoDB(amazonDynamoDB);
     }
 
+    @Bean
+    public DynamoDbAsyncClient dynamoDbAsyncClient() {
+
+        return DynamoDbAsyncClient.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(amazonAWSAccessKey, amazonAWSSecretKey)))
+                .region(Region.US_WEST_2)
+                .build();
+    }
+
     @Bean
     public AWSCredentialsProvider amazonAWSCredentials() {
 //        var key = new String(Base64.getDecoder().decode(amazonAWSAccessKey));
@@ -0,0 +1,42 @@
+package br.com.coffeeandit.transaction.config;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.time.Duration;
+
+@Configuration
+public class KafkaConfig {
+
+    public static final String BATCH_LISTENER_FACTORY = "batchKafkaListenerContainerFactory";
+
+    @Value("${app.kafka.batch.maxSize}")
+    private int batchMaxSize;
+    @Value("${app.kafka.batch.maxWait}")
+    private Duration batchMaxWait;
+    @Value("${app.kafka.batch.minBytes}")
+    private int batchMinBytes;
+
+    // o broker segura o fetch até juntar minBytes ou passar maxWait; cada poll entrega no máximo maxSize mensagens
+    @Bean(BATCH_LISTENER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchKafkaListenerContainerFactory(final KafkaProperties kafkaProperties) {
+
+        var consumerProperties = kafkaProperties.buildConsumerProperties();
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxSize);
+        consumerProperties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, (int) batchMaxWait.toMillis());
+        consumerProperties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchMinBytes);
+
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, String>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(consumerProperties));
+        factory.setBatchListener(true);
+        factory.setConcurrency(kafkaProperties.getListener().getConcurrency());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+}
@@ -1,5 +1,6 @@
 package br.com.coffeeandit.transaction.domain;
 
+// persistido pelo ordinal no DynamoDB: novos valores somente no final
 public enum TipoTransacao {
 
 
@@ -0,0 +1,17 @@
+package br.com.coffeeandit.transaction.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class TransactionPage {
+
+    private final List<TransactionDTO> transactions;
+    // token opaco para a próxima página; nulo quando não há mais itens
+    private final String cursor;
+}
@@ -0,0 +1,88 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static br.com.coffeeandit.transaction.events.kafka.RetryTopics.RETRY_ATTEMPT;
+import static br.com.coffeeandit.transaction.events.kafka.RetryTopics.RETRY_DUE;
+
+/**
+ * Reinjeta as mensagens do DLT no tópico de origem, a partir do último offset reinjetado (grupo próprio). Os headers de
+ * retentativa são removidos, e a mensagem volta a percorrer toda a cadeia se falhar de novo.
+ */
+@Component
+@Slf4j
+public class DeadLetterReplayer {
+
+    public static final String REPLAY_GROUP = "transaction-svc-dlt-replay";
+    public static final String REPLAYED = "transaction.kafka.dlt.replayed";
+    public static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+
+    public DeadLetterReplayer(final ConsumerFactory<String, byte[]> consumerFactory,
+                              final KafkaTemplate<String, byte[]> kafkaTemplate, final MeterRegistry meterRegistry) {
+        this.consumerFactory = consumerFactory;
+        this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return quantidade de mensagens reinjetadas
+     */
+    public synchronized int replay(final String topic, final int limit) {
+        var deadLetterTopic = RetryTopics.deadLetterTopic(topic);
+        try (var consumer = consumerFactory.createConsumer(REPLAY_GROUP, "dlt-replay")) {
+            consumer.assign(consumer.partitionsFor(deadLetterTopic).stream()
+                    .map(partitionInfo -> new TopicPartition(deadLetterTopic, partitionInfo.partition()))
+                    .collect(Collectors.toList()));
+            var envios = new ArrayList<CompletableFuture<SendResult<String, byte[]>>>();
+            var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+            while (envios.size() < limit) {
+                var records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    break;
+                }
+                for (var record : records) {
+                    // o restante do poll não é commitado e fica para a próxima chamada
+                    if (envios.size() >= limit) {
+                        break;
+                    }
+                    var headers = new RecordHeaders(record.headers().toArray());
+                    for (var header : List.of(RETRY_ATTEMPT, RETRY_DUE, KafkaHeaders.DLT_ORIGINAL_TOPIC,
+                            KafkaHeaders.DLT_ORIGINAL_PARTITION, KafkaHeaders.DLT_ORIGINAL_OFFSET,
+                            KafkaHeaders.DLT_EXCEPTION_FQCN, KafkaHeaders.DLT_EXCEPTION_MESSAGE)) {
+                        headers.remove(header);
+                    }
+                    envios.add(kafkaTemplate.send(new ProducerRecord<>(RetryTopics.originalTopic(record), null,
+                            record.key(), record.value(), headers)).completable());
+                    offsets.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+                }
+            }
+            // o offset só avança depois que todas as mensagens foram aceitas no tópico de origem
+            CompletableFuture.allOf(envios.toArray(CompletableFuture[]::new)).join();
+            consumer.commitSync(offsets);
+            log.info("{} mensagens do {} reinjetadas em {}", envios.size(), deadLetterTopic, topic);
+            meterRegistry.counter(REPLAYED, RetryTopics.TIER, deadLetterTopic).increment(envios.size());
+            return envios.size();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import br.com.coffeeandit.transaction.repository.IdempotencyMarkers;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Descarta reentregas pela chave de idempotência. As chaves recentes ficam em memória, e uma reentrega comum é
+ * descartada sem ir ao DynamoDB; uma chave nova é marcada com escrita condicional, que também resolve a disputa entre
+ * réplicas.
+ */
+@Component
+@Slf4j
+public class IdempotencyGuard {
+
+    public static final String IDEMPOTENCY_KEY = "X-Idempotency-Key";
+    public static final String DUPLICATES = "transaction.kafka.duplicates";
+    public static final String ORIGEM = "origem";
+    public static final String MEMORIA = "memoria";
+    public static final String DYNAMO = "dynamo";
+
+    private final IdempotencyMarkers idempotencyMarkers;
+    private final MeterRegistry meterRegistry;
+    private Cache<String, Boolean> recentKeys;
+
+    @Value("${app.idempotency.ttl}")
+    private Duration ttl;
+    @Value("${app.idempotency.maximumSize}")
+    private long maximumSize;
+
+    public IdempotencyGuard(final IdempotencyMarkers idempotencyMarkers, final MeterRegistry meterRegistry) {
+        this.idempotencyMarkers = idempotencyMarkers;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        recentKeys = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Executa o processamento só na primeira entrega da chave. Se ele falhar a marca é removida, para que a reentrega
+     * seja processada.
+     */
+    public <T> Mono<T> once(final String key, final Supplier<Mono<T>> processamento) {
+        if (Objects.isNull(key)) {
+            return Mono.defer(processamento);
+        }
+        return claim(key)
+                .flatMap(primeira -> primeira
+                        ? Mono.defer(processamento)
+                        .onErrorResume(throwable -> release(key).then(Mono.error(throwable)))
+                        : Mono.empty());
+    }
+
+    private Mono<Boolean> claim(final String key) {
+        return Mono.defer(() -> {
+            if (Objects.nonNull(recentKeys.getIfPresent(key))) {
+                duplicate(key, MEMORIA);
+                return Mono.just(false);
+            }
+            return idempotencyMarkers.mark(key)
+                    .doOnNext(marcada -> {
+                        recentKeys.put(key, Boolean.TRUE);
+                        if (!marcada) {
+                            duplicate(key, DYNAMO);
+                        }
+                    });
+        });
+    }
+
+    private Mono<Void> release(final String key) {
+        recentKeys.invalidate(key);
+        return idempotencyMarkers.remove(key)
+                .onErrorResume(throwable -> {
+                    log.error("Não foi possível remover a marca de idempotência {}", key, throwable);
+                    return Mono.empty();
+                });
+    }
+
+    private void duplicate(final String key, final String origem) {
+        log.info("Mensagem duplicada descartada {}", key);
+        meterRegistry.counter(DUPLICATES, ORIGEM, origem).increment();
+    }
+}
@@ -0,0 +1,68 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.kafka.support.ProducerListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Callbacks de todos os envios do {@code KafkaTemplate} (o Spring Boot registra este listener no template): contam
+ * sucessos e falhas por tópico e medem a latência até o ack do broker. O uso do {@code buffer.memory} vem das métricas do
+ * próprio producer.
+ */
+@Component
+@Slf4j
+public class KafkaSendMetrics implements ProducerListener<Object, Object> {
+
+    public static final String SENDS = "transaction.kafka.producer.sends";
+    public static final String LATENCY = "transaction.kafka.producer.latency";
+    public static final String BUFFER_USAGE = "transaction.kafka.producer.buffer.usage";
+    public static final String BUFFER_AVAILABLE = "kafka.producer.buffer.available.bytes";
+    public static final String BUFFER_TOTAL = "kafka.producer.buffer.total.bytes";
+    public static final String TOPIC = "topic";
+    public static final String RESULT = "result";
+
+    private final MeterRegistry meterRegistry;
+
+    public KafkaSendMetrics(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(BUFFER_USAGE, this, KafkaSendMetrics::bufferUsage)
+                .description("Fração do buffer.memory ocupada pelos envios ainda não confirmados")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onSuccess(final ProducerRecord<Object, Object> record, final RecordMetadata metadata) {
+        meterRegistry.counter(SENDS, TOPIC, record.topic(), RESULT, "success").increment();
+        if (metadata.hasTimestamp()) {
+            Timer.builder(LATENCY)
+                    .tag(TOPIC, record.topic())
+                    .register(meterRegistry)
+                    .record(Duration.ofMillis(Math.max(System.currentTimeMillis() - metadata.timestamp(), 0)));
+        }
+    }
+
+    @Override
+    public void onError(final ProducerRecord<Object, Object> record, final RecordMetadata metadata, final Exception exception) {
+        meterRegistry.counter(SENDS, TOPIC, record.topic(), RESULT, "failure").increment();
+        log.error("Falha no envio para o tópico {} com a chave {}", record.topic(), record.key(), exception);
+    }
+
+    public double bufferUsage() {
+        double available = 0;
+        double total = 0;
+        for (var gauge : meterRegistry.find(BUFFER_TOTAL).gauges()) {
+            total += gauge.value();
+        }
+        for (var gauge : meterRegistry.find(BUFFER_AVAILABLE).gauges()) {
+            available += gauge.value();
+        }
+        return total > 0 ? (total - available) / total : 0;
+    }
+}
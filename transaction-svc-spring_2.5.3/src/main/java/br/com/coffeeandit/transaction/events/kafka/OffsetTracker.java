@@ -0,0 +1,40 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Offsets recebidos e concluídos de uma partição. As mensagens podem terminar fora de ordem, mas só o maior offset
+ * contíguo concluído é confirmado: nada é commitado à frente de uma mensagem ainda em processamento.
+ */
+public class OffsetTracker {
+
+    private final TreeSet<Long> pending = new TreeSet<>();
+    private final TreeMap<Long, Acknowledgment> completed = new TreeMap<>();
+
+    public synchronized void received(final long offset) {
+        pending.add(offset);
+    }
+
+    /**
+     * @return o acknowledgment a confirmar, quando o offset contíguo avançou; {@code null} caso contrário
+     */
+    public synchronized Acknowledgment completed(final long offset, final Acknowledgment acknowledgment) {
+        pending.remove(offset);
+        completed.put(offset, acknowledgment);
+        var head = pending.isEmpty() ? completed : completed.headMap(pending.first(), false);
+        if (head.isEmpty()) {
+            return null;
+        }
+        // confirmar o último offset contíguo cobre todos os anteriores
+        var last = head.lastEntry().getValue();
+        head.clear();
+        return last;
+    }
+
+    public synchronized int lag() {
+        return pending.size() + completed.size();
+    }
+}
@@ -0,0 +1,195 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processa as mensagens em lanes seriais: mensagens com a mesma chave (ou, sem chave, da mesma partição) são
+ * processadas em ordem, uma de cada vez. Quando uma lane enche o listener é pausado, e volta a consumir quando todas as
+ * lanes esvaziam até a metade. Os commits seguem o {@link OffsetTracker} de cada partição.
+ * <p>
+ * A task deve tratar as suas falhas (retentativa). Se ainda assim ela lançar exceção, o offset não é confirmado: a
+ * partição deixa de avançar o commit e a mensagem é relida na próxima atribuição da partição.
+ */
+@Component
+@Slf4j
+public class OrderedRecordExecutor {
+
+    public static final String LANE_DEPTH = "transaction.kafka.lane.depth";
+    public static final String IN_FLIGHT = "transaction.kafka.inflight";
+    public static final String COMMIT_LAG = "transaction.kafka.commit.lag";
+    public static final String PAUSES = "transaction.kafka.pauses";
+    public static final String FAILURES = "transaction.kafka.lane.failures";
+    public static final String LANE = "lane";
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final MeterRegistry meterRegistry;
+    private final Counter pauses;
+    private final Counter failures;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<TopicPartition, OffsetTracker> trackers = new ConcurrentHashMap<>();
+    private final Set<String> pausedListeners = ConcurrentHashMap.newKeySet();
+    private final List<Lane> lanes = new ArrayList<>();
+
+    @Value("${app.kafka.lanes}")
+    private int laneCount;
+    @Value("${app.kafka.laneCapacity}")
+    private int laneCapacity;
+
+    public OrderedRecordExecutor(final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                 final MeterRegistry meterRegistry) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.meterRegistry = meterRegistry;
+        this.pauses = Counter.builder(PAUSES)
+                .description("Pausas do consumo por lanes cheias")
+                .register(meterRegistry);
+        this.failures = Counter.builder(FAILURES)
+                .description("Mensagens com falha cujo offset não foi confirmado")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT, inFlight, AtomicInteger::get)
+                .description("Mensagens recebidas e ainda não processadas")
+                .register(meterRegistry);
+        Gauge.builder(COMMIT_LAG, trackers, OrderedRecordExecutor::commitLag)
+                .description("Mensagens recebidas cujo offset ainda não foi confirmado")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < laneCount; i++) {
+            var lane = new Lane(i);
+            Gauge.builder(LANE_DEPTH, lane.depth, AtomicInteger::get)
+                    .description("Mensagens na fila de cada lane, incluindo a que está em processamento")
+                    .tag(LANE, String.valueOf(i))
+                    .register(meterRegistry);
+            lanes.add(lane);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (var lane : lanes) {
+            lane.executor.shutdown();
+        }
+        for (var lane : lanes) {
+            lane.executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public void execute(final String listenerId, final ConsumerRecord<String, ?> record, final Acknowledgment acknowledgment,
+                        final Runnable task) {
+        var partition = new TopicPartition(record.topic(), record.partition());
+        var tracker = trackers.computeIfAbsent(partition, topicPartition -> new OffsetTracker());
+        tracker.received(record.offset());
+        var lane = lane(record);
+        lane.depth.incrementAndGet();
+        inFlight.incrementAndGet();
+        lane.executor.execute(() -> {
+            var processada = false;
+            try {
+                task.run();
+                processada = true;
+            } catch (Exception e) {
+                failures.increment();
+                log.error("Falha na partição {} offset {} do tópico {}, o offset não será confirmado", record.partition(),
+                        record.offset(), record.topic(), e);
+            } finally {
+                lane.depth.decrementAndGet();
+                inFlight.decrementAndGet();
+                if (processada) {
+                    complete(partition, tracker, record.offset(), acknowledgment);
+                }
+                resumeIfDrained(listenerId);
+            }
+        });
+        if (lane.depth.get() >= laneCapacity) {
+            pause(listenerId);
+        }
+    }
+
+    // mensagens das partições revogadas serão relidas pelo novo dono; seus offsets não são mais confirmados aqui
+    public void revoked(final Collection<TopicPartition> partitions) {
+        trackers.keySet().removeAll(partitions);
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private Lane lane(final ConsumerRecord<String, ?> record) {
+        var hash = Objects.nonNull(record.key()) ? record.key().hashCode() : Objects.hash(record.topic(), record.partition());
+        return lanes.get(Math.floorMod(hash, lanes.size()));
+    }
+
+    private void complete(final TopicPartition partition, final OffsetTracker tracker, final long offset,
+                          final Acknowledgment acknowledgment) {
+        if (trackers.get(partition) != tracker) {
+            return;
+        }
+        var contiguous = tracker.completed(offset, acknowledgment);
+        if (Objects.nonNull(contiguous)) {
+            contiguous.acknowledge();
+        }
+    }
+
+    private void pause(final String listenerId) {
+        var container = kafkaListenerEndpointRegistry.getListenerContainer(listenerId);
+        if (Objects.nonNull(container) && pausedListeners.add(listenerId)) {
+            log.warn("Lanes cheias, consumo de {} pausado", listenerId);
+            pauses.increment();
+            container.pause();
+        }
+    }
+
+    private void resumeIfDrained(final String listenerId) {
+        if (!pausedListeners.contains(listenerId)
+                || lanes.stream().anyMatch(lane -> lane.depth.get() > laneCapacity / 2)) {
+            return;
+        }
+        var container = kafkaListenerEndpointRegistry.getListenerContainer(listenerId);
+        if (pausedListeners.remove(listenerId) && Objects.nonNull(container)) {
+            log.info("Lanes esvaziadas, consumo de {} retomado", listenerId);
+            container.resume();
+        }
+    }
+
+    private static double commitLag(final Map<TopicPartition, OffsetTracker> trackers) {
+        return trackers.values().stream().mapToInt(OffsetTracker::lag).sum();
+    }
+
+    private static class Lane {
+
+        private final AtomicInteger depth = new AtomicInteger();
+        private final ExecutorService executor;
+
+        Lane(final int index) {
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                var thread = new Thread(runnable, "transaction-lane-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cadeia de tópicos de retentativa ({@code <tópico>-retry-<atraso em ms>}) terminada no {@code <tópico>-dlt}. Uma mensagem
+ * que falha sai da partição principal e segue para o próximo nível, com os headers da mensagem original e da exceção;
+ * mensagens inválidas vão direto para o DLT.
+ */
+@Component
+@Slf4j
+public class RetryTopics {
+
+    public static final String RETRY_SUFFIX = "-retry-";
+    public static final String DLT_SUFFIX = "-dlt";
+    public static final String RETRY_ATTEMPT = "X-Retry-Attempt";
+    public static final String RETRY_DUE = "X-Retry-Due";
+    public static final String FORWARDED = "transaction.kafka.retry";
+    public static final String RECOVERED = "transaction.kafka.retry.recovered";
+    public static final String TIER = "tier";
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService resumer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "transaction-retry-resumer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.kafka.retry.delays}")
+    private List<Duration> delays;
+
+    public RetryTopics(final KafkaTemplate<String, byte[]> kafkaTemplate,
+                       final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry, final MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resumer.shutdownNow();
+    }
+
+    public String[] retryTopics(final String... topics) {
+        var retryTopics = new ArrayList<String>();
+        for (var topic : topics) {
+            for (var delay : delays) {
+                retryTopics.add(topic + RETRY_SUFFIX + delay.toMillis());
+            }
+        }
+        return retryTopics.toArray(String[]::new);
+    }
+
+    public static String deadLetterTopic(final String topic) {
+        return topic + DLT_SUFFIX;
+    }
+
+    /**
+     * Envia a mensagem que falhou para o próximo nível. O offset original só deve ser confirmado depois do envio.
+     */
+    public CompletableFuture<SendResult<String, byte[]>> forward(final ConsumerRecord<String, byte[]> record,
+                                                                 final Throwable throwable) {
+        var cause = Exceptions.unwrap(throwable);
+        var attempt = attempt(record);
+        var retryable = !(cause instanceof JsonProcessingException || cause instanceof SerializationException)
+                && attempt < delays.size();
+        var topic = originalTopic(record);
+        var destination = retryable ? topic + RETRY_SUFFIX + delays.get(attempt).toMillis() : deadLetterTopic(topic);
+
+        var producerRecord = new ProducerRecord<>(destination, null, record.key(), record.value(),
+                new RecordHeaders(record.headers().toArray()));
+        var headers = producerRecord.headers();
+        // a origem é gravada na primeira falha e preservada nos níveis seguintes
+        if (Objects.isNull(headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC))) {
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+        }
+        replace(headers, KafkaHeaders.DLT_EXCEPTION_FQCN, cause.getClass().getName());
+        replace(headers, KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(cause.getMessage()));
+        replace(headers, RETRY_ATTEMPT, String.valueOf(attempt + 1));
+        if (retryable) {
+            replace(headers, RETRY_DUE, String.valueOf(System.currentTimeMillis() + delays.get(attempt).toMillis()));
+        } else {
+            headers.remove(RETRY_DUE);
+        }
+
+        log.warn("Falha na mensagem da partição {} offset {} do tópico {}, enviada para {}", record.partition(),
+                record.offset(), record.topic(), destination, cause);
+        meterRegistry.counter(FORWARDED, TIER, destination).increment();
+        return kafkaTemplate.send(producerRecord).completable();
+    }
+
+    public void recovered(final ConsumerRecord<String, byte[]> record) {
+        meterRegistry.counter(RECOVERED, TIER, record.topic()).increment();
+    }
+
+    /**
+     * Pausa a partição até a mensagem vencer. O listener devolve a mensagem com {@code nack}, e ela é relida quando a
+     * partição é retomada, sem bloquear as demais partições do consumidor.
+     */
+    public void backoff(final String listenerId, final ConsumerRecord<String, byte[]> record, final long delay) {
+        var container = kafkaListenerEndpointRegistry.getListenerContainer(listenerId);
+        if (Objects.isNull(container)) {
+            return;
+        }
+        var partition = new TopicPartition(record.topic(), record.partition());
+        container.pausePartition(partition);
+        resumer.schedule(() -> container.resumePartition(partition), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // milissegundos até a mensagem poder ser reprocessada
+    public static long remaining(final ConsumerRecord<String, byte[]> record) {
+        var due = header(record.headers(), RETRY_DUE);
+        return Objects.isNull(due) ? 0 : Long.parseLong(due) - System.currentTimeMillis();
+    }
+
+    public static String originalTopic(final ConsumerRecord<String, byte[]> record) {
+        var topic = header(record.headers(), KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        return Objects.nonNull(topic) ? topic : record.topic();
+    }
+
+    private static int attempt(final ConsumerRecord<String, byte[]> record) {
+        var attempt = header(record.headers(), RETRY_ATTEMPT);
+        return Objects.isNull(attempt) ? 0 : Integer.parseInt(attempt);
+    }
+
+    private static String header(final Headers headers, final String key) {
+        var header = headers.lastHeader(key);
+        return Objects.nonNull(header) ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static void replace(final Headers headers, final String key, final String value) {
+        headers.remove(key);
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,319 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import br.com.coffeeandit.transaction.domain.BeneficiatioDto;
+import br.com.coffeeandit.transaction.domain.Conta;
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
+import br.com.coffeeandit.transaction.domain.TipoTransacao;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Formato binário da transação nos tópicos do Kafka, compartilhado com o transaction-bff e o limites-svc (cada serviço
+ * tem sua cópia, como o próprio {@link TransactionDTO}). A mensagem começa com o byte {@link #MAGIC}, que nunca inicia um
+ * JSON em UTF-8, seguido da versão e de uma máscara dos campos presentes; os campos vêm sempre na mesma ordem, sem nomes.
+ * Os enums são gravados pelo nome, porque cada serviço tem sua própria lista de valores.
+ * Os testes dos três serviços leem e gravam a mesma mensagem de referência ({@code src/test/resources/kafka}): uma mudança
+ * no formato precisa ser feita nas três cópias e no arquivo.
+ * <p>
+ * A leitura aceita JSON e binário, para que produtores e consumidores possam ser atualizados em qualquer ordem; a escrita
+ * segue {@code app.kafka.wireFormat}.
+ */
+@Component
+public class TransactionCodec implements Serde<TransactionDTO> {
+
+    public static final byte MAGIC = (byte) 0xC1;
+    public static final byte VERSION = 1;
+    public static final String BINARY = "binary";
+
+    // máscara dos campos presentes, na ordem em que são gravados
+    private static final int UUI = 1;
+    private static final int VALOR = 1 << 1;
+    private static final int DATA = 1 << 2;
+    private static final int CONTA = 1 << 3;
+    private static final int CODIGO_AGENCIA = 1 << 4;
+    private static final int CODIGO_CONTA = 1 << 5;
+    private static final int BENEFICIARIO = 1 << 6;
+    private static final int CPF = 1 << 7;
+    private static final int CODIGO_BANCO = 1 << 8;
+    private static final int AGENCIA = 1 << 9;
+    private static final int CONTA_BENEFICIARIO = 1 << 10;
+    private static final int NOME_FAVORECIDO = 1 << 11;
+    private static final int TIPO_TRANSACAO = 1 << 12;
+    private static final int SITUACAO = 1 << 13;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.kafka.wireFormat}")
+    private String wireFormat;
+
+    public TransactionCodec(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Serializer<TransactionDTO> serializer() {
+        return (topic, transaction) -> serialize(transaction);
+    }
+
+    @Override
+    public Deserializer<TransactionDTO> deserializer() {
+        return (topic, data) -> {
+            try {
+                return decode(data);
+            } catch (IOException e) {
+                throw new SerializationException(e);
+            }
+        };
+    }
+
+    public byte[] serialize(final TransactionDTO transaction) {
+        if (Objects.isNull(transaction)) {
+            return null;
+        }
+        if (!BINARY.equals(wireFormat)) {
+            try {
+                return objectMapper.writeValueAsBytes(transaction);
+            } catch (JsonProcessingException e) {
+                throw new SerializationException(e);
+            }
+        }
+        return encode(transaction);
+    }
+
+    public TransactionDTO decode(final byte[] data) throws IOException {
+        if (Objects.isNull(data)) {
+            return null;
+        }
+        if (data.length == 0 || data[0] != MAGIC) {
+            return objectMapper.readValue(data, TransactionDTO.class);
+        }
+        try {
+            return decodeBinary(ByteBuffer.wrap(data));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SerializationException("Mensagem binária de transação inválida", e);
+        }
+    }
+
+    public static byte[] encode(final TransactionDTO transaction) {
+        var conta = transaction.getConta();
+        var beneficiario = transaction.getBeneficiario();
+        var fields = presence(UUI, transaction.getUui())
+                | presence(VALOR, transaction.getValor())
+                | presence(DATA, transaction.getData())
+                | presence(CONTA, conta)
+                | presence(BENEFICIARIO, beneficiario)
+                | presence(TIPO_TRANSACAO, transaction.getTipoTransacao())
+                | presence(SITUACAO, transaction.getSituacao());
+        if (Objects.nonNull(conta)) {
+            fields |= presence(CODIGO_AGENCIA, conta.getCodigoAgencia()) | presence(CODIGO_CONTA, conta.getCodigoConta());
+        }
+        if (Objects.nonNull(beneficiario)) {
+            fields |= presence(CPF, beneficiario.getCPF())
+                    | presence(CODIGO_BANCO, beneficiario.getCodigoBanco())
+                    | presence(AGENCIA, beneficiario.getAgencia())
+                    | presence(CONTA_BENEFICIARIO, beneficiario.getConta())
+                    | presence(NOME_FAVORECIDO, beneficiario.getNomeFavorecido());
+        }
+
+        var writer = new Writer();
+        writer.put(MAGIC);
+        writer.put(VERSION);
+        writer.putVarLong(fields);
+        if ((fields & UUI) != 0) {
+            writer.putLong(transaction.getUui().getMostSignificantBits());
+            writer.putLong(transaction.getUui().getLeastSignificantBits());
+        }
+        if ((fields & VALOR) != 0) {
+            writer.putZigZag(transaction.getValor().scale());
+            writer.putBytes(transaction.getValor().unscaledValue().toByteArray());
+        }
+        if ((fields & DATA) != 0) {
+            writer.putZigZag(transaction.getData().toEpochSecond(ZoneOffset.UTC));
+            writer.putVarLong(transaction.getData().getNano());
+        }
+        if ((fields & CODIGO_AGENCIA) != 0) {
+            writer.putZigZag(conta.getCodigoAgencia());
+        }
+        if ((fields & CODIGO_CONTA) != 0) {
+            writer.putZigZag(conta.getCodigoConta());
+        }
+        if ((fields & CPF) != 0) {
+            writer.putZigZag(beneficiario.getCPF());
+        }
+        if ((fields & CODIGO_BANCO) != 0) {
+            writer.putZigZag(beneficiario.getCodigoBanco());
+        }
+        if ((fields & AGENCIA) != 0) {
+            writer.putString(beneficiario.getAgencia());
+        }
+        if ((fields & CONTA_BENEFICIARIO) != 0) {
+            writer.putString(beneficiario.getConta());
+        }
+        if ((fields & NOME_FAVORECIDO) != 0) {
+            writer.putString(beneficiario.getNomeFavorecido());
+        }
+        if ((fields & TIPO_TRANSACAO) != 0) {
+            writer.putString(transaction.getTipoTransacao().name());
+        }
+        if ((fields & SITUACAO) != 0) {
+            writer.putString(transaction.getSituacao().name());
+        }
+        return writer.toByteArray();
+    }
+
+    private static TransactionDTO decodeBinary(final ByteBuffer buffer) {
+        buffer.get();
+        var version = buffer.get();
+        if (version != VERSION) {
+            throw new SerializationException("Versão de mensagem de transação não suportada: " + version);
+        }
+        var fields = getVarLong(buffer);
+        var transaction = new TransactionDTO();
+        if ((fields & UUI) != 0) {
+            transaction.setUui(new UUID(buffer.getLong(), buffer.getLong()));
+        }
+        if ((fields & VALOR) != 0) {
+            var scale = (int) getZigZag(buffer);
+            transaction.setValor(new BigDecimal(new BigInteger(getBytes(buffer)), scale));
+        }
+        if ((fields & DATA) != 0) {
+            transaction.setData(LocalDateTime.ofEpochSecond(getZigZag(buffer), (int) getVarLong(buffer), ZoneOffset.UTC));
+        }
+        if ((fields & CONTA) != 0) {
+            var conta = new Conta();
+            if ((fields & CODIGO_AGENCIA) != 0) {
+                conta.setCodigoAgencia(getZigZag(buffer));
+            }
+            if ((fields & CODIGO_CONTA) != 0) {
+                conta.setCodigoConta(getZigZag(buffer));
+            }
+            transaction.setConta(conta);
+        }
+        if ((fields & BENEFICIARIO) != 0) {
+            var beneficiario = new BeneficiatioDto();
+            if ((fields & CPF) != 0) {
+                beneficiario.setCPF(getZigZag(buffer));
+            }
+            if ((fields & CODIGO_BANCO) != 0) {
+                beneficiario.setCodigoBanco(getZigZag(buffer));
+            }
+            if ((fields & AGENCIA) != 0) {
+                beneficiario.setAgencia(getString(buffer));
+            }
+            if ((fields & CONTA_BENEFICIARIO) != 0) {
+                beneficiario.setConta(getString(buffer));
+            }
+            if ((fields & NOME_FAVORECIDO) != 0) {
+                beneficiario.setNomeFavorecido(getString(buffer));
+            }
+            transaction.setBeneficiario(beneficiario);
+        }
+        if ((fields & TIPO_TRANSACAO) != 0) {
+            transaction.setTipoTransacao(TipoTransacao.valueOf(getString(buffer)));
+        }
+        if ((fields & SITUACAO) != 0) {
+            transaction.setSituacao(SituacaoEnum.valueOf(getString(buffer)));
+        }
+        return transaction;
+    }
+
+    private static int presence(final int field, final Object value) {
+        return Objects.nonNull(value) ? field : 0;
+    }
+
+    private static long getVarLong(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            var b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint inválido");
+    }
+
+    private static long getZigZag(final ByteBuffer buffer) {
+        var value = getVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] getBytes(final ByteBuffer buffer) {
+        var length = getVarLong(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Tamanho de campo inválido: " + length);
+        }
+        var bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static class Writer {
+
+        private byte[] bytes = new byte[128];
+        private int position;
+
+        void put(final byte b) {
+            if (position == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[position++] = b;
+        }
+
+        void putLong(final long value) {
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                put((byte) (value >>> shift));
+            }
+        }
+
+        void putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        void putZigZag(final long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void putBytes(final byte[] value) {
+            putVarLong(value.length);
+            for (var b : value) {
+                put(b);
+            }
+        }
+
+        void putString(final String value) {
+            putBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+    }
+}
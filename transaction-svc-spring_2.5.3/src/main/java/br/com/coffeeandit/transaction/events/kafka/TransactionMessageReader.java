@@ -8,101 +8,273 @@ import br.com.coffeeandit.transaction.events.observer.TransactionObserverService
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.sleuth.annotation.ContinueSpan;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.annotation.PartitionOffset;
-import org.springframework.kafka.annotation.TopicPartition;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+import static br.com.coffeeandit.transaction.config.KafkaConfig.BATCH_LISTENER_FACTORY;
+import static br.com.coffeeandit.transaction.events.kafka.IdempotencyGuard.IDEMPOTENCY_KEY;
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.agenciaConta;
 
 @Service
 @Slf4j
-public class TransactionMessageReader {
+public class TransactionMessageReader implements ConsumerSeekAware {
 
 
     public static final String LIQUIDACAO = "liquidacao";
+    public static final String LIQUIDACAO_KEY_SUFFIX = ":" + LIQUIDACAO;
+    public static final String TRANSACTION_LISTENER = "transactionReader";
+    public static final String TRANSACTION_BATCH_LISTENER = "transactionBatchReader";
+    public static final String EXTORNO_BATCH_LISTENER = "extornoBatchReader";
+    public static final String RETRY_LISTENER = "retryReader";
 
-    public TransactionMessageReader(ObjectMapper objectMapper, TransactionDomain transactionDomain, TransactionObserverService transactionObserverService, KafkaTemplate<String, String> kafkaTemplate) {
+    public TransactionMessageReader(ObjectMapper objectMapper, TransactionDomain transactionDomain, TransactionObserverService transactionObserverService, KafkaTemplate<String, byte[]> kafkaTemplate,
+                                    OrderedRecordExecutor orderedRecordExecutor, IdempotencyGuard idempotencyGuard,
+                                    RetryTopics retryTopics, TransactionCodec transactionCodec) {
         this.objectMapper = objectMapper;
         this.transactionDomain = transactionDomain;
         this.transactionObserverService = transactionObserverService;
         this.kafkaTemplate = kafkaTemplate;
+        this.orderedRecordExecutor = orderedRecordExecutor;
+        this.idempotencyGuard = idempotencyGuard;
+        this.retryTopics = retryTopics;
+        this.transactionCodec = transactionCodec;
     }
 
     private final ObjectMapper objectMapper;
     private final TransactionDomain transactionDomain;
     private final TransactionObserverService transactionObserverService;
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final OrderedRecordExecutor orderedRecordExecutor;
+    private final IdempotencyGuard idempotencyGuard;
+    private final RetryTopics retryTopics;
+    private final TransactionCodec transactionCodec;
+
+    @Value("${app.returnTopic}")
+    private String returnTopic;
 
 
-    @KafkaListener(topics = "${app.topic}", clientIdPrefix = "subscriberTransaction")
-    public void onConsume(final String message, final Acknowledgment acknowledgment) {
+    @KafkaListener(id = TRANSACTION_LISTENER, idIsGroup = false, topics = "${app.topic}", clientIdPrefix = "subscriberTransaction",
+            autoStartup = "#{!${app.kafka.batch.enabled}}")
+    public void onConsume(final ConsumerRecord<String, byte[]> record, final Acknowledgment acknowledgment) {
 
-        log.info("Mensagem chega para leitura.: " + message);
+        log.info("Mensagem chega para leitura na partição {} offset {}", record.partition(), record.offset());
 
-        CompletableFuture.supplyAsync(() -> {
+        // a lane é serial: a próxima mensagem da mesma chave só começa quando esta termina
+        orderedRecordExecutor.execute(TRANSACTION_LISTENER, record, acknowledgment, () -> {
             try {
-                var transaction = getTransaction(message);
-                transactionDomain.inserirTransacao(transaction);
-                acknowledgment.acknowledge();
-                return transaction;
-            } catch (IOException exception) {
-                log.error(exception.getMessage(), exception);
-                throw new RuntimeException(exception);
-            }
-        }).whenCompleteAsync((item, throwable) -> {
-            if (Objects.nonNull(throwable)) {
-                log.error(throwable.getMessage(), throwable);
+                processarTransacao(record);
+            } catch (Exception e) {
+                retryTopics.forward(record, e).join();
             }
-
         });
 
 
     }
 
-    @KafkaListener(topics = "${app.returnTopic}", clientIdPrefix = "subscriberLimites")
-    public void onConsumeExtorno(final String message, final Acknowledgment acknowledgment) {
-        try {
-            var transaction = getTransaction(message);
-            log.info("Transação retornada da Análise {}", transaction);
+    @KafkaListener(id = TRANSACTION_BATCH_LISTENER, idIsGroup = false, topics = "${app.topic}", clientIdPrefix = "subscriberTransaction",
+            containerFactory = BATCH_LISTENER_FACTORY, autoStartup = "${app.kafka.batch.enabled}")
+    public void onConsumeBatch(final List<ConsumerRecord<String, byte[]>> records, final Acknowledgment acknowledgment) {
+
+        log.info("Lote de {} mensagens chega para leitura", records.size());
+        // as gravações concorrentes do lote são agrupadas em BatchWriteItem pelo DynamoBatchWriter
+        processarLote(records, TransactionMessageReader::idempotencyKey, transactionDomain::receberTransacao);
+        acknowledgment.acknowledge();
+    }
 
-            if (!SituacaoEnum.ANALISADA.equals(transaction.getSituacao())) {
-                log.info("Solicitação de alteração de status da transação {}", transaction);
+    @Override
+    public void onPartitionsRevoked(final Collection<TopicPartition> partitions) {
+        orderedRecordExecutor.revoked(partitions);
+    }
 
-                if (SituacaoEnum.EM_ANALISE_HUMANA.equals(transaction.getSituacao())) {
-                    notification(transaction);
-                }
-                acknowledgment.acknowledge();
+    @KafkaListener(topics = "${app.returnTopic}", clientIdPrefix = "subscriberLimites", autoStartup = "#{!${app.kafka.batch.enabled}}")
+    public void onConsumeExtorno(final ConsumerRecord<String, byte[]> record, final Acknowledgment acknowledgment) {
+        try {
+            processarRetorno(record);
+        } catch (Exception e) {
+            retryTopics.forward(record, e).join();
+        }
+        acknowledgment.acknowledge();
+    }
+
+    /**
+     * Consome os tópicos de retentativa dos dois fluxos. Uma mensagem que ainda não venceu pausa só a sua partição; uma
+     * nova falha segue para o próximo nível.
+     */
+    @KafkaListener(id = RETRY_LISTENER, idIsGroup = false, clientIdPrefix = "subscriberRetry",
+            topics = "#{@retryTopics.retryTopics('${app.topic}', '${app.returnTopic}')}")
+    public void onConsumeRetry(final ConsumerRecord<String, byte[]> record, final Acknowledgment acknowledgment) {
+        var espera = RetryTopics.remaining(record);
+        if (espera > 0) {
+            retryTopics.backoff(RETRY_LISTENER, record, espera);
+            acknowledgment.nack(0);
+            return;
+        }
+        try {
+            if (returnTopic.equals(RetryTopics.originalTopic(record))) {
+                processarRetorno(record);
             } else {
-                log.info("Transação Analisada {} ", transaction);
-                transactionDomain.aprovarTransacao(transaction);
-                enviarLiquidacao(transaction);
-                acknowledgment.acknowledge();
+                processarTransacao(record);
             }
-
+            retryTopics.recovered(record);
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            retryTopics.forward(record, e).join();
+        }
+        acknowledgment.acknowledge();
+    }
+
+    private void processarTransacao(final ConsumerRecord<String, byte[]> record) {
+        idempotencyGuard.once(idempotencyKey(record), () -> Mono.fromCallable(() -> getTransaction(record.value()))
+                        .flatMap(transactionDomain::receberTransacao))
+                .block();
+    }
+
+    private void processarRetorno(final ConsumerRecord<String, byte[]> record) {
+        idempotencyGuard.once(liquidacaoKey(record), () -> Mono.fromCallable(() -> getTransaction(record.value()))
+                        .flatMap(this::liquidarExtorno))
+                .block();
+    }
+
+    @KafkaListener(id = EXTORNO_BATCH_LISTENER, idIsGroup = false, topics = "${app.returnTopic}", clientIdPrefix = "subscriberLimites",
+            containerFactory = BATCH_LISTENER_FACTORY, autoStartup = "${app.kafka.batch.enabled}")
+    public void onConsumeExtornoBatch(final List<ConsumerRecord<String, byte[]>> records, final Acknowledgment acknowledgment) {
+
+        log.info("Lote de {} retornos da análise", records.size());
+        // a liquidação faz parte do processamento de cada mensagem: se o envio falha, a mensagem vai para a retentativa
+        processarLote(records, TransactionMessageReader::liquidacaoKey, this::liquidarExtorno);
+        acknowledgment.acknowledge();
+    }
+
+    // dentro do idempotencyGuard.once: um envio com falha libera a chave para a reentrega
+    private Mono<TransactionDTO> liquidarExtorno(final TransactionDTO transaction) {
+        return processarExtorno(transaction)
+                .flatMap(aprovada -> Mono.fromCallable(() -> enviarLiquidacao(aprovada))
+                        .flatMap(Mono::fromFuture)
+                        .thenReturn(aprovada));
+    }
+
+    // devolve a transação aprovada, que segue para a liquidação
+    private Mono<TransactionDTO> processarExtorno(final TransactionDTO transaction) {
+        log.info("Transação retornada da Análise {}", transaction);
+
+        if (!SituacaoEnum.ANALISADA.equals(transaction.getSituacao())) {
+            log.info("Solicitação de alteração de status da transação {}", transaction);
+
+            if (SituacaoEnum.EM_ANALISE_HUMANA.equals(transaction.getSituacao())) {
+                notification(transaction);
+            }
+            return Mono.empty();
         }
+        log.info("Transação Analisada {} ", transaction);
+        return transactionDomain.aprovarTransacao(transaction)
+                .thenReturn(transaction);
     }
 
-    private void enviarLiquidacao(TransactionDTO transaction) throws JsonProcessingException {
-        String payload = objectMapper.writeValueAsString(transaction);
-        Message<String> kafkaMessage = MessageBuilder
+    /**
+     * Processa o lote em paralelo, mantendo a ordem entre mensagens da mesma transação. Uma falha não interrompe o
+     * restante do lote: as mensagens que falharam são reprocessadas uma a uma no final, e as que falham de novo seguem
+     * para os tópicos de retentativa.
+     */
+    private List<TransactionDTO> processarLote(final List<ConsumerRecord<String, byte[]>> records,
+                                               final Function<ConsumerRecord<String, byte[]>, String> chave,
+                                               final Function<TransactionDTO, Mono<TransactionDTO>> handler) {
+        var transactions = new ArrayList<TransactionDTO>(records.size());
+        var origens = new IdentityHashMap<TransactionDTO, ConsumerRecord<String, byte[]>>();
+        var encaminhadas = new ArrayList<CompletableFuture<SendResult<String, byte[]>>>();
+        for (var record : records) {
+            try {
+                var transaction = getTransaction(record.value());
+                transactions.add(transaction);
+                origens.put(transaction, record);
+            } catch (IOException | SerializationException e) {
+                encaminhadas.add(retryTopics.forward(record, e));
+            }
+        }
+        var falhas = new ConcurrentLinkedQueue<TransactionDTO>();
+        var processadas = Flux.fromIterable(transactions)
+                // transações novas ainda não têm uui e não dependem umas das outras
+                .groupBy(transaction -> Optional.ofNullable(transaction.getUui()).orElseGet(UUID::randomUUID))
+                .flatMap(group -> group.concatMap(transaction -> idempotencyGuard.once(chave.apply(origens.get(transaction)), () -> handler.apply(transaction))
+                        .onErrorResume(throwable -> {
+                            log.warn("Falha no lote, a transação {} será reprocessada isoladamente", transaction, throwable);
+                            falhas.add(transaction);
+                            return Mono.empty();
+                        })), Math.max(transactions.size(), 1))
+                .collectList()
+                .block();
+        var resultado = new ArrayList<>(Objects.requireNonNull(processadas));
+        for (var transaction : falhas) {
+            try {
+                idempotencyGuard.once(chave.apply(origens.get(transaction)), () -> handler.apply(transaction))
+                        .blockOptional()
+                        .ifPresent(resultado::add);
+            } catch (Exception e) {
+                encaminhadas.add(retryTopics.forward(origens.get(transaction), e));
+            }
+        }
+        // o lote só é confirmado depois que as mensagens com falha saíram para a retentativa
+        CompletableFuture.allOf(encaminhadas.toArray(CompletableFuture[]::new)).join();
+        return resultado;
+    }
+
+    // a liquidação é consumida fora deste repositório e continua em JSON
+    private CompletableFuture<SendResult<String, byte[]>> enviarLiquidacao(TransactionDTO transaction) throws JsonProcessingException {
+        byte[] payload = objectMapper.writeValueAsBytes(transaction);
+        Message<byte[]> kafkaMessage = MessageBuilder
                 .withPayload(payload)
                 .setHeader(KafkaHeaders.TOPIC, LIQUIDACAO)
-                .setHeader(KafkaHeaders.PARTITION_ID, 0)
+                .setHeader(KafkaHeaders.MESSAGE_KEY, messageKey(transaction))
                 .build();
 
-        kafkaTemplate.send(kafkaMessage);
+        return kafkaTemplate.send(kafkaMessage).completable();
+    }
+
+    // definida uma única vez pelo transaction-bff, inclusive nas novas tentativas de envio
+    private static String idempotencyKey(final ConsumerRecord<String, byte[]> record) {
+        var header = record.headers().lastHeader(IDEMPOTENCY_KEY);
+        return Objects.nonNull(header) ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    // o limites-svc devolve a chave da transação; a liquidação tem marca própria, separada da gravada na entrada
+    private static String liquidacaoKey(final ConsumerRecord<String, byte[]> record) {
+        var key = idempotencyKey(record);
+        return Objects.nonNull(key) ? key + LIQUIDACAO_KEY_SUFFIX : null;
+    }
+
+    // agência#conta, a mesma chave usada pelos produtores do tópico transaction
+    private static String messageKey(final TransactionDTO transaction) {
+        var conta = transaction.getConta();
+        if (Objects.isNull(conta)) {
+            return null;
+        }
+        return agenciaConta(conta.getCodigoAgencia(), conta.getCodigoConta());
     }
 
     @ContinueSpan
@@ -111,8 +283,9 @@ public class TransactionMessageReader {
 
     }
 
-    private TransactionDTO getTransaction(String message) throws IOException {
-        TransactionDTO transactionDTO = objectMapper.readValue(message, TransactionDTO.class);
+    // aceita JSON e o formato binário do TransactionCodec
+    private TransactionDTO getTransaction(byte[] message) throws IOException {
+        TransactionDTO transactionDTO = transactionCodec.decode(message);
         if (Objects.isNull(transactionDTO.getSituacao())) {
             transactionDTO.setSituacao(SituacaoEnum.NAO_ANALISADA);
         }
@@ -0,0 +1,36 @@
+package br.com.coffeeandit.transaction.http;
+
+import br.com.coffeeandit.transaction.events.kafka.DeadLetterReplayer;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@RestController
+@Slf4j
+@RequestMapping("/v1/dlt")
+@AllArgsConstructor
+public class DeadLetterAPI {
+
+    public static final int MAX_REPLAY = 1000;
+
+    private DeadLetterReplayer deadLetterReplayer;
+
+    @Operation(description = "API para reinjetar no tópico de origem as mensagens do DLT.")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Quantidade de mensagens reinjetadas"),
+            @ApiResponse(responseCode = "400", description = "Parâmetros de requisição inválidos.")})
+    @PostMapping("/replay")
+    public Mono<Integer> replay(@RequestParam(value = "topic", defaultValue = "transaction") final String topic,
+                                @RequestParam(value = "limit", defaultValue = "100") final int limit) {
+        // o consumidor do Kafka é bloqueante
+        return Mono.fromCallable(() -> deadLetterReplayer.replay(topic, Math.min(Math.max(limit, 1), MAX_REPLAY)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,284 @@
+package br.com.coffeeandit.transaction.http;
+
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static br.com.coffeeandit.transaction.http.TransactionController.TRANSACTION_EVENT;
+import static br.com.coffeeandit.transaction.http.TransactionController.TRANSACTION_REMOVED;
+import static br.com.coffeeandit.transaction.http.TransactionController.TRANSACTION_SNAPSHOT;
+
+/**
+ * Streams SSE compartilhados por agência/conta: o primeiro assinante inicia a consulta, os seguintes recebem os mesmos
+ * eventos, já serializados, e a consulta é encerrada quando o último assinante sai.
+ * <p>
+ * Cada evento traz só as transações novas ou alteradas (ou os Ids das removidas), com id {@code época:sequência}: a época
+ * identifica o stream nesta réplica e a sequência cresce a cada evento. Os últimos {@code replaySize} eventos ficam
+ * guardados, inclusive por {@code replayTtl} depois que o último assinante sai, para que uma reconexão com
+ * {@code Last-Event-ID} receba exatamente o que perdeu. Ids de outra época (outra réplica ou stream recriado) ou fora do
+ * histórico recebem um snapshot da conta consultado no repositório.
+ */
+@Component
+@Slf4j
+public class SharedTransactionStreams {
+
+    public static final String STREAMS = "transaction.sse.streams";
+    public static final String UPSTREAM = "transaction.sse.upstream";
+    public static final String UPSTREAM_SAVED = "transaction.sse.upstream.saved";
+    public static final String REPLAYED = "transaction.sse.replayed";
+    public static final String SNAPSHOTS = "transaction.sse.snapshots";
+    public static final String EPOCH_SEPARATOR = ":";
+
+    private final ObjectMapper objectMapper;
+    private final Counter upstream;
+    private final Counter upstreamSaved;
+    private final Counter replayed;
+    private final Counter snapshots;
+    private final Map<String, SharedStream> streams = new ConcurrentHashMap<>();
+    private Cache<String, SharedStream> idleStreams;
+
+    @Value("${app.sse.bufferSize}")
+    private int bufferSize;
+    @Value("${app.sse.replaySize}")
+    private int replaySize;
+    @Value("${app.sse.replayTtl}")
+    private Duration replayTtl;
+    @Value("${app.sse.snapshotSize}")
+    private int snapshotSize;
+
+    public SharedTransactionStreams(final ObjectMapper objectMapper, final MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.upstream = Counter.builder(UPSTREAM)
+                .description("Eventos produzidos pelos streams compartilhados (uma consulta cada no modo polling)")
+                .register(meterRegistry);
+        this.upstreamSaved = Counter.builder(UPSTREAM_SAVED)
+                .description("Consultas e serializações evitadas por assinantes que compartilham o mesmo stream")
+                .register(meterRegistry);
+        this.replayed = Counter.builder(REPLAYED)
+                .description("Reconexões atendidas a partir do histórico de eventos")
+                .register(meterRegistry);
+        this.snapshots = Counter.builder(SNAPSHOTS)
+                .description("Snapshots enviados a assinantes novos ou fora do histórico de eventos")
+                .register(meterRegistry);
+        Gauge.builder(STREAMS, streams, Map::size)
+                .description("Streams SSE compartilhados ativos")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        idleStreams = Caffeine.newBuilder()
+                .expireAfterWrite(replayTtl)
+                .build();
+    }
+
+    public Flux<ServerSentEvent<String>> share(final String key, final String lastEventId,
+                                               final Supplier<Flux<TransactionDTO>> snapshot,
+                                               final Supplier<Flux<List<TransactionDTO>>> source) {
+        return share(key, lastEventId, snapshot, source, Flux::empty);
+    }
+
+    public Flux<ServerSentEvent<String>> share(final String key, final String lastEventId,
+                                               final Supplier<Flux<TransactionDTO>> snapshot,
+                                               final Supplier<Flux<List<TransactionDTO>>> source,
+                                               final Supplier<Flux<UUID>> removals) {
+        return Flux.defer(() -> {
+            var stream = streams.compute(key, (account, existing) -> {
+                var current = Objects.nonNull(existing) ? existing : reactivate(account);
+                current.subscribers++;
+                return current;
+            });
+            // o ponto de retomada vem antes do start: o que a consulta emitir na hora chega pelo histórico
+            var resumed = stream.resume(lastEventId, snapshot);
+            stream.start(source, removals);
+            // buffer por assinante: um cliente lento não segura os demais
+            return resumed
+                    .onBackpressureBuffer(bufferSize, event -> log.warn("Evento SSE descartado para {}", key),
+                            BufferOverflowStrategy.DROP_OLDEST)
+                    .doFinally(signalType -> release(key, stream));
+        });
+    }
+
+    public int subscribers(final String key) {
+        var stream = streams.get(key);
+        return Objects.nonNull(stream) ? stream.subscribers : 0;
+    }
+
+    private SharedStream reactivate(final String key) {
+        var idle = idleStreams.asMap().remove(key);
+        return Objects.nonNull(idle) ? idle : new SharedStream(key);
+    }
+
+    private void release(final String key, final SharedStream released) {
+        streams.computeIfPresent(key, (account, stream) -> {
+            if (stream != released || --stream.subscribers > 0) {
+                return stream;
+            }
+            stream.stop();
+            idleStreams.put(account, stream);
+            return null;
+        });
+    }
+
+    private String serialize(final List<?> values) {
+        try {
+            return objectMapper.writeValueAsString(values);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Não foi possível serializar o evento de transações", e);
+        }
+    }
+
+    private static long eventId(final ServerSentEvent<String> event) {
+        var id = Objects.requireNonNull(event.id());
+        return Long.parseLong(id.substring(id.indexOf(EPOCH_SEPARATOR) + 1));
+    }
+
+    // só a situação e o valor mudam depois que a transação é criada
+    private static boolean changed(final TransactionDTO previous, final TransactionDTO current) {
+        return Objects.isNull(previous) || !Objects.equals(previous.getSituacao(), current.getSituacao())
+                || !Objects.equals(previous.getValor(), current.getValor());
+    }
+
+    private class SharedStream {
+
+        private final String key;
+        // guarda os últimos replaySize eventos e os reenvia a cada nova assinatura
+        private final Sinks.Many<ServerSentEvent<String>> events = Sinks.many().replay().limit(replaySize);
+        // última versão vista de cada transação, para calcular os deltas
+        private final Map<UUID, TransactionDTO> latest = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, TransactionDTO> eldest) {
+                return size() > snapshotSize;
+            }
+        };
+        // um stream recriado, ou de outra réplica, tem outra época e não aceita os ids deste
+        private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        private long sequence;
+        // protegido pelo compute/computeIfPresent do mapa de streams
+        private int subscribers;
+        private Disposable upstreamSubscription;
+
+        SharedStream(final String key) {
+            this.key = key;
+        }
+
+        synchronized void start(final Supplier<Flux<List<TransactionDTO>>> source, final Supplier<Flux<UUID>> removals) {
+            if (Objects.nonNull(upstreamSubscription)) {
+                return;
+            }
+            upstreamSubscription = Flux.merge(Flux.defer(source).doOnNext(this::append),
+                            Flux.defer(removals).doOnNext(this::remove))
+                    .subscribe(null, throwable -> {
+                        log.error(throwable.getMessage(), throwable);
+                        streams.remove(key, this);
+                        events.tryEmitError(throwable);
+                    }, () -> {
+                        streams.remove(key, this);
+                        events.tryEmitComplete();
+                    });
+        }
+
+        synchronized void stop() {
+            if (Objects.nonNull(upstreamSubscription)) {
+                upstreamSubscription.dispose();
+                upstreamSubscription = null;
+            }
+        }
+
+        synchronized void append(final List<TransactionDTO> transactions) {
+            var delta = new ArrayList<TransactionDTO>();
+            transactions.forEach(transaction -> {
+                if (changed(latest.get(transaction.getUui()), transaction)) {
+                    latest.put(transaction.getUui(), transaction);
+                    delta.add(transaction);
+                }
+            });
+            upstream.increment();
+            upstreamSaved.increment(Math.max(subscribers - 1, 0));
+            if (delta.isEmpty()) {
+                return;
+            }
+            events.tryEmitNext(ServerSentEvent.<String>builder()
+                    .id(id(++sequence))
+                    .event(TRANSACTION_EVENT)
+                    .data(serialize(delta))
+                    .build());
+        }
+
+        synchronized void remove(final UUID uuid) {
+            latest.remove(uuid);
+            upstream.increment();
+            events.tryEmitNext(ServerSentEvent.<String>builder()
+                    .id(id(++sequence))
+                    .event(TRANSACTION_REMOVED)
+                    .data(serialize(List.of(uuid)))
+                    .build());
+        }
+
+        synchronized Flux<ServerSentEvent<String>> resume(final String lastEventId,
+                                                          final Supplier<Flux<TransactionDTO>> snapshot) {
+            var lastId = parseEventId(lastEventId);
+            if (Objects.nonNull(lastId) && lastId >= Math.max(sequence - replaySize, 0) && lastId <= sequence) {
+                replayed.increment();
+                return events.asFlux().filter(event -> eventId(event) > lastId);
+            }
+            // assinante novo ou que perdeu eventos já descartados: começa pelo estado da conta no repositório, e os
+            // eventos gerados durante a consulta chegam depois pelo histórico
+            var upTo = sequence;
+            var live = events.asFlux().filter(event -> eventId(event) > upTo);
+            var state = Flux.defer(snapshot)
+                    .collectList()
+                    .filter(transactions -> !transactions.isEmpty())
+                    .map(transactions -> {
+                        snapshots.increment();
+                        return ServerSentEvent.<String>builder()
+                                .id(id(upTo))
+                                .event(TRANSACTION_SNAPSHOT)
+                                .data(serialize(transactions))
+                                .build();
+                    });
+            return Flux.concat(state, live);
+        }
+
+        private String id(final long value) {
+            return epoch + EPOCH_SEPARATOR + value;
+        }
+
+        // só aceita ids desta época
+        private Long parseEventId(final String lastEventId) {
+            if (Objects.isNull(lastEventId) || !lastEventId.trim().startsWith(epoch + EPOCH_SEPARATOR)) {
+                return null;
+            }
+            try {
+                return Long.valueOf(lastEventId.trim().substring(epoch.length() + EPOCH_SEPARATOR.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -29,7 +29,7 @@ public class TransactionAPI {
             @ApiResponse(responseCode = "404", description = "Recurso não encontrado")})
     @PostMapping
     public Mono<TransactionDTO> criarTransacao(@Valid TransactionDTO transactionDTO) {
-        return Mono.just(transactionDomain.inserirTransacao(transactionDTO));
+        return transactionDomain.inserirTransacao(transactionDTO);
     }
 
     @Operation(description = "API responsável por aprovar uma transação.")
@@ -39,7 +39,7 @@ public class TransactionAPI {
             , @ApiResponse(responseCode = "400", description = "Parâmetros de requisição inválidos.")})
     @PatchMapping
     public Mono<TransactionDTO> aprovarTransacao(@Valid TransactionDTO transactionDTO) {
-        return Mono.just(transactionDomain.aprovarTransacao(transactionDTO));
+        return transactionDomain.aprovarTransacao(transactionDTO);
     }
 
     @Operation(description = "API responsável por rejeitar uma transação.")
@@ -48,6 +48,6 @@ public class TransactionAPI {
             , @ApiResponse(responseCode = "400", description = "Parâmetros de requisição inválidos.")})
     @DeleteMapping
     public Mono<TransactionDTO> rejeitarTransacao(@Valid TransactionDTO transactionDTO) {
-        return Mono.just(transactionDomain.rejeitarTransacao(transactionDTO));
+        return transactionDomain.rejeitarTransacao(transactionDTO);
     }
 }
@@ -1,9 +1,11 @@
 package br.com.coffeeandit.transaction.http;
 
+import br.com.coffeeandit.transaction.config.DomainBusinessException;
 import br.com.coffeeandit.transaction.config.NotFoundResponse;
 import br.com.coffeeandit.transaction.domain.AlteracaoSituacaoDTO;
 import br.com.coffeeandit.transaction.domain.TransactionDTO;
 import br.com.coffeeandit.transaction.infrastructure.TransactionBusiness;
+import br.com.coffeeandit.transaction.infrastructure.TransactionEventHub;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.Parameters;
@@ -14,6 +16,7 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -24,7 +27,15 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.agenciaConta;
 
 @RestController
 @Slf4j
@@ -34,16 +45,34 @@ import java.util.List;
 public class TransactionController {
 
     public static final String TRANSACTION_EVENT = "transaction-event";
+    public static final String TRANSACTION_SNAPSHOT = "transaction-snapshot";
+    public static final String TRANSACTION_REMOVED = "transaction-removed";
+    public static final String LAST_EVENT_ID = "Last-Event-ID";
+    public static final String SSE_POLLING = "polling";
+    public static final int MAX_BATCH_GET = 100;
+    public static final int MAX_HISTORY_LIMIT = 1000;
+    public static final String CONTINUATION_TOKEN = "X-Continuation-Token";
     @Value("${app.timeout}")
     private int timeout;
     @Value("${app.cacheTime}")
     public int cacheTime;
     private TransactionBusiness transactionBusiness;
+    private TransactionEventHub transactionEventHub;
+    private SharedTransactionStreams sharedTransactionStreams;
     @Value("${app.intervalTransaction}")
     private int intervalTransaction;
-
-    public TransactionController(final TransactionBusiness transactionBusiness) {
+    @Value("${app.sse.mode}")
+    private String sseMode;
+    @Value("${app.sse.conflateInterval}")
+    private Duration conflateInterval;
+    @Value("${app.sse.maxEvents}")
+    private int maxEvents;
+
+    public TransactionController(final TransactionBusiness transactionBusiness, final TransactionEventHub transactionEventHub,
+                                 final SharedTransactionStreams sharedTransactionStreams) {
         this.transactionBusiness = transactionBusiness;
+        this.transactionEventHub = transactionEventHub;
+        this.sharedTransactionStreams = sharedTransactionStreams;
     }
 
     @Operation(description = "API responsável por retornar um SSE com Flux com as transações por período agência e conta.")
@@ -53,24 +82,49 @@ public class TransactionController {
             @ApiResponse(responseCode = "404", description = "Recurso não encontrado")})
     @GetMapping(value = "/transactions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @Parameters({@Parameter(in = ParameterIn.QUERY, description = "número da conta", name = "conta", example = "07421"),
-            @Parameter(in = ParameterIn.QUERY, description = "número da agẽncia", name = "agencia", example = "0209")
+            @Parameter(in = ParameterIn.QUERY, description = "número da agẽncia", name = "agencia", example = "0209"),
+            @Parameter(in = ParameterIn.HEADER, description = "último evento recebido antes da reconexão", name = LAST_EVENT_ID)
     })
-    public Flux<ServerSentEvent<List<TransactionDTO>>> queryTransaction(
+    public Flux<ServerSentEvent<String>> queryTransaction(
             @RequestParam("conta") final Long conta,
-            @RequestParam("agencia") final Long agencia
+            @RequestParam("agencia") final Long agencia,
+            @RequestHeader(value = LAST_EVENT_ID, required = false) final String lastEventId
     ) {
 
-        return Flux.interval(Duration.ofSeconds(intervalTransaction))
-                .map(sequence -> ServerSentEvent.<List<TransactionDTO>>builder()
-                        .id(String.valueOf(sequence))
-                        .event(TRANSACTION_EVENT)
-                        .data(transactionBusiness.queryTransactionFewSeconds(agencia, conta))
-                        .build())
+        // assinantes da mesma conta compartilham a consulta e recebem o mesmo evento já serializado
+        var key = agenciaConta(agencia, conta);
+        Supplier<Flux<TransactionDTO>> snapshot = () -> transactionBusiness.queryTransaction(agencia, conta);
+        var stream = SSE_POLLING.equals(sseMode)
+                ? sharedTransactionStreams.share(key, lastEventId, snapshot, () -> pollTransactions(agencia, conta))
+                : sharedTransactionStreams.share(key, lastEventId, snapshot, () -> pushTransactions(agencia, conta),
+                () -> transactionEventHub.subscribeRemovals(agencia, conta));
+        return stream
                 .doOnError(throwable -> {
                     log.error(throwable.getMessage(), throwable);
                 });
+    }
+
+    // eventos próximos no tempo são enviados juntos, mantendo só a versão mais recente de cada transação
+    private Flux<List<TransactionDTO>> pushTransactions(final Long agencia, final Long conta) {
+
+        return transactionEventHub.subscribe(agencia, conta)
+                .bufferTimeout(maxEvents, conflateInterval)
+                .map(TransactionController::conflate);
+    }
+
+    // modo degradado: consulta periódica ao DynamoDB
+    private Flux<List<TransactionDTO>> pollTransactions(final Long agencia, final Long conta) {
 
+        return Flux.interval(Duration.ofSeconds(intervalTransaction))
+                .onBackpressureDrop()
+                .concatMap(sequence -> transactionBusiness.queryTransactionFewSeconds(agencia, conta)
+                        .collectList());
+    }
 
+    private static List<TransactionDTO> conflate(final List<TransactionDTO> transactions) {
+        var latest = new LinkedHashMap<UUID, TransactionDTO>();
+        transactions.forEach(transaction -> latest.put(transaction.getUui(), transaction));
+        return new ArrayList<>(latest.values());
     }
 
 
@@ -84,42 +138,67 @@ public class TransactionController {
     @Parameters({@Parameter(in = ParameterIn.PATH, description = "Hash da Transação", name = "id"),
             @Parameter(in = ParameterIn.QUERY, description = "Status da Transação", name = "situacao")
     })
-    public ResponseEntity patch(@PathVariable("id") String uuid, @Valid @RequestBody AlteracaoSituacaoDTO alteracaoSituacaoDTO) {
-        var item = transactionBusiness.retrieveItem(uuid);
-        if (item.isPresent()) {
-            var transactionDTO = item.get();
-            log.info("Transação recuperada para atualização %s ", transactionDTO);
-            transactionDTO.setSituacao(alteracaoSituacaoDTO.getSituacao());
-            log.info("Situação da Transação alterada %s ", transactionDTO);
-            var updateItem = transactionBusiness.updateAndRetrieveItem(transactionDTO);
-            if (updateItem.isPresent()) {
-                return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
-
-            }
-        }
-        throw new NotFoundResponse(String.format("Não foi possível alterar a transação %s", uuid));
+    public Mono<ResponseEntity<Void>> patch(@PathVariable("id") String uuid, @Valid @RequestBody AlteracaoSituacaoDTO alteracaoSituacaoDTO) {
+        return transactionBusiness.alterarSituacao(uuid, alteracaoSituacaoDTO.getSituacao())
+                .doOnNext(transactionDTO -> log.info("Situação da Transação alterada {} ", transactionDTO))
+                .map(updateItem -> ResponseEntity.status(HttpStatus.NO_CONTENT).<Void>build())
+                .switchIfEmpty(Mono.error(() -> new NotFoundResponse(String.format("Não foi possível alterar a transação %s", uuid))));
 
     }
 
     @DeleteMapping(value = "/transactions/{id}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity deleteById(@PathVariable("id") String uuid) {
-        var item = transactionBusiness.retrieveItem(uuid);
-        if (item.isPresent()) {
-            transactionBusiness.removeItem(item.get());
-        }
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    public Mono<ResponseEntity<Void>> deleteById(@PathVariable("id") String uuid) {
+        return transactionBusiness.removeItem(uuid)
+                .then(Mono.fromSupplier(() -> ResponseEntity.status(HttpStatus.NO_CONTENT).<Void>build()));
     }
 
-    @GetMapping(value = "/transactions/block", produces = MediaType.APPLICATION_JSON_VALUE)
+    @GetMapping(value = "/transactions/block", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
     public Flux<TransactionDTO> queryTransactionBlock(
             @RequestParam("conta") final Long conta, @RequestParam("agencia") final Long agencia
     ) {
-        return Flux.fromIterable(transactionBusiness.queryTransaction(agencia, conta))
-                .limitRate(100).cache(Duration.ofMinutes(5));
+        return transactionBusiness.queryTransaction(agencia, conta)
+                .limitRate(100);
 
 
     }
 
+    @Operation(description = "API para consultar o histórico de transações da conta por período, enviado à medida que é lido")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Transações do período; o header X-Continuation-Token indica a próxima página."),
+            @ApiResponse(responseCode = "400", description = "Período ou token de continuação inválido")})
+    @Parameters({@Parameter(in = ParameterIn.QUERY, description = "número da conta", name = "conta", example = "07421"),
+            @Parameter(in = ParameterIn.QUERY, description = "número da agẽncia", name = "agencia", example = "0209"),
+            @Parameter(in = ParameterIn.QUERY, description = "início do período", name = "from", example = "2021-08-01T00:00:00"),
+            @Parameter(in = ParameterIn.QUERY, description = "fim do período", name = "to", example = "2021-08-31T23:59:59"),
+            @Parameter(in = ParameterIn.QUERY, description = "quantidade máxima de transações por página", name = "limit"),
+            @Parameter(in = ParameterIn.QUERY, description = "token de continuação da página anterior", name = "cursor")
+    })
+    @GetMapping(value = "/transactions/history", consumes = MediaType.ALL_VALUE,
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Flux<TransactionDTO>>> queryTransactionHistory(
+            @RequestParam("conta") final Long conta, @RequestParam("agencia") final Long agencia,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime to,
+            @RequestParam(value = "limit", required = false) final Integer limit,
+            @RequestParam(value = "cursor", required = false) final String cursor
+    ) {
+        if (from.isAfter(to)) {
+            return Mono.error(new DomainBusinessException(HttpStatus.BAD_REQUEST, "O início do período deve ser anterior ao fim"));
+        }
+        if (Objects.isNull(limit) && Objects.isNull(cursor)) {
+            // sem paginação explícita as páginas do DynamoDB são repassadas à medida que chegam
+            return Mono.just(ResponseEntity.ok(transactionBusiness.queryTransaction(agencia, conta, from, to)));
+        }
+        var pageLimit = Objects.isNull(limit) ? MAX_HISTORY_LIMIT : Math.min(Math.max(limit, 1), MAX_HISTORY_LIMIT);
+        return transactionBusiness.queryTransactionPage(agencia, conta, from, to, pageLimit, cursor)
+                .map(page -> {
+                    var response = ResponseEntity.ok();
+                    if (Objects.nonNull(page.getCursor())) {
+                        response.header(CONTINUATION_TOKEN, page.getCursor());
+                    }
+                    return response.body(Flux.fromIterable(page.getTransactions()));
+                });
+    }
+
     @GetMapping(value = "/transactions/version", produces = MediaType.TEXT_HTML_VALUE)
     public ResponseEntity<String> getFakeVersion() {
         return ResponseEntity.ok("V2");
@@ -127,12 +206,22 @@ public class TransactionController {
 
     }
 
+    @Operation(description = "API para buscar até 100 transações pelo Id em uma única chamada")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Transações encontradas, enviadas à medida que são lidas."),
+            @ApiResponse(responseCode = "400", description = "Quantidade de Ids acima do permitido")})
+    @PostMapping(value = "/transactions/batch-get", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<TransactionDTO> batchGet(@RequestBody final List<String> uuids) {
+        if (uuids.size() > MAX_BATCH_GET) {
+            return Flux.error(new DomainBusinessException(HttpStatus.BAD_REQUEST,
+                    String.format("É permitido buscar no máximo %d transações por chamada", MAX_BATCH_GET)));
+        }
+        return transactionBusiness.retrieveItems(uuids);
+    }
+
     @GetMapping(value = "/transactions/{id}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     public Mono<TransactionDTO> findById(@PathVariable("id") String uuid) {
-        var item = transactionBusiness.retrieveItem(uuid);
-        if (item.isPresent()) {
-            return Mono.just(item.get());
-        }
-        throw new NotFoundResponse("Transação não encontrada");
+        return transactionBusiness.retrieveItem(uuid)
+                .switchIfEmpty(Mono.error(() -> new NotFoundResponse("Transação não encontrada")));
     }
 }
\ No newline at end of file
@@ -3,24 +3,25 @@ package br.com.coffeeandit.transaction.infrastructure;
 import br.com.coffeeandit.transaction.config.DomainBusinessException;
 import br.com.coffeeandit.transaction.domain.SituacaoEnum;
 import br.com.coffeeandit.transaction.domain.TransactionDTO;
-import br.com.coffeeandit.transaction.repository.DynamoRepository;
-import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
-import com.amazonaws.services.dynamodbv2.document.Item;
-import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
+import br.com.coffeeandit.transaction.domain.TransactionPage;
+import br.com.coffeeandit.transaction.repository.ConditionFailedException;
+import br.com.coffeeandit.transaction.repository.TransactionRepository;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.sleuth.annotation.NewSpan;
 import org.springframework.cloud.sleuth.annotation.SpanTag;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 
 @Service
 @Transactional
@@ -28,97 +29,138 @@ import java.util.Optional;
 public class TransactionBusiness {
 
 
-    private DynamoRepository dynamoRepository;
+    private TransactionRepository dynamoRepository;
+    private TransactionCache transactionCache;
+    private TransactionEventHub transactionEventHub;
     public static final int AMOUNT_TO_ADD = -1;
 
 
-    public TransactionBusiness(final DynamoRepository dynamoRepository) {
+    public TransactionBusiness(final TransactionRepository dynamoRepository, final TransactionCache transactionCache,
+                               final TransactionEventHub transactionEventHub) {
         this.dynamoRepository = dynamoRepository;
+        this.transactionCache = transactionCache;
+        this.transactionEventHub = transactionEventHub;
     }
 
     @NewSpan
-    public Item putItem(@Valid @SpanTag(key = "transaction") final TransactionDTO transaction) {
+    public Mono<TransactionDTO> putItem(@Valid @SpanTag(key = "transaction") final TransactionDTO transaction) {
         if (Objects.isNull(transaction) || Objects.isNull(transaction.getUui())) {
             throw new IllegalArgumentException("Argumentos ilegais para aprovar uma transação.");
         }
-        if (retrieveItem(transaction.getUui().toString()).isPresent()) {
-            throw new DomainBusinessException(String.format("Transaçao %s já existe", transaction.getUui()));
+        return dynamoRepository.insertItem(transaction)
+                .doOnNext(transactionEventHub::publish)
+                .onErrorMap(ConditionFailedException.class,
+                        e -> new DomainBusinessException(String.format("Transaçao %s já existe", transaction.getUui())))
+                .doFinally(signalType -> transactionCache.invalidate(transaction));
+
+    }
+
+    @NewSpan
+    public Mono<TransactionDTO> writeBehind(@Valid @SpanTag(key = "transaction") final TransactionDTO transaction) {
+        if (Objects.isNull(transaction) || Objects.isNull(transaction.getUui())) {
+            throw new IllegalArgumentException("Argumentos ilegais para aprovar uma transação.");
         }
-        return dynamoRepository.putItem(transaction);
+        return dynamoRepository.writeBehind(transaction)
+                .doOnNext(transactionEventHub::publish)
+                .doFinally(signalType -> transactionCache.invalidate(transaction));
 
     }
 
-    public Optional<TransactionDTO> retrieveItem(@NonNull final String uui) {
+    public Mono<TransactionDTO> retrieveItem(@NonNull final String uui) {
 
-        return dynamoRepository.retrieveItem(uui);
+        return transactionCache.getTransaction(uui, dynamoRepository::retrieveItem);
     }
 
-    public Optional<TransactionDTO> insertOrUpdate(@NonNull @Valid final TransactionDTO transaction) {
+    public Flux<TransactionDTO> retrieveItems(@NonNull final List<String> uuis) {
 
+        return dynamoRepository.retrieveItems(uuis);
+    }
 
-        var transactionDTO = retrieveItem(transaction.getUui().toString());
-        if (transactionDTO.isEmpty()) {
-            putItem(transaction);
-            return retrieveItem(transaction.getUui().toString());
-        } else {
-            return updateAndRetrieveItem(transaction);
-        }
+    public Mono<TransactionDTO> insertOrUpdate(@NonNull @Valid final TransactionDTO transaction) {
 
+        return dynamoRepository.upsertSituacao(transaction)
+                .doOnNext(transactionEventHub::publish)
+                .doFinally(signalType -> transactionCache.invalidate(transaction));
 
     }
 
     @NewSpan
-    public Optional<DeleteItemOutcome> removeItem(@Valid @SpanTag(key = "removeTransaction") final TransactionDTO transactionDTO) {
-        Optional<TransactionDTO> retrieveItem = retrieveItem(transactionDTO.getUui().toString());
-        if (retrieveItem.isPresent() && SituacaoEnum.ANALISADA.equals(retrieveItem.get().getSituacao())) {
-            throw new DomainBusinessException("Transação já foi aprovada e não pode ser excluida");
+    public Mono<TransactionDTO> removeItem(@Valid @SpanTag(key = "removeTransaction") final TransactionDTO transactionDTO) {
+        return removeItem(transactionDTO.getUui().toString());
+    }
 
-        }
-        return dynamoRepository.removeItem(transactionDTO);
+    @NewSpan
+    public Mono<TransactionDTO> removeItem(@NonNull @SpanTag(key = "removeTransaction") final String uui) {
+        return dynamoRepository.removeItem(uui)
+                .doOnNext(transactionCache::invalidate)
+                .doOnNext(transactionEventHub::publishRemoval)
+                .doFinally(signalType -> transactionCache.invalidate(uui))
+                .onErrorMap(ConditionFailedException.class,
+                        e -> new DomainBusinessException("Transação já foi aprovada e não pode ser excluida"));
 
     }
 
     @NewSpan
-    public void aprovarTransacao(@Valid final TransactionDTO transactionDTO) {
+    public Mono<TransactionDTO> aprovarTransacao(@Valid final TransactionDTO transactionDTO) {
         if (Objects.isNull(transactionDTO) || Objects.isNull(transactionDTO.getUui())) {
             throw new IllegalArgumentException("Argumentos ilegais para aprovar uma transação.");
         }
         log.info("Aprovando a transação conteudo anterior {}", transactionDTO);
         transactionDTO.analisada();
-        var transaction =
-                insertOrUpdate(transactionDTO);
-        if (transaction.isPresent()) {
-            log.info("Aprovando a transação conteudo atual {}", transaction.get());
-        }
+        return insertOrUpdate(transactionDTO)
+                .doOnNext(transaction -> log.info("Aprovando a transação conteudo atual {}", transaction));
+
+    }
+
+    @NewSpan
+    public Mono<TransactionDTO> analisarItem(@NonNull @SpanTag(key = "updateTransaction") final String uui, final BigDecimal valorMaximo,
+                                             @NonNull final SituacaoEnum situacao) {
 
+        return dynamoRepository.analisarItem(uui, valorMaximo, situacao)
+                .doOnNext(transactionCache::invalidate)
+                .doOnNext(transactionEventHub::publish)
+                .doFinally(signalType -> transactionCache.invalidate(uui))
+                .onErrorResume(ConditionFailedException.class, e -> Mono.empty());
 
     }
 
     @NewSpan
-    public Optional<UpdateItemOutcome> updateItem(@Valid @SpanTag(key = "updateTransaction") final TransactionDTO transactionDTO) {
+    public Mono<Void> updateItem(@Valid @SpanTag(key = "updateTransaction") final TransactionDTO transactionDTO) {
 
-        return dynamoRepository.updateItem(transactionDTO);
+        return updateAndRetrieveItem(transactionDTO).then();
 
     }
 
     @NewSpan
-    public Optional<TransactionDTO> updateAndRetrieveItem(@Valid @SpanTag(key = "updateTransaction") final TransactionDTO transactionDTO) {
+    public Mono<TransactionDTO> updateAndRetrieveItem(@Valid @SpanTag(key = "updateTransaction") final TransactionDTO transactionDTO) {
 
-        dynamoRepository.updateItem(transactionDTO);
-        return retrieveItem(transactionDTO.getUui().toString());
+        return alterarSituacao(transactionDTO.getUui().toString(), transactionDTO.getSituacao());
 
     }
 
-    public List<TransactionDTO> queryTransaction(@NotNull final Long agencia, @NotNull final Long conta) {
+    @NewSpan
+    public Mono<TransactionDTO> alterarSituacao(@NonNull @SpanTag(key = "updateTransaction") final String uui, @NonNull final SituacaoEnum situacao) {
 
+        return dynamoRepository.updateSituacao(uui, situacao)
+                .doOnNext(transactionCache::invalidate)
+                .doOnNext(transactionEventHub::publish)
+                .doFinally(signalType -> transactionCache.invalidate(uui))
+                .onErrorResume(ConditionFailedException.class, e -> Mono.empty());
 
-        var now = LocalDateTime.now();
-        var lastWeek = now.plus(AMOUNT_TO_ADD, ChronoUnit.WEEKS);
-        return queryTransaction(agencia, conta, lastWeek, now);
+    }
+
+    public Flux<TransactionDTO> queryTransaction(@NotNull final Long agencia, @NotNull final Long conta) {
+
+
+        return transactionCache.getAccountTransactions(agencia, conta, () -> {
+            var now = LocalDateTime.now();
+            var lastWeek = now.plus(AMOUNT_TO_ADD, ChronoUnit.WEEKS);
+            return queryTransaction(agencia, conta, lastWeek, now);
+        });
 
     }
 
-    public List<TransactionDTO> queryTransactionFewSeconds(final Long agencia, final Long conta) {
+    public Flux<TransactionDTO> queryTransactionFewSeconds(final Long agencia, final Long conta) {
 
 
         var now = LocalDateTime.now();
@@ -128,7 +170,7 @@ public class TransactionBusiness {
     }
 
 
-    public List<TransactionDTO> queryTransaction(final Long agencia, final Long conta,
+    public Flux<TransactionDTO> queryTransaction(final Long agencia, final Long conta,
                                                  final LocalDateTime start, final LocalDateTime end
     ) {
 
@@ -136,5 +178,12 @@ public class TransactionBusiness {
 
     }
 
+    public Mono<TransactionPage> queryTransactionPage(final Long agencia, final Long conta,
+                                                      final LocalDateTime start, final LocalDateTime end,
+                                                      final int limit, final String cursor) {
+
+        return dynamoRepository.queryTransactionPage(agencia, conta, start, end, limit, cursor);
+    }
+
 
 }
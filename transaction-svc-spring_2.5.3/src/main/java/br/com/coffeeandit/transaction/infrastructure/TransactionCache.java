@@ -0,0 +1,88 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.agenciaConta;
+
+@Component
+public class TransactionCache implements MeterBinder {
+
+    public static final String TRANSACTIONS = "transactions";
+    public static final String ACCOUNT_TRANSACTIONS = "accountTransactions";
+
+    @Value("${app.cache.transaction.ttl}")
+    private Duration transactionTtl;
+    @Value("${app.cache.transaction.maximumSize}")
+    private long transactionMaximumSize;
+    @Value("${app.cache.account.ttl}")
+    private Duration accountTtl;
+    @Value("${app.cache.account.maximumSize}")
+    private long accountMaximumSize;
+
+    private AsyncCache<String, TransactionDTO> transactions;
+    private AsyncCache<String, List<TransactionDTO>> accountTransactions;
+
+    @PostConstruct
+    public void init() {
+        transactions = Caffeine.newBuilder()
+                .maximumSize(transactionMaximumSize)
+                .expireAfterWrite(transactionTtl)
+                .recordStats()
+                .buildAsync();
+        accountTransactions = Caffeine.newBuilder()
+                .maximumSize(accountMaximumSize)
+                .expireAfterWrite(accountTtl)
+                .recordStats()
+                .buildAsync();
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, transactions, TRANSACTIONS);
+        CaffeineCacheMetrics.monitor(registry, accountTransactions, ACCOUNT_TRANSACTIONS);
+    }
+
+    public Mono<TransactionDTO> getTransaction(final String uui, final Function<String, Mono<TransactionDTO>> loader) {
+        // o thenApply isola o future do cache: o cancelamento de um assinante não cancela a carga compartilhada
+        return Mono.fromFuture(() -> transactions.get(uui, (key, executor) -> loader.apply(key).toFuture())
+                .thenApply(Function.identity()));
+    }
+
+    public Flux<TransactionDTO> getAccountTransactions(final Long agencia, final Long conta,
+                                                       final Supplier<Flux<TransactionDTO>> loader) {
+        return Mono.fromFuture(() -> accountTransactions.get(agenciaConta(agencia, conta),
+                                (key, executor) -> loader.get().collectList().toFuture())
+                        .thenApply(Function.identity()))
+                .flatMapIterable(Function.identity());
+    }
+
+    public void invalidate(final String uui) {
+        transactions.synchronous().invalidate(uui);
+    }
+
+    public void invalidate(final TransactionDTO transaction) {
+        if (Objects.nonNull(transaction.getUui())) {
+            invalidate(transaction.getUui().toString());
+        }
+        var conta = transaction.getConta();
+        if (Objects.nonNull(conta)) {
+            accountTransactions.synchronous().invalidate(agenciaConta(conta.getCodigoAgencia(), conta.getCodigoConta()));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.agenciaConta;
+
+/**
+ * Distribui as transações gravadas e removidas por esta réplica aos assinantes da mesma agência/conta. Cada assinante
+ * tem um buffer limitado: quando o cliente não acompanha, os eventos mais antigos são descartados.
+ * <p>
+ * Só chegam aqui as escritas da própria réplica; com várias réplicas consumindo o tópico o SSE deve usar o modo polling.
+ */
+@Component
+@Slf4j
+public class TransactionEventHub {
+
+    public static final String SUBSCRIBERS = "transaction.sse.subscribers";
+    public static final String PUBLISHED = "transaction.sse.published";
+    public static final String DROPPED = "transaction.sse.dropped";
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Counter published;
+    private final Counter dropped;
+    private final Map<String, AccountChannel> channels = new ConcurrentHashMap<>();
+
+    @Value("${app.sse.bufferSize}")
+    private int bufferSize;
+
+    public TransactionEventHub(final MeterRegistry meterRegistry) {
+        // um único gauge: uma série por conta cresceria com todas as contas que já abriram um stream
+        Gauge.builder(SUBSCRIBERS, subscribers, AtomicInteger::get)
+                .description("Assinantes de eventos de transação nesta réplica")
+                .register(meterRegistry);
+        this.published = Counter.builder(PUBLISHED)
+                .description("Eventos de transação entregues a contas com assinantes")
+                .register(meterRegistry);
+        this.dropped = Counter.builder(DROPPED)
+                .description("Eventos descartados por assinantes que não acompanharam o ritmo")
+                .register(meterRegistry);
+    }
+
+    public void publish(final TransactionDTO transaction) {
+        var channel = channel(transaction);
+        if (Objects.nonNull(channel)) {
+            channel.sink.emitNext(transaction, RETRY_NON_SERIALIZED);
+            published.increment();
+        }
+    }
+
+    public void publishRemoval(final TransactionDTO transaction) {
+        var channel = channel(transaction);
+        if (Objects.nonNull(channel)) {
+            channel.removals.emitNext(transaction.getUui(), RETRY_NON_SERIALIZED);
+            published.increment();
+        }
+    }
+
+    public Flux<TransactionDTO> subscribe(final Long agencia, final Long conta) {
+        return Flux.defer(() -> {
+            var key = agenciaConta(agencia, conta);
+            var channel = attach(key, true);
+            return channel.sink.asFlux()
+                    .onBackpressureBuffer(bufferSize, transaction -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST)
+                    .doFinally(signalType -> release(key, true));
+        });
+    }
+
+    // acompanha um subscribe da mesma conta: mantém o canal aberto, mas não conta como outro assinante
+    public Flux<UUID> subscribeRemovals(final Long agencia, final Long conta) {
+        return Flux.defer(() -> {
+            var key = agenciaConta(agencia, conta);
+            var channel = attach(key, false);
+            return channel.removals.asFlux()
+                    .onBackpressureBuffer(bufferSize, uuid -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST)
+                    .doFinally(signalType -> release(key, false));
+        });
+    }
+
+    public int subscribers(final Long agencia, final Long conta) {
+        var channel = channels.get(agenciaConta(agencia, conta));
+        return Objects.nonNull(channel) ? channel.subscribers.get() : 0;
+    }
+
+    private AccountChannel channel(final TransactionDTO transaction) {
+        var conta = transaction.getConta();
+        if (Objects.isNull(conta) || Objects.isNull(conta.getCodigoAgencia()) || Objects.isNull(conta.getCodigoConta())) {
+            return null;
+        }
+        return channels.get(agenciaConta(conta.getCodigoAgencia(), conta.getCodigoConta()));
+    }
+
+    private AccountChannel attach(final String key, final boolean subscriber) {
+        return channels.compute(key, (account, existing) -> {
+            var current = Objects.nonNull(existing) ? existing : new AccountChannel();
+            current.references++;
+            if (subscriber) {
+                current.subscribers.incrementAndGet();
+                subscribers.incrementAndGet();
+            }
+            return current;
+        });
+    }
+
+    private void release(final String key, final boolean subscriber) {
+        channels.computeIfPresent(key, (account, channel) -> {
+            if (subscriber) {
+                channel.subscribers.decrementAndGet();
+                subscribers.decrementAndGet();
+            }
+            if (--channel.references > 0) {
+                return channel;
+            }
+            channel.sink.tryEmitComplete();
+            channel.removals.tryEmitComplete();
+            return null;
+        });
+    }
+
+    private static class AccountChannel {
+
+        private final Sinks.Many<TransactionDTO> sink = Sinks.many().multicast().directBestEffort();
+        private final Sinks.Many<UUID> removals = Sinks.many().multicast().directBestEffort();
+        private final AtomicInteger subscribers = new AtomicInteger();
+        // assinaturas de transações e de remoções, protegido pelo compute/computeIfPresent do mapa de canais
+        private int references;
+    }
+}
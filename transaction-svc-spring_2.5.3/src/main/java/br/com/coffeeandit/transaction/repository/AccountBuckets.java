@@ -0,0 +1,69 @@
+package br.com.coffeeandit.transaction.repository;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.agenciaConta;
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.epochMillis;
+
+/**
+ * Chaves do índice por conta particionado por tempo: {@code agencia#conta#yyyyMMddHHmm#shard}. Cada balde de tempo é
+ * dividido em {@code shards} partições pelo hash do uui, para que contas com muito volume não concentrem as escritas
+ * em uma única partição do índice.
+ */
+@Component
+@Getter
+public class AccountBuckets {
+
+    private static final DateTimeFormatter BUCKET_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmm").withZone(ZoneOffset.UTC);
+
+    @Value("${app.dynamo.sharding.enabled}")
+    private boolean enabled;
+    @Value("${app.dynamo.sharding.index}")
+    private String index;
+    @Value("${app.dynamo.sharding.bucket}")
+    private Duration bucket;
+    @Value("${app.dynamo.sharding.shards}")
+    private int shards;
+    @Value("${app.dynamo.sharding.parallelism}")
+    private int parallelism;
+
+    public String bucketKey(final Long agencia, final Long conta, final LocalDateTime data, final UUID uui) {
+        return bucketKey(agencia, conta, bucketStart(epochMillis(data)), Math.floorMod(uui.hashCode(), shards));
+    }
+
+    /**
+     * Chaves de todos os shards de cada balde que intersecta o período, em ordem cronológica dos baldes.
+     */
+    public List<List<String>> bucketKeys(final Long agencia, final Long conta, final LocalDateTime start, final LocalDateTime end) {
+        var buckets = new ArrayList<List<String>>();
+        var bucketMillis = bucket.toMillis();
+        for (long bucketStart = bucketStart(epochMillis(start)); bucketStart <= epochMillis(end); bucketStart += bucketMillis) {
+            var keys = new ArrayList<String>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                keys.add(bucketKey(agencia, conta, bucketStart, shard));
+            }
+            buckets.add(keys);
+        }
+        return buckets;
+    }
+
+    private long bucketStart(final long epochMillis) {
+        var bucketMillis = bucket.toMillis();
+        return Math.floorDiv(epochMillis, bucketMillis) * bucketMillis;
+    }
+
+    private static String bucketKey(final Long agencia, final Long conta, final long bucketStart, final int shard) {
+        return agenciaConta(agencia, conta) + "#" + BUCKET_FORMAT.format(Instant.ofEpochMilli(bucketStart)) + "#" + shard;
+    }
+}
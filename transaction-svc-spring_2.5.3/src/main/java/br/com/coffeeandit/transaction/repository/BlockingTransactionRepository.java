@@ -0,0 +1,131 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.config.DomainBusinessException;
+import br.com.coffeeandit.transaction.config.DynamoDBConfig;
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import br.com.coffeeandit.transaction.domain.TransactionPage;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static br.com.coffeeandit.transaction.repository.DynamoCallMetrics.*;
+import static br.com.coffeeandit.transaction.repository.ShardedAccountQuery.ORDEM_CRONOLOGICA;
+
+@Repository
+@Profile(DynamoDBConfig.BLOCKING_PROFILE)
+public class BlockingTransactionRepository implements TransactionRepository {
+
+    private final DynamoRepository dynamoRepository;
+    private final DynamoCallMetrics dynamoCallMetrics;
+    private final TransactionHistoryPager transactionHistoryPager;
+    private final ShardedAccountQuery shardedAccountQuery;
+
+    @Value("${app.dynamo.queryByIndex}")
+    private boolean queryByIndex;
+
+    public BlockingTransactionRepository(final DynamoRepository dynamoRepository, final DynamoCallMetrics dynamoCallMetrics,
+                                         final TransactionHistoryPager transactionHistoryPager, final ShardedAccountQuery shardedAccountQuery) {
+        this.dynamoRepository = dynamoRepository;
+        this.dynamoCallMetrics = dynamoCallMetrics;
+        this.transactionHistoryPager = transactionHistoryPager;
+        this.shardedAccountQuery = shardedAccountQuery;
+    }
+
+    @Override
+    public Mono<TransactionDTO> insertItem(final TransactionDTO transaction) {
+        return call(PUT_ITEM, () -> dynamoRepository.insertItem(transaction));
+    }
+
+    @Override
+    public Mono<TransactionDTO> writeBehind(final TransactionDTO transaction) {
+        return insertItem(transaction);
+    }
+
+    @Override
+    public Mono<TransactionDTO> retrieveItem(final String uui) {
+        return call(GET_ITEM, () -> dynamoRepository.retrieveItem(uui))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Flux<TransactionDTO> retrieveItems(final List<String> uuis) {
+        return call(BATCH_GET_ITEM, () -> dynamoRepository.retrieveItems(uuis))
+                .flatMapIterable(transactions -> transactions);
+    }
+
+    @Override
+    public Mono<TransactionDTO> upsertSituacao(final TransactionDTO transaction) {
+        return call(UPDATE_ITEM, () -> dynamoRepository.upsertSituacao(transaction))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Mono<TransactionDTO> updateSituacao(final String uui, final SituacaoEnum situacao) {
+        return call(UPDATE_ITEM, () -> dynamoRepository.updateSituacao(uui, situacao))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Mono<TransactionDTO> analisarItem(final String uui, final BigDecimal valorMaximo, final SituacaoEnum situacao) {
+        return call(UPDATE_ITEM, () -> dynamoRepository.analisarItem(uui, valorMaximo, situacao))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Mono<TransactionDTO> removeItem(final String uui) {
+        return call(DELETE_ITEM, () -> dynamoRepository.removeItem(uui))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    @Override
+    public Flux<TransactionDTO> queryTransaction(final Long agencia, final Long conta,
+                                                 final LocalDateTime start, final LocalDateTime end) {
+        var transactions = Mono.fromCallable(() -> dynamoRepository.queryTransaction(agencia, conta, start, end))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(list -> list);
+        if (!queryByIndex || !shardedAccountQuery.isEnabled()) {
+            return transactions;
+        }
+        return Flux.mergeComparing(ORDEM_CRONOLOGICA, transactions, shardedAccountQuery.query(agencia, conta, start, end, this::queryPage))
+                .distinct(TransactionDTO::getUui);
+    }
+
+    @Override
+    public Mono<TransactionPage> queryTransactionPage(final Long agencia, final Long conta, final LocalDateTime start,
+                                                     final LocalDateTime end, final int limit, final String cursor) {
+        if (!queryByIndex) {
+            return Mono.error(new DomainBusinessException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Paginação do histórico disponível somente com a consulta por índice"));
+        }
+        return transactionHistoryPager.page(agencia, conta, start, end, limit, cursor, this::queryPage);
+    }
+
+    private Mono<TransactionHistoryPager.IndexPage> queryPage(final TransactionHistoryPager.IndexQuery query,
+                                                              final Map<String, AttributeValue> exclusiveStartKey,
+                                                              final Integer limit) {
+        return call(QUERY, () -> dynamoRepository.queryIndexPage(query, exclusiveStartKey, limit));
+    }
+
+    private <T> Mono<T> call(final String operation, final Callable<T> request) {
+        return Mono.fromCallable(() -> {
+                    dynamoCallMetrics.count(operation);
+                    return request.call();
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(ConditionalCheckFailedException.class,
+                        e -> new ConditionFailedException(e.getMessage(), e));
+    }
+}
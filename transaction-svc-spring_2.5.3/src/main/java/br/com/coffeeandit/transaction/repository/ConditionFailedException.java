@@ -0,0 +1,8 @@
+package br.com.coffeeandit.transaction.repository;
+
+public class ConditionFailedException extends RuntimeException {
+
+    public ConditionFailedException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,200 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.config.DynamoDBConfig;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static br.com.coffeeandit.transaction.repository.DynamoCallMetrics.BATCH_WRITE_ITEM;
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.TRANSACAO;
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.UUI;
+
+@Component
+@Slf4j
+@Profile("!" + DynamoDBConfig.BLOCKING_PROFILE)
+public class DynamoBatchWriter {
+
+    public static final int MAX_BATCH_SIZE = 25;
+    public static final String BATCH_FILL = "transaction.dynamo.batch.fill";
+    public static final String BATCH_FLUSH = "transaction.dynamo.batch.flush";
+    public static final String BATCH_RETRIES = "transaction.dynamo.batch.retries";
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final TransactionItemMapper transactionItemMapper;
+    private final DynamoCallMetrics dynamoCallMetrics;
+    private final DistributionSummary batchFill;
+    private final Timer batchFlush;
+    private final Counter batchRetries;
+    private volatile Sinks.Many<PendingWrite> pendingWrites;
+    private volatile boolean stopped;
+
+    @Value("${app.dynamo.batch.flushInterval}")
+    private Duration flushInterval;
+    @Value("${app.dynamo.batch.maxRetries}")
+    private int maxRetries;
+    @Value("${app.dynamo.batch.backoff}")
+    private Duration backoff;
+
+    public DynamoBatchWriter(final DynamoDbAsyncClient dynamoDbAsyncClient, final TransactionItemMapper transactionItemMapper,
+                             final DynamoCallMetrics dynamoCallMetrics, final MeterRegistry meterRegistry) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.transactionItemMapper = transactionItemMapper;
+        this.dynamoCallMetrics = dynamoCallMetrics;
+        this.batchFill = DistributionSummary.builder(BATCH_FILL)
+                .description("Ocupação dos lotes enviados ao BatchWriteItem")
+                .register(meterRegistry);
+        this.batchFlush = Timer.builder(BATCH_FLUSH)
+                .description("Tempo de gravação de um lote, incluindo as retentativas")
+                .register(meterRegistry);
+        this.batchRetries = Counter.builder(BATCH_RETRIES)
+                .description("Retentativas de itens não processados pelo BatchWriteItem")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        Sinks.Many<PendingWrite> sink = Sinks.many().unicast().onBackpressureBuffer();
+        pendingWrites = sink;
+        // concatMap mantém os lotes em ordem, e com isso a ordem dos acknowledgments no Kafka
+        sink.asFlux()
+                .bufferTimeout(MAX_BATCH_SIZE, flushInterval)
+                // sem demanda o bufferTimeout falha por overflow: com um flush lento os lotes esperam aqui
+                .onBackpressureBuffer()
+                .concatMap(this::flush)
+                // gravações que estavam no pipeline quando ele falhou
+                .doOnDiscard(Object.class, DynamoBatchWriter::discard)
+                .subscribe(null, this::restart);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        pendingWrites.emitComplete(RETRY_NON_SERIALIZED);
+    }
+
+    public Mono<Void> write(final TransactionDTO transaction) {
+        return Mono.defer(() -> {
+            var pendingWrite = new PendingWrite(transaction.getUui().toString(), WriteRequest.builder()
+                    .putRequest(PutRequest.builder().item(transactionItemMapper.toItem(transaction)).build())
+                    .build());
+            Sinks.EmitResult emitResult;
+            do {
+                // várias threads gravam ao mesmo tempo
+                emitResult = pendingWrites.tryEmitNext(pendingWrite);
+            } while (emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+            if (emitResult.isFailure()) {
+                return Mono.error(new IllegalStateException(
+                        String.format("Gravação em lote indisponível (%s) para a transação %s", emitResult, pendingWrite.uui)));
+            }
+            return pendingWrite.result.asMono();
+        });
+    }
+
+    // o flush trata os próprios erros; um erro no pipeline não pode deixar as próximas gravações esperando para sempre
+    private void restart(final Throwable throwable) {
+        log.error("Pipeline de gravação em lote interrompido", throwable);
+        if (!stopped) {
+            start();
+        }
+    }
+
+    private static void discard(final Object discarded) {
+        if (discarded instanceof PendingWrite) {
+            ((PendingWrite) discarded).fail();
+        } else if (discarded instanceof List) {
+            ((List<?>) discarded).forEach(DynamoBatchWriter::discard);
+        }
+    }
+
+    private Mono<Void> flush(final List<PendingWrite> batch) {
+        var sample = Timer.start();
+
+        return Mono.defer(() -> {
+                    batchFill.record((double) batch.size() / MAX_BATCH_SIZE);
+                    // o BatchWriteItem recusa o pedido inteiro se a mesma chave aparece duas vezes (uma reentrega do Kafka
+                    // dentro do flushInterval): vale a última gravação de cada uui, e o resultado dela completa todas as
+                    // gravações da chave
+                    var writeRequests = new LinkedHashMap<String, WriteRequest>();
+                    batch.forEach(pendingWrite -> writeRequests.put(pendingWrite.uui, pendingWrite.writeRequest));
+                    return batchWrite(new ArrayList<>(writeRequests.values()), 0);
+                })
+                .doOnNext(unprocessed -> {
+                    var failed = unprocessed.stream()
+                            .map(writeRequest -> writeRequest.putRequest().item().get(UUI).s())
+                            .collect(Collectors.toSet());
+                    batch.forEach(pendingWrite -> {
+                        if (failed.contains(pendingWrite.uui)) {
+                            pendingWrite.result.tryEmitError(new IllegalStateException(
+                                    String.format("Não foi possível gravar a transação %s", pendingWrite.uui)));
+                        } else {
+                            pendingWrite.result.tryEmitEmpty();
+                        }
+                    });
+                })
+                .doOnError(throwable -> {
+                    log.error("Falha ao gravar lote de {} transações", batch.size(), throwable);
+                    batch.forEach(pendingWrite -> pendingWrite.result.tryEmitError(throwable));
+                })
+                .doFinally(signalType -> sample.stop(batchFlush))
+                .onErrorResume(throwable -> Mono.empty())
+                .then();
+    }
+
+    private Mono<List<WriteRequest>> batchWrite(final List<WriteRequest> writeRequests, final int attempt) {
+        return Mono.fromFuture(() -> {
+                    dynamoCallMetrics.count(BATCH_WRITE_ITEM);
+                    return dynamoDbAsyncClient.batchWriteItem(BatchWriteItemRequest.builder()
+                            .requestItems(Map.of(TRANSACAO, writeRequests))
+                            .build());
+                })
+                .map(response -> response.unprocessedItems().getOrDefault(TRANSACAO, List.of()))
+                .flatMap(unprocessed -> {
+                    if (unprocessed.isEmpty() || attempt >= maxRetries) {
+                        return Mono.just(unprocessed);
+                    }
+                    batchRetries.increment(unprocessed.size());
+                    log.warn("Reenviando {} itens não processados pelo BatchWriteItem, tentativa {}", unprocessed.size(), attempt + 1);
+                    return Mono.delay(backoff.multipliedBy(1L << attempt))
+                            .then(Mono.defer(() -> batchWrite(unprocessed, attempt + 1)));
+                });
+    }
+
+    private static class PendingWrite {
+
+        private final String uui;
+        private final WriteRequest writeRequest;
+        private final Sinks.One<Void> result = Sinks.one();
+
+        private PendingWrite(final String uui, final WriteRequest writeRequest) {
+            this.uui = uui;
+            this.writeRequest = writeRequest;
+        }
+
+        private void fail() {
+            result.tryEmitError(new IllegalStateException(String.format("Gravação em lote interrompida para a transação %s", uui)));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package br.com.coffeeandit.transaction.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+@Component
+public class DynamoCallMetrics {
+
+    public static final String DYNAMO_CALLS = "transaction.dynamo.calls";
+    public static final String OPERATION = "operation";
+    public static final String PUT_ITEM = "PutItem";
+    public static final String GET_ITEM = "GetItem";
+    public static final String UPDATE_ITEM = "UpdateItem";
+    public static final String DELETE_ITEM = "DeleteItem";
+    public static final String QUERY = "Query";
+    public static final String SCAN = "Scan";
+    public static final String BATCH_WRITE_ITEM = "BatchWriteItem";
+    public static final String BATCH_GET_ITEM = "BatchGetItem";
+
+    private final MeterRegistry meterRegistry;
+
+    public DynamoCallMetrics(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void count(final String operation) {
+        meterRegistry.counter(DYNAMO_CALLS, OPERATION, operation).increment();
+    }
+}
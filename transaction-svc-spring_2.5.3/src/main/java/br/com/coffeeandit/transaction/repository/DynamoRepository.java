@@ -1,27 +1,35 @@
 package br.com.coffeeandit.transaction.repository;
 
+import br.com.coffeeandit.transaction.config.DynamoDBConfig;
 import br.com.coffeeandit.transaction.domain.*;
 import br.com.coffeeandit.transaction.dynamob.DynamoTable;
 import br.com.coffeeandit.transaction.dynamob.InsertableItem;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.sleuth.annotation.NewSpan;
 import org.springframework.cloud.sleuth.annotation.SpanTag;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.function.Function;
+
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.*;
 
 @Component
 @Slf4j
+@Profile(DynamoDBConfig.BLOCKING_PROFILE)
 public class DynamoRepository implements DynamoTable, InsertableItem<TransactionDTO> {
 
 
@@ -38,45 +46,41 @@ public class DynamoRepository implements DynamoTable, InsertableItem<Transaction
     public static final String BANCO_FAVORECIDO = "bancoFavorecido";
 
     public static final String DT_TRANSACTION = "dtTransaction";
-    public static final String TRANSACOES_SEMANA = "agencia = :agencia AND  conta = :conta AND dtTransaction BETWEEN :dataInicial and :dataFinal";
+    public static final String AGENCIA_CONTA = "agenciaConta";
+    public static final String TRANSACOES_SEMANA = "(agencia = :agencia AND conta = :conta AND dtTransaction BETWEEN :dataInicial and :dataFinal)"
+            + " OR (ag = :agencia AND ct = :conta AND dt BETWEEN :inicio AND :fim)";
+    public static final String TRANSACOES_CONTA = "agenciaConta = :agenciaConta AND dtTransaction BETWEEN :dataInicial and :dataFinal";
+    public static final String TRANSACOES_CONTA_V2 = "ac = :ac AND dt BETWEEN :inicio AND :fim";
+    public static final String TRANSACOES_BUCKET = "bk = :bk AND dt BETWEEN :inicio AND :fim";
     public static final int AMOUNT_TO_ADD = -1;
     public static final String STATUS_RISCO = "situacao";
+    public static final String NAO_EXISTE = "attribute_not_exists(uui)";
+    public static final String EXISTE = "attribute_exists(uui)";
+    public static final String ANALISAVEL = "attribute_exists(uui) AND (valor < :limite OR vl < :limite OR situacao = :analisada OR st = :analisadaV2)";
+    public static final String REMOVIVEL = "attribute_not_exists(uui) OR NOT (situacao = :analisada OR st = :analisadaV2)";
+    public static final String ALTERAR_SITUACAO = "set st = :s remove situacao";
+    public static final int MAX_BATCH_GET_ITEM = 100;
 
     private Table tableTransacao;
     private DynamoDB dynamoDB;
     private AmazonDynamoDB amazonDynamoDB;
+    private TransactionItemMapper transactionItemMapper;
 
-    private Function<Item, TransactionDTO> itemTransactionDTOFunction = item -> {
-        var transacaoDto = new TransactionDTO();
-        transacaoDto.setValor(item.getNumber(VALOR));
-        String dtTransaction = item.getString(DT_TRANSACTION);
-        transacaoDto.setData(LocalDateTime.now());
-        if (Objects.nonNull(dtTransaction)) {
-            transacaoDto.setData(LocalDateTime.parse(dtTransaction));
-        }
-        transacaoDto.setTipoTransacao(TipoTransacao.valueOf(item.getString(TIPOTRANSACAO)));
-        transacaoDto.setUui(UUID.fromString(item.getString(UUI)));
-        var conta = new Conta();
-        conta.setCodigoConta(item.getLong(CONTA));
-        conta.setCodigoAgencia(item.getLong(AGENCIA));
-        transacaoDto.setConta(conta);
-        transacaoDto.setSituacao(SituacaoEnum.valueOf(item.getString(STATUS_RISCO)));
-        var beneficiario = new BeneficiatioDto();
-        beneficiario.setAgencia(item.getString(AGENCIA_BENEFICIARIO));
-        beneficiario.setCodigoBanco(item.getLong(BANCO_FAVORECIDO));
-        beneficiario.setConta(item.getString(CONTA_BENEFICIARIO));
-        beneficiario.setCPF(item.getLong(CPF));
-        beneficiario.setNomeFavorecido(item.getString(NOME_FAVORECIDO));
-        transacaoDto.setBeneficiario(beneficiario);
-
-
-        return transacaoDto;
-    };
-
-
-    public DynamoRepository(final DynamoDB dynamoDB, final AmazonDynamoDB amazonDynamoDB) {
+    @Value("${app.dynamo.queryByIndex}")
+    private boolean queryByIndex;
+    @Value("${app.dynamo.accountIndex}")
+    private String accountIndex;
+    @Value("${app.dynamo.compactIndex}")
+    private String compactIndex;
+    @Value("${app.dynamo.legacyIndex}")
+    private boolean legacyIndex;
+
+
+    public DynamoRepository(final DynamoDB dynamoDB, final AmazonDynamoDB amazonDynamoDB,
+                            final TransactionItemMapper transactionItemMapper) {
         this.dynamoDB = dynamoDB;
         this.amazonDynamoDB = amazonDynamoDB;
+        this.transactionItemMapper = transactionItemMapper;
     }
 
     @Override
@@ -85,9 +89,7 @@ public class DynamoRepository implements DynamoTable, InsertableItem<Transaction
 
         log.info(String.format("Inserindo a transação %s", transaction));
         var table = getTable();
-        var conta = transaction.getConta();
-        var beneficiario = transaction.getBeneficiario();
-        var item = getItem(transaction, conta, beneficiario);
+        var item = toItem(transactionItemMapper.toItem(transaction));
         var putItemOutcome = table.putItem(item);
         var putItemOutcomeItem = putItemOutcome.getItem();
         return Objects.nonNull(putItemOutcome.getItem()) ? putItemOutcomeItem : item;
@@ -97,43 +99,117 @@ public class DynamoRepository implements DynamoTable, InsertableItem<Transaction
     public Optional<TransactionDTO> retrieveItem(final String uui) {
         var item = getTable().getItem(new PrimaryKey(UUI, uui));
         if (Objects.nonNull(item)) {
-            return Optional.ofNullable(itemTransactionDTOFunction.apply(item));
+            return Optional.ofNullable(toTransaction(item));
         }
 
         return Optional.empty();
 
     }
 
+    public List<TransactionDTO> retrieveItems(final List<String> uuis) {
+        var transactions = new ArrayList<TransactionDTO>();
+        var distinct = new ArrayList<>(new LinkedHashSet<>(uuis));
+        for (int start = 0; start < distinct.size(); start += MAX_BATCH_GET_ITEM) {
+            var chunk = distinct.subList(start, Math.min(start + MAX_BATCH_GET_ITEM, distinct.size()));
+            var outcome = dynamoDB.batchGetItem(new TableKeysAndAttributes(TRANSACAO)
+                    .addHashOnlyPrimaryKeys(UUI, chunk.toArray()));
+            while (true) {
+                outcome.getTableItems().getOrDefault(TRANSACAO, List.of())
+                        .forEach(item -> transactions.add(toTransaction(item)));
+                var unprocessedKeys = outcome.getUnprocessedKeys();
+                if (Objects.isNull(unprocessedKeys) || unprocessedKeys.isEmpty()) {
+                    break;
+                }
+                outcome = dynamoDB.batchGetItemUnprocessed(unprocessedKeys);
+            }
+        }
+        return transactions;
+    }
 
     @NewSpan
-    public Optional<DeleteItemOutcome> removeItem(@SpanTag(key = "removeTransaction") final TransactionDTO transactionDTO) {
-        var table = getTable();
+    public TransactionDTO insertItem(@SpanTag(key = "transaction") final TransactionDTO transaction) {
 
+        log.info(String.format("Inserindo a transação %s", transaction));
+        getTable().putItem(new PutItemSpec()
+                .withItem(toItem(transactionItemMapper.toItem(transaction)))
+                .withConditionExpression(NAO_EXISTE));
+        return transaction;
+    }
 
-        DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
-                .withPrimaryKey(new PrimaryKey(UUI, transactionDTO.getUui().toString()));
-
-        return Optional.of(table.deleteItem(deleteItemSpec));
-
+    @NewSpan
+    public Optional<TransactionDTO> upsertSituacao(@SpanTag(key = "updateTransaction") final TransactionDTO transaction) {
+
+        var nameMap = new NameMap();
+        var valueMap = new ValueMap();
+        var updateExpression = new StringJoiner(", ", "set ", " remove " + STATUS_RISCO);
+        transactionItemMapper.toItem(transaction).forEach((attribute, value) -> {
+            if (UUI.equals(attribute) || VERSAO.equals(attribute)) {
+                return;
+            }
+            var name = "#a" + nameMap.size();
+            var placeholder = ":a" + valueMap.size();
+            nameMap.with(name, attribute);
+            valueMap.with(placeholder, toObject(value));
+            updateExpression.add(SITUACAO_V2.equals(attribute) ? String.format("%s = %s", name, placeholder)
+                    : String.format("%s = if_not_exists(%s, %s)", name, name, placeholder));
+        });
 
+        return updateItem(new UpdateItemSpec()
+                .withPrimaryKey(new PrimaryKey(UUI, transaction.getUui().toString()))
+                .withUpdateExpression(updateExpression.toString())
+                .withNameMap(nameMap)
+                .withValueMap(valueMap)
+                .withReturnValues(ReturnValue.ALL_NEW));
     }
 
     @NewSpan
-    public Optional<UpdateItemOutcome> updateItem(@SpanTag(key = "updateTransaction") final TransactionDTO transactionDTO) {
-        var table = getTable();
-
-        var updateItemSpec = new UpdateItemSpec()
-                .withPrimaryKey(new PrimaryKey(UUI, transactionDTO.getUui().toString()))
-                .withUpdateExpression("set situacao = :s")
-                .withValueMap(new ValueMap().withString(":s", transactionDTO.getSituacao().toString()))
-                .withReturnValues(ReturnValue.UPDATED_NEW);
+    public Optional<TransactionDTO> updateSituacao(@SpanTag(key = "updateTransaction") final String uui, final SituacaoEnum situacao) {
+
+        return updateItem(new UpdateItemSpec()
+                .withPrimaryKey(new PrimaryKey(UUI, uui))
+                .withUpdateExpression(ALTERAR_SITUACAO)
+                .withConditionExpression(EXISTE)
+                .withValueMap(new ValueMap().withInt(":s", situacao.ordinal()))
+                .withReturnValues(ReturnValue.ALL_NEW));
+    }
 
+    @NewSpan
+    public Optional<TransactionDTO> analisarItem(@SpanTag(key = "updateTransaction") final String uui, final BigDecimal valorMaximo,
+                                                 final SituacaoEnum situacao) {
+
+        return updateItem(new UpdateItemSpec()
+                .withPrimaryKey(new PrimaryKey(UUI, uui))
+                .withUpdateExpression(ALTERAR_SITUACAO)
+                .withConditionExpression(ANALISAVEL)
+                .withValueMap(new ValueMap()
+                        .withInt(":s", situacao.ordinal())
+                        .withString(":analisada", SituacaoEnum.ANALISADA.toString())
+                        .withInt(":analisadaV2", SituacaoEnum.ANALISADA.ordinal())
+                        .withNumber(":limite", valorMaximo))
+                .withReturnValues(ReturnValue.ALL_NEW));
+    }
 
-        var updateItemOutcome = Optional.of(table.updateItem(updateItemSpec));
-        log.info("UpdateItem succeeded {}{}", updateItemOutcome.get().getItem().toJSONPretty(), transactionDTO.getUui().toString());
-        return updateItemOutcome;
+    @NewSpan
+    public Optional<TransactionDTO> removeItem(@SpanTag(key = "removeTransaction") final String uui) {
+
+        var deleteItemSpec = new DeleteItemSpec()
+                .withPrimaryKey(new PrimaryKey(UUI, uui))
+                .withConditionExpression(REMOVIVEL)
+                .withValueMap(new ValueMap()
+                        .withString(":analisada", SituacaoEnum.ANALISADA.toString())
+                        .withInt(":analisadaV2", SituacaoEnum.ANALISADA.ordinal()))
+                .withReturnValues(ReturnValue.ALL_OLD);
+
+        return Optional.ofNullable(getTable().deleteItem(deleteItemSpec).getItem())
+                .map(this::toTransaction);
+    }
 
+    private Optional<TransactionDTO> updateItem(final UpdateItemSpec updateItemSpec) {
 
+        var updateItemOutcome = getTable().updateItem(updateItemSpec);
+        var item = Optional.ofNullable(updateItemOutcome.getItem());
+        item.ifPresent(value -> log.info("UpdateItem succeeded {}", value.toJSONPretty()));
+        return item.map(this::toTransaction);
     }
 
 
@@ -141,12 +217,17 @@ public class DynamoRepository implements DynamoTable, InsertableItem<Transaction
                                                  final LocalDateTime start, final LocalDateTime end
     ) {
 
+        if (queryByIndex) {
+            return queryAccountIndex(agencia, conta, start, end);
+        }
 
         var expressionAttributeValues = new HashMap<String, Object>();
         expressionAttributeValues.put(":".concat(AGENCIA), agencia);
         expressionAttributeValues.put(":".concat(CONTA), conta);
         expressionAttributeValues.put(":dataInicial", start.toString());
         expressionAttributeValues.put(":dataFinal", end.toString());
+        expressionAttributeValues.put(":inicio", epochMillis(start));
+        expressionAttributeValues.put(":fim", epochMillis(end));
 
 
         return mapToTransactionDTO(getTable().scan(TRANSACOES_SEMANA,
@@ -155,40 +236,121 @@ public class DynamoRepository implements DynamoTable, InsertableItem<Transaction
 
     }
 
+    protected List<TransactionDTO> queryAccountIndex(final Long agencia, final Long conta,
+                                                     final LocalDateTime start, final LocalDateTime end) {
+
+        var compactValues = new HashMap<String, AttributeValue>();
+        compactValues.put(":".concat(AGENCIA_CONTA_V2), new AttributeValue().withS(agenciaConta(agencia, conta)));
+        compactValues.put(":inicio", new AttributeValue().withN(String.valueOf(epochMillis(start))));
+        compactValues.put(":fim", new AttributeValue().withN(String.valueOf(epochMillis(end))));
+        var transactions = queryIndex(compactIndex, TRANSACOES_CONTA_V2, compactValues);
+        if (!legacyIndex) {
+            return transactions;
+        }
+
+        var expressionAttributeValues = new HashMap<String, AttributeValue>();
+        expressionAttributeValues.put(":".concat(AGENCIA_CONTA), new AttributeValue().withS(agenciaConta(agencia, conta)));
+        expressionAttributeValues.put(":dataInicial", new AttributeValue().withS(start.toString()));
+        expressionAttributeValues.put(":dataFinal", new AttributeValue().withS(end.toString()));
+
+        var merged = new LinkedHashMap<UUID, TransactionDTO>();
+        queryIndex(accountIndex, TRANSACOES_CONTA, expressionAttributeValues)
+                .forEach(transaction -> merged.put(transaction.getUui(), transaction));
+        transactions.forEach(transaction -> merged.putIfAbsent(transaction.getUui(), transaction));
+        var result = new ArrayList<>(merged.values());
+        result.sort(Comparator.comparing(TransactionDTO::getData));
+        return result;
+    }
+
+    private List<TransactionDTO> queryIndex(final String indexName, final String keyConditionExpression,
+                                            final Map<String, AttributeValue> expressionAttributeValues) {
+
+        var transactions = new ArrayList<TransactionDTO>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            var queryRequest = new QueryRequest()
+                    .withTableName(TRANSACAO)
+                    .withIndexName(indexName)
+                    .withKeyConditionExpression(keyConditionExpression)
+                    .withExpressionAttributeValues(expressionAttributeValues)
+                    .withScanIndexForward(true)
+                    .withExclusiveStartKey(lastEvaluatedKey);
+            var queryResult = amazonDynamoDB.query(queryRequest);
+            queryResult.getItems().forEach(item -> transactions.add(toTransaction(ItemUtils.toItem(item))));
+            lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+        } while (Objects.nonNull(lastEvaluatedKey) && !lastEvaluatedKey.isEmpty());
+
+        return transactions;
+    }
+
+    public TransactionHistoryPager.IndexPage queryIndexPage(final TransactionHistoryPager.IndexQuery query,
+                                                            final Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> exclusiveStartKey,
+                                                            final Integer limit) {
+
+        var queryResult = amazonDynamoDB.query(new QueryRequest()
+                .withTableName(TRANSACAO)
+                .withIndexName(query.getIndexName())
+                .withKeyConditionExpression(query.getKeyConditionExpression())
+                .withExpressionAttributeValues(toAttributeValues(query.getExpressionAttributeValues()))
+                .withExclusiveStartKey(Objects.isNull(exclusiveStartKey) ? null : toAttributeValues(exclusiveStartKey))
+                .withLimit(limit)
+                .withScanIndexForward(true));
+        var items = new ArrayList<Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue>>(queryResult.getItems().size());
+        queryResult.getItems().forEach(item -> items.add(toAttributes(item)));
+        var lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+        return new TransactionHistoryPager.IndexPage(items, Objects.isNull(lastEvaluatedKey) ? null : toAttributes(lastEvaluatedKey));
+    }
+
+    private static Map<String, AttributeValue> toAttributeValues(final Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> attributes) {
+        var values = new HashMap<String, AttributeValue>();
+        attributes.forEach((name, value) -> values.put(name, Objects.nonNull(value.n())
+                ? new AttributeValue().withN(value.n()) : new AttributeValue().withS(value.s())));
+        return values;
+    }
+
+    private static Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> toAttributes(final Map<String, AttributeValue> values) {
+        var attributes = new HashMap<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue>();
+        values.forEach((name, value) -> attributes.put(name, Objects.nonNull(value.getN())
+                ? software.amazon.awssdk.services.dynamodb.model.AttributeValue.builder().n(value.getN()).build()
+                : software.amazon.awssdk.services.dynamodb.model.AttributeValue.builder().s(value.getS()).build()));
+        return attributes;
+    }
+
+    public static String agenciaConta(final Long agencia, final Long conta) {
+        return agencia + "#" + conta;
+    }
+
     protected List<TransactionDTO> mapToTransactionDTO(final ItemCollection<ScanOutcome> scanOutcome) {
 
         var transactions = new ArrayList<TransactionDTO>();
 
         scanOutcome.forEach(item -> {
-            transactions.add(itemTransactionDTOFunction.apply(item));
+            transactions.add(toTransaction(item));
         });
         transactions.sort(Comparator.comparing(TransactionDTO::getData));
         return transactions;
     }
 
-    private Item getItem(TransactionDTO transaction, Conta conta, BeneficiatioDto beneficiario) {
-        if (Objects.isNull(transaction.getData())) {
-            transaction.setData(LocalDateTime.now());
-        }
-
-
-        var item = new HashMap<String, AttributeValue>();
-        item.put(UUI, new AttributeValue().withS(transaction.getUui().toString()));
-        item.put(VALOR, new AttributeValue().withN(transaction.getValor().toPlainString()));
+    private TransactionDTO toTransaction(final Item item) {
+        var attributes = new HashMap<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue>();
+        item.attributes().forEach(attribute -> {
+            var value = attribute.getValue();
+            var builder = software.amazon.awssdk.services.dynamodb.model.AttributeValue.builder();
+            attributes.put(attribute.getKey(), value instanceof Number
+                    ? builder.n(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString()).build()
+                    : builder.s(String.valueOf(value)).build());
+        });
+        return transactionItemMapper.toTransaction(attributes);
+    }
 
-            return new Item().withPrimaryKey(UUI, transaction.getUui().toString())
-                .withNumber(VALOR, transaction.getValor().doubleValue())
-                .withString(TIPOTRANSACAO, transaction.getTipoTransacao().name())
-                .withLong(CONTA, conta.getCodigoConta())
-                .withLong(AGENCIA, conta.getCodigoAgencia())
-                .withString(AGENCIA_BENEFICIARIO, beneficiario.getAgencia())
-                .withString(CONTA_BENEFICIARIO, beneficiario.getConta())
-                .withLong(CPF, beneficiario.getCPF())
-                .withString(NOME_FAVORECIDO, beneficiario.getNomeFavorecido())
-                .withLong(BANCO_FAVORECIDO, beneficiario.getCodigoBanco())
-                .withString(DT_TRANSACTION, transaction.getData().toString())
-                .with(STATUS_RISCO, transaction.getSituacao().toString());
+    private static Item toItem(final Map<String, software.amazon.awssdk.services.dynamodb.model.AttributeValue> attributes) {
+        var item = new Item();
+        attributes.forEach((name, value) -> item.with(name, toObject(value)));
+        return item;
+    }
 
+    private static Object toObject(final software.amazon.awssdk.services.dynamodb.model.AttributeValue value) {
+        return Objects.nonNull(value.n()) ? new BigDecimal(value.n()) : value.s();
     }
 
     public Table getTable() {
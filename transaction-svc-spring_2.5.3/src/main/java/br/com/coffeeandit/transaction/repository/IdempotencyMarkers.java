@@ -0,0 +1,69 @@
+package br.com.coffeeandit.transaction.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static br.com.coffeeandit.transaction.repository.DynamoCallMetrics.DELETE_ITEM;
+import static br.com.coffeeandit.transaction.repository.DynamoCallMetrics.PUT_ITEM;
+
+/**
+ * Marcadores de idempotência: um item por chave, gravado com condição de não existência e expirado pelo TTL da tabela.
+ */
+@Component
+public class IdempotencyMarkers {
+
+    public static final String ID = "id";
+    public static final String EXPIRA = "expira";
+    public static final String NAO_MARCADO = "attribute_not_exists(id)";
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final DynamoCallMetrics dynamoCallMetrics;
+
+    @Value("${app.idempotency.table}")
+    private String table;
+    @Value("${app.idempotency.ttl}")
+    private Duration ttl;
+
+    public IdempotencyMarkers(final DynamoDbAsyncClient dynamoDbAsyncClient, final DynamoCallMetrics dynamoCallMetrics) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.dynamoCallMetrics = dynamoCallMetrics;
+    }
+
+    /**
+     * @return {@code true} quando a chave foi marcada agora; {@code false} quando já estava marcada
+     */
+    public Mono<Boolean> mark(final String key) {
+        return Mono.fromFuture(() -> {
+                    dynamoCallMetrics.count(PUT_ITEM);
+                    return dynamoDbAsyncClient.putItem(PutItemRequest.builder()
+                            .tableName(table)
+                            .item(Map.of(
+                                    ID, AttributeValue.builder().s(key).build(),
+                                    EXPIRA, AttributeValue.builder().n(String.valueOf(Instant.now().plus(ttl).getEpochSecond())).build()))
+                            .conditionExpression(NAO_MARCADO)
+                            .build());
+                })
+                .thenReturn(true)
+                .onErrorResume(ConditionalCheckFailedException.class, e -> Mono.just(false));
+    }
+
+    public Mono<Void> remove(final String key) {
+        return Mono.fromFuture(() -> {
+            dynamoCallMetrics.count(DELETE_ITEM);
+            return dynamoDbAsyncClient.deleteItem(DeleteItemRequest.builder()
+                    .tableName(table)
+                    .key(Map.of(ID, AttributeValue.builder().s(key).build()))
+                    .build());
+        }).then();
+    }
+}
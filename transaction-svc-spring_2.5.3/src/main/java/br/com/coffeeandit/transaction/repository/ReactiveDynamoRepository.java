@@ -0,0 +1,320 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.config.DomainBusinessException;
+import br.com.coffeeandit.transaction.config.DynamoDBConfig;
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import br.com.coffeeandit.transaction.domain.TransactionPage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sleuth.annotation.NewSpan;
+import org.springframework.cloud.sleuth.annotation.SpanTag;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static br.com.coffeeandit.transaction.repository.DynamoCallMetrics.*;
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.*;
+import static br.com.coffeeandit.transaction.repository.ShardedAccountQuery.ORDEM_CRONOLOGICA;
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.*;
+
+@Repository
+@Slf4j
+@Profile("!" + DynamoDBConfig.BLOCKING_PROFILE)
+public class ReactiveDynamoRepository implements TransactionRepository {
+
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final TransactionItemMapper transactionItemMapper;
+    private final DynamoCallMetrics dynamoCallMetrics;
+    private final DynamoBatchWriter dynamoBatchWriter;
+    private final TransactionHistoryPager transactionHistoryPager;
+    private final ShardedAccountQuery shardedAccountQuery;
+
+    @Value("${app.dynamo.queryByIndex}")
+    private boolean queryByIndex;
+    @Value("${app.dynamo.accountIndex}")
+    private String accountIndex;
+    @Value("${app.dynamo.compactIndex}")
+    private String compactIndex;
+    @Value("${app.dynamo.legacyIndex}")
+    private boolean legacyIndex;
+    @Value("${app.dynamo.batch.maxRetries}")
+    private int maxRetries;
+    @Value("${app.dynamo.batch.backoff}")
+    private Duration backoff;
+
+    public ReactiveDynamoRepository(final DynamoDbAsyncClient dynamoDbAsyncClient, final TransactionItemMapper transactionItemMapper,
+                                    final DynamoCallMetrics dynamoCallMetrics, final DynamoBatchWriter dynamoBatchWriter,
+                                    final TransactionHistoryPager transactionHistoryPager, final ShardedAccountQuery shardedAccountQuery) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.transactionItemMapper = transactionItemMapper;
+        this.dynamoCallMetrics = dynamoCallMetrics;
+        this.dynamoBatchWriter = dynamoBatchWriter;
+        this.transactionHistoryPager = transactionHistoryPager;
+        this.shardedAccountQuery = shardedAccountQuery;
+    }
+
+    @Override
+    @NewSpan
+    public Mono<TransactionDTO> insertItem(@SpanTag(key = "transaction") final TransactionDTO transaction) {
+
+        return call(PUT_ITEM, () -> {
+            log.info(String.format("Inserindo a transação %s", transaction));
+            return dynamoDbAsyncClient.putItem(PutItemRequest.builder()
+                    .tableName(TRANSACAO)
+                    .item(transactionItemMapper.toItem(transaction))
+                    .conditionExpression(NAO_EXISTE)
+                    .build());
+        }).thenReturn(transaction);
+    }
+
+    @Override
+    public Mono<TransactionDTO> writeBehind(final TransactionDTO transaction) {
+
+        return dynamoBatchWriter.write(transaction).thenReturn(transaction);
+    }
+
+    @Override
+    public Mono<TransactionDTO> retrieveItem(final String uui) {
+
+        return call(GET_ITEM, () -> dynamoDbAsyncClient.getItem(GetItemRequest.builder()
+                        .tableName(TRANSACAO)
+                        .key(transactionItemMapper.toKey(uui))
+                        .build()))
+                .filter(response -> response.hasItem() && !response.item().isEmpty())
+                .map(response -> transactionItemMapper.toTransaction(response.item()));
+    }
+
+    @Override
+    public Flux<TransactionDTO> retrieveItems(final List<String> uuis) {
+
+        return Flux.fromIterable(uuis)
+                .distinct()
+                .buffer(MAX_BATCH_GET_ITEM)
+                .flatMap(chunk -> batchGetItem(chunk.stream()
+                        .map(transactionItemMapper::toKey)
+                        .collect(Collectors.toList()), 0));
+    }
+
+    private Flux<TransactionDTO> batchGetItem(final List<Map<String, AttributeValue>> keys, final int attempt) {
+
+        return call(BATCH_GET_ITEM, () -> dynamoDbAsyncClient.batchGetItem(BatchGetItemRequest.builder()
+                        .requestItems(Map.of(TRANSACAO, KeysAndAttributes.builder().keys(keys).build()))
+                        .build()))
+                .flatMapMany(response -> {
+                    var items = Flux.fromIterable(response.responses().getOrDefault(TRANSACAO, List.of()))
+                            .map(transactionItemMapper::toTransaction);
+                    var unprocessed = response.unprocessedKeys().get(TRANSACAO);
+                    if (Objects.isNull(unprocessed) || unprocessed.keys().isEmpty()) {
+                        return items;
+                    }
+                    if (attempt >= maxRetries) {
+                        return items.concatWith(Flux.error(new IllegalStateException(
+                                String.format("Não foi possível buscar %d transações", unprocessed.keys().size()))));
+                    }
+                    log.warn("Reenviando {} chaves não processadas pelo BatchGetItem, tentativa {}", unprocessed.keys().size(), attempt + 1);
+                    return items.concatWith(Mono.delay(backoff.multipliedBy(1L << attempt))
+                            .thenMany(Flux.defer(() -> batchGetItem(unprocessed.keys(), attempt + 1))));
+                });
+    }
+
+    @Override
+    @NewSpan
+    public Mono<TransactionDTO> upsertSituacao(@SpanTag(key = "updateTransaction") final TransactionDTO transaction) {
+
+        var names = new HashMap<String, String>();
+        var values = new HashMap<String, AttributeValue>();
+        var updateExpression = new StringJoiner(", ", "set ", " remove " + STATUS_RISCO);
+        transactionItemMapper.toItem(transaction).forEach((attribute, value) -> {
+            if (UUI.equals(attribute) || VERSAO.equals(attribute)) {
+                return;
+            }
+            var name = "#a" + names.size();
+            var placeholder = ":a" + values.size();
+            names.put(name, attribute);
+            values.put(placeholder, value);
+            updateExpression.add(SITUACAO_V2.equals(attribute) ? String.format("%s = %s", name, placeholder)
+                    : String.format("%s = if_not_exists(%s, %s)", name, name, placeholder));
+        });
+
+        return updateItem(UpdateItemRequest.builder()
+                .tableName(TRANSACAO)
+                .key(transactionItemMapper.toKey(transaction.getUui().toString()))
+                .updateExpression(updateExpression.toString())
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .returnValues(ReturnValue.ALL_NEW)
+                .build());
+    }
+
+    @Override
+    @NewSpan
+    public Mono<TransactionDTO> updateSituacao(@SpanTag(key = "updateTransaction") final String uui, final SituacaoEnum situacao) {
+
+        return updateItem(UpdateItemRequest.builder()
+                .tableName(TRANSACAO)
+                .key(transactionItemMapper.toKey(uui))
+                .updateExpression(ALTERAR_SITUACAO)
+                .conditionExpression(EXISTE)
+                .expressionAttributeValues(Map.of(":s", transactionItemMapper.situacao(situacao)))
+                .returnValues(ReturnValue.ALL_NEW)
+                .build());
+    }
+
+    @Override
+    @NewSpan
+    public Mono<TransactionDTO> analisarItem(@SpanTag(key = "updateTransaction") final String uui, final BigDecimal valorMaximo,
+                                             final SituacaoEnum situacao) {
+
+        return updateItem(UpdateItemRequest.builder()
+                .tableName(TRANSACAO)
+                .key(transactionItemMapper.toKey(uui))
+                .updateExpression(ALTERAR_SITUACAO)
+                .conditionExpression(ANALISAVEL)
+                .expressionAttributeValues(Map.of(
+                        ":s", transactionItemMapper.situacao(situacao),
+                        ":analisada", AttributeValue.builder().s(SituacaoEnum.ANALISADA.toString()).build(),
+                        ":analisadaV2", transactionItemMapper.situacao(SituacaoEnum.ANALISADA),
+                        ":limite", AttributeValue.builder().n(valorMaximo.toPlainString()).build()))
+                .returnValues(ReturnValue.ALL_NEW)
+                .build());
+    }
+
+    @Override
+    @NewSpan
+    public Mono<TransactionDTO> removeItem(@SpanTag(key = "removeTransaction") final String uui) {
+
+        return call(DELETE_ITEM, () -> dynamoDbAsyncClient.deleteItem(DeleteItemRequest.builder()
+                        .tableName(TRANSACAO)
+                        .key(transactionItemMapper.toKey(uui))
+                        .conditionExpression(REMOVIVEL)
+                        .expressionAttributeValues(Map.of(
+                                ":analisada", AttributeValue.builder().s(SituacaoEnum.ANALISADA.toString()).build(),
+                                ":analisadaV2", transactionItemMapper.situacao(SituacaoEnum.ANALISADA)))
+                        .returnValues(ReturnValue.ALL_OLD)
+                        .build()))
+                .filter(response -> response.hasAttributes() && !response.attributes().isEmpty())
+                .map(response -> transactionItemMapper.toTransaction(response.attributes()));
+    }
+
+    private Mono<TransactionDTO> updateItem(final UpdateItemRequest updateItemRequest) {
+
+        return call(UPDATE_ITEM, () -> dynamoDbAsyncClient.updateItem(updateItemRequest))
+                .doOnNext(response -> log.info("UpdateItem succeeded {}{}", response.attributes(), updateItemRequest.key()))
+                .filter(response -> response.hasAttributes() && !response.attributes().isEmpty())
+                .map(response -> transactionItemMapper.toTransaction(response.attributes()));
+    }
+
+    private <T> Mono<T> call(final String operation, final Supplier<CompletableFuture<T>> request) {
+
+        return Mono.fromFuture(() -> {
+                    dynamoCallMetrics.count(operation);
+                    return request.get();
+                })
+                .onErrorMap(ConditionalCheckFailedException.class,
+                        e -> new ConditionFailedException(e.getMessage(), e));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Flux<TransactionDTO> queryTransaction(final Long agencia, final Long conta,
+                                                 final LocalDateTime start, final LocalDateTime end) {
+
+        if (queryByIndex) {
+            var sources = new ArrayList<Flux<TransactionDTO>>(3);
+            sources.add(queryIndex(compactIndex, TRANSACOES_CONTA_V2, Map.of(
+                    ":".concat(AGENCIA_CONTA_V2), AttributeValue.builder().s(agenciaConta(agencia, conta)).build(),
+                    ":inicio", transactionItemMapper.data(start),
+                    ":fim", transactionItemMapper.data(end))));
+            // durante a migração os itens antigos só estão no índice agenciaConta; itens atualizados podem estar nos dois
+            if (legacyIndex) {
+                sources.add(queryIndex(accountIndex, TRANSACOES_CONTA, Map.of(
+                        ":".concat(AGENCIA_CONTA), AttributeValue.builder().s(agenciaConta(agencia, conta)).build(),
+                        ":dataInicial", AttributeValue.builder().s(start.toString()).build(),
+                        ":dataFinal", AttributeValue.builder().s(end.toString()).build())));
+            }
+            if (shardedAccountQuery.isEnabled()) {
+                sources.add(shardedAccountQuery.query(agencia, conta, start, end, this::queryPage));
+            }
+            if (sources.size() == 1) {
+                return sources.get(0);
+            }
+            Flux<TransactionDTO>[] publishers = sources.toArray(Flux[]::new);
+            return Flux.mergeComparing(ORDEM_CRONOLOGICA, publishers)
+                    .distinct(TransactionDTO::getUui);
+        }
+
+        var scanRequest = ScanRequest.builder()
+                .tableName(TRANSACAO)
+                .filterExpression(TRANSACOES_SEMANA)
+                .expressionAttributeValues(Map.of(
+                        ":".concat(AGENCIA), AttributeValue.builder().n(agencia.toString()).build(),
+                        ":".concat(CONTA), AttributeValue.builder().n(conta.toString()).build(),
+                        ":dataInicial", AttributeValue.builder().s(start.toString()).build(),
+                        ":dataFinal", AttributeValue.builder().s(end.toString()).build(),
+                        ":inicio", transactionItemMapper.data(start),
+                        ":fim", transactionItemMapper.data(end)))
+                .build();
+        return Flux.from(dynamoDbAsyncClient.scanPaginator(scanRequest))
+                .doOnNext(response -> dynamoCallMetrics.count(SCAN))
+                .flatMapIterable(ScanResponse::items)
+                .map(transactionItemMapper::toTransaction)
+                .sort(Comparator.comparing(TransactionDTO::getData));
+    }
+
+    @Override
+    public Mono<TransactionPage> queryTransactionPage(final Long agencia, final Long conta, final LocalDateTime start,
+                                                     final LocalDateTime end, final int limit, final String cursor) {
+
+        if (!queryByIndex) {
+            return Mono.error(new DomainBusinessException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Paginação do histórico disponível somente com a consulta por índice"));
+        }
+        return transactionHistoryPager.page(agencia, conta, start, end, limit, cursor, this::queryPage);
+    }
+
+    private Mono<TransactionHistoryPager.IndexPage> queryPage(final TransactionHistoryPager.IndexQuery query,
+                                                              final Map<String, AttributeValue> exclusiveStartKey,
+                                                              final Integer limit) {
+
+        return call(QUERY, () -> dynamoDbAsyncClient.query(QueryRequest.builder()
+                .tableName(TRANSACAO)
+                .indexName(query.getIndexName())
+                .keyConditionExpression(query.getKeyConditionExpression())
+                .expressionAttributeValues(query.getExpressionAttributeValues())
+                .exclusiveStartKey(exclusiveStartKey)
+                .limit(limit)
+                .scanIndexForward(true)
+                .build()))
+                .map(response -> new TransactionHistoryPager.IndexPage(response.items(),
+                        response.hasLastEvaluatedKey() ? response.lastEvaluatedKey() : null));
+    }
+
+    private Flux<TransactionDTO> queryIndex(final String indexName, final String keyConditionExpression,
+                                            final Map<String, AttributeValue> expressionAttributeValues) {
+
+        var queryRequest = QueryRequest.builder()
+                .tableName(TRANSACAO)
+                .indexName(indexName)
+                .keyConditionExpression(keyConditionExpression)
+                .expressionAttributeValues(expressionAttributeValues)
+                .scanIndexForward(true)
+                .build();
+        return Flux.from(dynamoDbAsyncClient.queryPaginator(queryRequest))
+                .doOnNext(response -> dynamoCallMetrics.count(QUERY))
+                .flatMapIterable(QueryResponse::items)
+                .map(transactionItemMapper::toTransaction);
+    }
+}
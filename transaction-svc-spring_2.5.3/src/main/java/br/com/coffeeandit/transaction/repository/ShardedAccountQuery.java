@@ -0,0 +1,104 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.TRANSACOES_BUCKET;
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.UUI;
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.BUCKET_V2;
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.DATA_V2;
+
+/**
+ * Consulta scatter/gather no índice particionado por tempo: os baldes do período são lidos em ordem, até
+ * {@code parallelism} baldes em paralelo, e os shards de cada balde são intercalados pela data.
+ */
+@Component
+public class ShardedAccountQuery {
+
+    public static final String SHARD_FANOUT = "transaction.dynamo.shard.fanout";
+    public static final String SHARD_BUCKETS = "transaction.dynamo.shard.buckets";
+    public static final String SHARD_GATHER = "transaction.dynamo.shard.gather";
+    public static final Comparator<TransactionDTO> ORDEM_CRONOLOGICA = Comparator.comparing(TransactionDTO::getData)
+            .thenComparing(TransactionDTO::getUui);
+
+    private final AccountBuckets accountBuckets;
+    private final TransactionItemMapper transactionItemMapper;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary fanOut;
+    private final DistributionSummary buckets;
+    private final Timer gather;
+
+    public ShardedAccountQuery(final AccountBuckets accountBuckets, final TransactionItemMapper transactionItemMapper,
+                               final MeterRegistry meterRegistry) {
+        this.accountBuckets = accountBuckets;
+        this.transactionItemMapper = transactionItemMapper;
+        this.meterRegistry = meterRegistry;
+        this.fanOut = DistributionSummary.builder(SHARD_FANOUT)
+                .description("Queries disparadas por consulta no índice particionado")
+                .register(meterRegistry);
+        this.buckets = DistributionSummary.builder(SHARD_BUCKETS)
+                .description("Baldes de tempo cobertos por consulta no índice particionado")
+                .register(meterRegistry);
+        this.gather = Timer.builder(SHARD_GATHER)
+                .description("Tempo para reunir todos os shards de uma consulta")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return accountBuckets.isEnabled();
+    }
+
+    public String getIndex() {
+        return accountBuckets.getIndex();
+    }
+
+    public Flux<TransactionDTO> query(final Long agencia, final Long conta, final LocalDateTime start, final LocalDateTime end,
+                                      final TransactionHistoryPager.IndexPageFetcher fetcher) {
+
+        return Flux.defer(() -> {
+            var bucketKeys = accountBuckets.bucketKeys(agencia, conta, start, end);
+            buckets.record(bucketKeys.size());
+            fanOut.record(bucketKeys.stream().mapToInt(List::size).sum());
+            var sample = Timer.start(meterRegistry);
+            return Flux.fromIterable(bucketKeys)
+                    .flatMapSequential(keys -> gatherBucket(keys, start, end, fetcher), accountBuckets.getParallelism())
+                    .doFinally(signalType -> sample.stop(gather));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Flux<TransactionDTO> gatherBucket(final List<String> keys, final LocalDateTime start, final LocalDateTime end,
+                                              final TransactionHistoryPager.IndexPageFetcher fetcher) {
+
+        Flux<TransactionDTO>[] shards = keys.stream()
+                .map(key -> readIndex(new TransactionHistoryPager.IndexQuery(accountBuckets.getIndex(), TRANSACOES_BUCKET, Map.of(
+                        ":".concat(BUCKET_V2), AttributeValue.builder().s(key).build(),
+                        ":inicio", transactionItemMapper.data(start),
+                        ":fim", transactionItemMapper.data(end)),
+                        List.of(UUI, BUCKET_V2, DATA_V2)), fetcher))
+                .toArray(Flux[]::new);
+        return Flux.mergeComparing(ORDEM_CRONOLOGICA, shards);
+    }
+
+    private Flux<TransactionDTO> readIndex(final TransactionHistoryPager.IndexQuery query,
+                                           final TransactionHistoryPager.IndexPageFetcher fetcher) {
+
+        return fetcher.fetch(query, null, null)
+                .expand(page -> Objects.isNull(page.getLastEvaluatedKey()) || page.getLastEvaluatedKey().isEmpty()
+                        ? Mono.empty() : fetcher.fetch(query, page.getLastEvaluatedKey(), null))
+                .flatMapIterable(TransactionHistoryPager.IndexPage::getItems)
+                .map(transactionItemMapper::toTransaction);
+    }
+}
@@ -0,0 +1,283 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.config.DomainBusinessException;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import br.com.coffeeandit.transaction.domain.TransactionPage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.*;
+import static br.com.coffeeandit.transaction.repository.ShardedAccountQuery.ORDEM_CRONOLOGICA;
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.*;
+
+/**
+ * Paginação do histórico de uma conta pelos índices agência/conta. O token de continuação guarda, para cada índice
+ * consultado, a chave do último item entregue; índices ausentes do token já foram lidos por completo. Com o sharding
+ * habilitado o índice particionado entra como mais uma fonte, retomada pela data e uui do último item.
+ */
+@Component
+public class TransactionHistoryPager {
+
+    private static final TypeReference<Map<String, Map<String, String>>> CURSOR_TYPE = new TypeReference<>() {
+    };
+    private static final String STRING_PREFIX = "S:";
+    private static final String NUMBER_PREFIX = "N:";
+
+    private final TransactionItemMapper transactionItemMapper;
+    private final ShardedAccountQuery shardedAccountQuery;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.dynamo.accountIndex}")
+    private String accountIndex;
+    @Value("${app.dynamo.compactIndex}")
+    private String compactIndex;
+    @Value("${app.dynamo.legacyIndex}")
+    private boolean legacyIndex;
+
+    public TransactionHistoryPager(final TransactionItemMapper transactionItemMapper, final ShardedAccountQuery shardedAccountQuery,
+                                   final ObjectMapper objectMapper) {
+        this.transactionItemMapper = transactionItemMapper;
+        this.shardedAccountQuery = shardedAccountQuery;
+        this.objectMapper = objectMapper;
+    }
+
+    public Mono<TransactionPage> page(final Long agencia, final Long conta, final LocalDateTime start, final LocalDateTime end,
+                                      final int limit, final String cursor, final IndexPageFetcher fetcher) {
+
+        return Mono.defer(() -> {
+                    var startKeys = decode(cursor);
+                    var indexes = Flux.fromIterable(accountQueries(agencia, conta, start, end))
+                            .filter(query -> isPending(startKeys, query.getIndexName()))
+                            .flatMapSequential(query -> {
+                                var startKey = startKey(startKeys, query.getIndexName());
+                                return fetcher.fetch(query, startKey, limit)
+                                        .map(page -> IndexCursor.of(query, startKey, page, transactionItemMapper));
+                            });
+                    if (!shardedAccountQuery.isEnabled() || !isPending(startKeys, shardedAccountQuery.getIndex())) {
+                        return indexes.collectList();
+                    }
+                    var shardStartKey = startKey(startKeys, shardedAccountQuery.getIndex());
+                    return Flux.mergeSequential(indexes, shardedPage(agencia, conta, start, end, limit, shardStartKey, fetcher))
+                            .collectList();
+                })
+                .map(cursors -> merge(cursors, limit));
+    }
+
+    // o índice particionado é retomado pela data e uui do último item entregue, já que cada balde/shard tem sua própria chave
+    private Mono<IndexCursor> shardedPage(final Long agencia, final Long conta, final LocalDateTime start, final LocalDateTime end,
+                                          final int limit, final Map<String, AttributeValue> startKey, final IndexPageFetcher fetcher) {
+
+        var resume = Objects.isNull(startKey) ? start : toLocalDateTime(startKey.get(DATA_V2).n());
+        return shardedAccountQuery.query(agencia, conta, resume, end, fetcher)
+                .filter(transaction -> Objects.isNull(startKey) || isAfter(transaction, startKey))
+                .take(limit)
+                .collectList()
+                .map(transactions -> IndexCursor.of(shardedAccountQuery.getIndex(), startKey, transactions, limit));
+    }
+
+    private static boolean isAfter(final TransactionDTO transaction, final Map<String, AttributeValue> key) {
+        var data = epochMillis(transaction.getData());
+        var lastData = Long.parseLong(key.get(DATA_V2).n());
+        return data > lastData || (data == lastData && transaction.getUui().compareTo(UUID.fromString(key.get(UUI).s())) > 0);
+    }
+
+    private static boolean isPending(final Map<String, Map<String, AttributeValue>> startKeys, final String indexName) {
+        return Objects.isNull(startKeys) || startKeys.containsKey(indexName);
+    }
+
+    private static Map<String, AttributeValue> startKey(final Map<String, Map<String, AttributeValue>> startKeys, final String indexName) {
+        return Objects.isNull(startKeys) || startKeys.get(indexName).isEmpty() ? null : startKeys.get(indexName);
+    }
+
+    private List<IndexQuery> accountQueries(final Long agencia, final Long conta, final LocalDateTime start, final LocalDateTime end) {
+
+        var queries = new ArrayList<IndexQuery>(2);
+        queries.add(new IndexQuery(compactIndex, TRANSACOES_CONTA_V2, Map.of(
+                ":".concat(AGENCIA_CONTA_V2), AttributeValue.builder().s(agenciaConta(agencia, conta)).build(),
+                ":inicio", transactionItemMapper.data(start),
+                ":fim", transactionItemMapper.data(end)),
+                List.of(UUI, AGENCIA_CONTA_V2, DATA_V2)));
+        if (legacyIndex) {
+            queries.add(new IndexQuery(accountIndex, TRANSACOES_CONTA, Map.of(
+                    ":".concat(AGENCIA_CONTA), AttributeValue.builder().s(agenciaConta(agencia, conta)).build(),
+                    ":dataInicial", AttributeValue.builder().s(start.toString()).build(),
+                    ":dataFinal", AttributeValue.builder().s(end.toString()).build()),
+                    List.of(UUI, AGENCIA_CONTA, DT_TRANSACTION)));
+        }
+        return queries;
+    }
+
+    // intercala as páginas pela data; itens presentes nos dois índices (layout misto) são entregues uma vez por página
+    private TransactionPage merge(final List<IndexCursor> cursors, final int limit) {
+
+        var transactions = new ArrayList<TransactionDTO>(limit);
+        var uuis = new HashSet<UUID>();
+        while (transactions.size() < limit) {
+            IndexCursor next = null;
+            for (var cursor : cursors) {
+                if (cursor.hasNext() && (Objects.isNull(next) || ORDEM_CRONOLOGICA.compare(cursor.peek(), next.peek()) < 0)) {
+                    next = cursor;
+                }
+            }
+            if (Objects.isNull(next)) {
+                break;
+            }
+            var transaction = next.next();
+            if (uuis.add(transaction.getUui())) {
+                transactions.add(transaction);
+            }
+        }
+
+        var nextKeys = new LinkedHashMap<String, Map<String, AttributeValue>>();
+        cursors.forEach(cursor -> cursor.nextKey().ifPresent(key -> nextKeys.put(cursor.getIndexName(), key)));
+        return new TransactionPage(transactions, nextKeys.isEmpty() ? null : encode(nextKeys));
+    }
+
+    private String encode(final Map<String, Map<String, AttributeValue>> keys) {
+
+        var cursor = new LinkedHashMap<String, Map<String, String>>();
+        keys.forEach((indexName, key) -> cursor.put(indexName, key.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, attribute -> Objects.nonNull(attribute.getValue().n())
+                        ? NUMBER_PREFIX.concat(attribute.getValue().n())
+                        : STRING_PREFIX.concat(attribute.getValue().s())))));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Não foi possível gerar o token de continuação", e);
+        }
+    }
+
+    private Map<String, Map<String, AttributeValue>> decode(final String cursor) {
+
+        if (Objects.isNull(cursor) || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            var json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var keys = new HashMap<String, Map<String, AttributeValue>>();
+            objectMapper.readValue(json, CURSOR_TYPE).forEach((indexName, key) -> keys.put(indexName, key.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, attribute -> toAttributeValue(attribute.getValue())))));
+            return keys;
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw new DomainBusinessException(HttpStatus.BAD_REQUEST, "Token de continuação inválido");
+        }
+    }
+
+    private static AttributeValue toAttributeValue(final String value) {
+
+        if (value.startsWith(NUMBER_PREFIX)) {
+            return AttributeValue.builder().n(value.substring(NUMBER_PREFIX.length())).build();
+        }
+        if (value.startsWith(STRING_PREFIX)) {
+            return AttributeValue.builder().s(value.substring(STRING_PREFIX.length())).build();
+        }
+        throw new IllegalArgumentException(value);
+    }
+
+    @FunctionalInterface
+    public interface IndexPageFetcher {
+
+        /**
+         * Executa uma única Query no índice, a partir de {@code exclusiveStartKey} (nula na primeira página). Sem
+         * {@code limit} a página é limitada apenas pelo 1 MB do DynamoDB.
+         */
+        Mono<IndexPage> fetch(IndexQuery query, Map<String, AttributeValue> exclusiveStartKey, Integer limit);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class IndexQuery {
+
+        private final String indexName;
+        private final String keyConditionExpression;
+        private final Map<String, AttributeValue> expressionAttributeValues;
+        // chave da tabela e do índice, que compõem o LastEvaluatedKey de uma Query em GSI
+        private final List<String> keyAttributes;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class IndexPage {
+
+        private final List<Map<String, AttributeValue>> items;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+    }
+
+    @Getter
+    private static class IndexCursor {
+
+        private final String indexName;
+        private final Map<String, AttributeValue> startKey;
+        private final List<TransactionDTO> transactions;
+        private final IntFunction<Map<String, AttributeValue>> keyAt;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+        private int position;
+
+        private IndexCursor(final String indexName, final Map<String, AttributeValue> startKey, final List<TransactionDTO> transactions,
+                            final IntFunction<Map<String, AttributeValue>> keyAt, final Map<String, AttributeValue> lastEvaluatedKey) {
+            this.indexName = indexName;
+            this.startKey = startKey;
+            this.transactions = transactions;
+            this.keyAt = keyAt;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+        }
+
+        static IndexCursor of(final IndexQuery query, final Map<String, AttributeValue> startKey, final IndexPage page,
+                              final TransactionItemMapper transactionItemMapper) {
+            var items = page.getItems();
+            return new IndexCursor(query.getIndexName(), startKey,
+                    items.stream().map(transactionItemMapper::toTransaction).collect(Collectors.toList()),
+                    position -> query.getKeyAttributes().stream()
+                            .collect(Collectors.toMap(attribute -> attribute, items.get(position)::get)),
+                    page.getLastEvaluatedKey());
+        }
+
+        static IndexCursor of(final String indexName, final Map<String, AttributeValue> startKey,
+                              final List<TransactionDTO> transactions, final int limit) {
+            IntFunction<Map<String, AttributeValue>> keyAt = position -> Map.of(
+                    DATA_V2, AttributeValue.builder().n(String.valueOf(epochMillis(transactions.get(position).getData()))).build(),
+                    UUI, AttributeValue.builder().s(transactions.get(position).getUui().toString()).build());
+            return new IndexCursor(indexName, startKey, transactions, keyAt,
+                    transactions.size() < limit ? null : keyAt.apply(transactions.size() - 1));
+        }
+
+        boolean hasNext() {
+            return position < transactions.size();
+        }
+
+        TransactionDTO peek() {
+            return transactions.get(position);
+        }
+
+        TransactionDTO next() {
+            return transactions.get(position++);
+        }
+
+        // chave para retomar o índice na próxima página; vazio quando o índice foi lido por completo
+        Optional<Map<String, AttributeValue>> nextKey() {
+            if (hasNext()) {
+                if (position == 0) {
+                    return Optional.of(Objects.isNull(startKey) ? Map.of() : startKey);
+                }
+                return Optional.of(keyAt.apply(position - 1));
+            }
+            return Objects.isNull(lastEvaluatedKey) || lastEvaluatedKey.isEmpty()
+                    ? Optional.empty() : Optional.of(lastEvaluatedKey);
+        }
+    }
+}
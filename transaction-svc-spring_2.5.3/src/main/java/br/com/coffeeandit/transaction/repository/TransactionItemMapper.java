@@ -0,0 +1,219 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.domain.*;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.*;
+
+@Component
+public class TransactionItemMapper {
+
+    public static final String VERSAO = "v";
+    public static final String VALOR_V2 = "vl";
+    public static final String TIPO_V2 = "tt";
+    public static final String CONTA_V2 = "ct";
+    public static final String AGENCIA_V2 = "ag";
+    public static final String AGENCIA_BENEFICIARIO_V2 = "ab";
+    public static final String CONTA_BENEFICIARIO_V2 = "cb";
+    public static final String CPF_V2 = "cp";
+    public static final String NOME_FAVORECIDO_V2 = "nf";
+    public static final String BANCO_FAVORECIDO_V2 = "bf";
+    public static final String DATA_V2 = "dt";
+    public static final String AGENCIA_CONTA_V2 = "ac";
+    public static final String SITUACAO_V2 = "st";
+    public static final String BUCKET_V2 = "bk";
+    public static final int VERSAO_COMPACTA = 2;
+
+    private static final String VERSAO_COMPACTA_N = String.valueOf(VERSAO_COMPACTA);
+    private static final AttributeValue VERSAO_COMPACTA_VALUE = AttributeValue.builder().n(VERSAO_COMPACTA_N).build();
+    private static final int ITEM_CAPACITY = 20;
+
+    // os enums são gravados pelo ordinal: novos valores devem ser adicionados sempre ao final
+    private static final SituacaoEnum[] SITUACOES = SituacaoEnum.values();
+    private static final TipoTransacao[] TIPOS = TipoTransacao.values();
+    private static final AttributeValue[] SITUACAO_VALUES = Arrays.stream(SITUACOES)
+            .map(situacao -> AttributeValue.builder().n(String.valueOf(situacao.ordinal())).build())
+            .toArray(AttributeValue[]::new);
+    private static final AttributeValue[] TIPO_VALUES = Arrays.stream(TIPOS)
+            .map(tipo -> AttributeValue.builder().n(String.valueOf(tipo.ordinal())).build())
+            .toArray(AttributeValue[]::new);
+
+    private final AccountBuckets accountBuckets;
+
+    public TransactionItemMapper(final AccountBuckets accountBuckets) {
+        this.accountBuckets = accountBuckets;
+    }
+
+    public Map<String, AttributeValue> toKey(final String uui) {
+        return Map.of(UUI, AttributeValue.builder().s(uui).build());
+    }
+
+    public AttributeValue situacao(final SituacaoEnum situacao) {
+        return SITUACAO_VALUES[situacao.ordinal()];
+    }
+
+    public AttributeValue data(final LocalDateTime data) {
+        return AttributeValue.builder().n(String.valueOf(epochMillis(data))).build();
+    }
+
+    public static long epochMillis(final LocalDateTime data) {
+        return data.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public Map<String, AttributeValue> toItem(final TransactionDTO transaction) {
+        if (Objects.isNull(transaction.getData())) {
+            transaction.setData(LocalDateTime.now());
+        }
+        var conta = transaction.getConta();
+        var beneficiario = transaction.getBeneficiario();
+
+        var item = new HashMap<String, AttributeValue>(ITEM_CAPACITY);
+        putString(item, UUI, transaction.getUui().toString());
+        item.put(VERSAO, VERSAO_COMPACTA_VALUE);
+        putNumber(item, VALOR_V2, transaction.getValor());
+        item.put(TIPO_V2, TIPO_VALUES[transaction.getTipoTransacao().ordinal()]);
+        putNumber(item, CONTA_V2, conta.getCodigoConta());
+        putNumber(item, AGENCIA_V2, conta.getCodigoAgencia());
+        putString(item, AGENCIA_BENEFICIARIO_V2, beneficiario.getAgencia());
+        putString(item, CONTA_BENEFICIARIO_V2, beneficiario.getConta());
+        putNumber(item, CPF_V2, beneficiario.getCPF());
+        putString(item, NOME_FAVORECIDO_V2, beneficiario.getNomeFavorecido());
+        putNumber(item, BANCO_FAVORECIDO_V2, beneficiario.getCodigoBanco());
+        item.put(DATA_V2, data(transaction.getData()));
+        if (accountBuckets.isEnabled()) {
+            // sem "ac" o item fica fora do índice ac-dt-index, que concentraria a conta em uma única partição
+            putString(item, BUCKET_V2, accountBuckets.bucketKey(conta.getCodigoAgencia(), conta.getCodigoConta(),
+                    transaction.getData(), transaction.getUui()));
+        } else {
+            putString(item, AGENCIA_CONTA_V2, agenciaConta(conta.getCodigoAgencia(), conta.getCodigoConta()));
+        }
+        item.put(SITUACAO_V2, situacao(transaction.getSituacao()));
+        return item;
+    }
+
+    public TransactionDTO toTransaction(final Map<String, AttributeValue> item) {
+        var versao = item.get(VERSAO);
+        if (Objects.nonNull(versao) && VERSAO_COMPACTA_N.equals(versao.n())) {
+            return fromCompact(item);
+        }
+        return fromLegacy(item);
+    }
+
+    private static TransactionDTO fromCompact(final Map<String, AttributeValue> item) {
+        var transacaoDto = new TransactionDTO();
+        var valor = item.get(VALOR_V2);
+        if (Objects.nonNull(valor)) {
+            transacaoDto.setValor(new BigDecimal(valor.n()));
+        }
+        transacaoDto.setData(toLocalDateTime(item.get(DATA_V2).n()));
+        transacaoDto.setTipoTransacao(TIPOS[Integer.parseInt(item.get(TIPO_V2).n())]);
+        transacaoDto.setUui(UUID.fromString(item.get(UUI).s()));
+        var conta = new Conta();
+        conta.setCodigoConta(getLong(item, CONTA_V2));
+        conta.setCodigoAgencia(getLong(item, AGENCIA_V2));
+        transacaoDto.setConta(conta);
+        transacaoDto.setSituacao(SITUACOES[Integer.parseInt(item.get(SITUACAO_V2).n())]);
+        var beneficiario = new BeneficiatioDto();
+        beneficiario.setAgencia(getString(item, AGENCIA_BENEFICIARIO_V2));
+        beneficiario.setCodigoBanco(getLong(item, BANCO_FAVORECIDO_V2));
+        beneficiario.setConta(getString(item, CONTA_BENEFICIARIO_V2));
+        beneficiario.setCPF(getLong(item, CPF_V2));
+        beneficiario.setNomeFavorecido(getString(item, NOME_FAVORECIDO_V2));
+        transacaoDto.setBeneficiario(beneficiario);
+
+        return transacaoDto;
+    }
+
+    // itens gravados antes do layout compacto; atributos compactos acrescentados por atualizações também são aceitos
+    private static TransactionDTO fromLegacy(final Map<String, AttributeValue> item) {
+        var transacaoDto = new TransactionDTO();
+        var valor = getNumber(item, VALOR, VALOR_V2);
+        if (Objects.nonNull(valor)) {
+            transacaoDto.setValor(new BigDecimal(valor));
+        }
+        var dtTransaction = item.get(DT_TRANSACTION);
+        var dt = item.get(DATA_V2);
+        transacaoDto.setData(LocalDateTime.now());
+        if (Objects.nonNull(dtTransaction)) {
+            transacaoDto.setData(LocalDateTime.parse(dtTransaction.s()));
+        } else if (Objects.nonNull(dt)) {
+            transacaoDto.setData(toLocalDateTime(dt.n()));
+        }
+        var tipoTransacao = item.get(TIPOTRANSACAO);
+        transacaoDto.setTipoTransacao(Objects.nonNull(tipoTransacao) ? TipoTransacao.valueOf(tipoTransacao.s())
+                : TIPOS[Integer.parseInt(item.get(TIPO_V2).n())]);
+        transacaoDto.setUui(UUID.fromString(item.get(UUI).s()));
+        var conta = new Conta();
+        conta.setCodigoConta(toLong(getNumber(item, CONTA, CONTA_V2)));
+        conta.setCodigoAgencia(toLong(getNumber(item, AGENCIA, AGENCIA_V2)));
+        transacaoDto.setConta(conta);
+        var situacao = item.get(STATUS_RISCO);
+        transacaoDto.setSituacao(Objects.nonNull(situacao) ? SituacaoEnum.valueOf(situacao.s())
+                : SITUACOES[Integer.parseInt(item.get(SITUACAO_V2).n())]);
+        var beneficiario = new BeneficiatioDto();
+        beneficiario.setAgencia(getString(item, AGENCIA_BENEFICIARIO, AGENCIA_BENEFICIARIO_V2));
+        beneficiario.setCodigoBanco(toLong(getNumber(item, BANCO_FAVORECIDO, BANCO_FAVORECIDO_V2)));
+        beneficiario.setConta(getString(item, CONTA_BENEFICIARIO, CONTA_BENEFICIARIO_V2));
+        beneficiario.setCPF(toLong(getNumber(item, CPF, CPF_V2)));
+        beneficiario.setNomeFavorecido(getString(item, NOME_FAVORECIDO, NOME_FAVORECIDO_V2));
+        transacaoDto.setBeneficiario(beneficiario);
+
+        return transacaoDto;
+    }
+
+    static LocalDateTime toLocalDateTime(final String epochMillis) {
+        var millis = Long.parseLong(epochMillis);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static void putString(final Map<String, AttributeValue> item, final String name, final String value) {
+        if (Objects.nonNull(value)) {
+            item.put(name, AttributeValue.builder().s(value).build());
+        }
+    }
+
+    private static void putNumber(final Map<String, AttributeValue> item, final String name, final Number value) {
+        if (Objects.nonNull(value)) {
+            var number = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+            item.put(name, AttributeValue.builder().n(number).build());
+        }
+    }
+
+    private static String getString(final Map<String, AttributeValue> item, final String name) {
+        var attributeValue = item.get(name);
+        return Objects.nonNull(attributeValue) ? attributeValue.s() : null;
+    }
+
+    private static String getString(final Map<String, AttributeValue> item, final String name, final String compactName) {
+        var value = getString(item, name);
+        return Objects.nonNull(value) ? value : getString(item, compactName);
+    }
+
+    private static String getNumber(final Map<String, AttributeValue> item, final String name, final String compactName) {
+        var attributeValue = item.get(name);
+        if (Objects.isNull(attributeValue)) {
+            attributeValue = item.get(compactName);
+        }
+        return Objects.nonNull(attributeValue) ? attributeValue.n() : null;
+    }
+
+    private static Long getLong(final Map<String, AttributeValue> item, final String name) {
+        var attributeValue = item.get(name);
+        return Objects.nonNull(attributeValue) ? Long.valueOf(attributeValue.n()) : null;
+    }
+
+    private static Long toLong(final String value) {
+        return Objects.nonNull(value) ? Long.valueOf(value) : null;
+    }
+}
@@ -0,0 +1,46 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import br.com.coffeeandit.transaction.domain.TransactionPage;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Cada operação corresponde a uma única chamada ao DynamoDB. Condições não atendidas são sinalizadas com
+ * {@link ConditionFailedException}.
+ */
+public interface TransactionRepository {
+
+    Mono<TransactionDTO> insertItem(TransactionDTO transaction);
+
+    Mono<TransactionDTO> writeBehind(TransactionDTO transaction);
+
+    Mono<TransactionDTO> retrieveItem(String uui);
+
+    Flux<TransactionDTO> retrieveItems(List<String> uuis);
+
+    Mono<TransactionDTO> upsertSituacao(TransactionDTO transaction);
+
+    Mono<TransactionDTO> updateSituacao(String uui, SituacaoEnum situacao);
+
+    /**
+     * Grava {@code situacao} somente se o item existir e estiver abaixo de {@code valorMaximo} ou já analisado,
+     * devolvendo o item atualizado.
+     */
+    Mono<TransactionDTO> analisarItem(String uui, BigDecimal valorMaximo, SituacaoEnum situacao);
+
+    Mono<TransactionDTO> removeItem(String uui);
+
+    Flux<TransactionDTO> queryTransaction(Long agencia, Long conta, LocalDateTime start, LocalDateTime end);
+
+    /**
+     * Uma Query por índice da conta, com no máximo {@code limit} itens, retomando a partir do {@code cursor}.
+     */
+    Mono<TransactionPage> queryTransactionPage(Long agencia, Long conta, LocalDateTime start, LocalDateTime end,
+                                               int limit, String cursor);
+}
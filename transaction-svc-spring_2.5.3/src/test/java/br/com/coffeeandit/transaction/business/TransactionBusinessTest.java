@@ -6,7 +6,10 @@ import br.com.coffeeandit.transaction.domain.Conta;
 import br.com.coffeeandit.transaction.domain.SituacaoEnum;
 import br.com.coffeeandit.transaction.domain.TransactionDTO;
 import br.com.coffeeandit.transaction.infrastructure.TransactionBusiness;
-import br.com.coffeeandit.transaction.repository.DynamoRepository;
+import br.com.coffeeandit.transaction.infrastructure.TransactionCache;
+import br.com.coffeeandit.transaction.infrastructure.TransactionEventHub;
+import br.com.coffeeandit.transaction.repository.ConditionFailedException;
+import br.com.coffeeandit.transaction.repository.TransactionRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -15,10 +18,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -26,12 +31,15 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @SpringBootTest
-@ContextConfiguration(classes = {TransactionBusiness.class})
+@ContextConfiguration(classes = {TransactionBusiness.class, TransactionCache.class})
 @TestPropertySource(properties = {"app.topic=transaction"})
 public class TransactionBusinessTest {
 
     @MockBean
-    private DynamoRepository dynamoRepository;
+    private TransactionRepository dynamoRepository;
+
+    @MockBean
+    private TransactionEventHub transactionEventHub;
 
 
     @Autowired
@@ -47,16 +55,16 @@ public class TransactionBusinessTest {
     @Test
     public void testUpdate() {
         var dataMock = getDataMock();
-        Mockito.when(transactionBusiness.retrieveItem(uuid.toString())).thenReturn(Optional.of(dataMock));
-        var transactionDTO = transactionBusiness.insertOrUpdate(dataMock);
-        assertThat(transactionDTO.get().getUui(), is(notNullValue()));
+        Mockito.when(dynamoRepository.upsertSituacao(dataMock)).thenReturn(Mono.just(dataMock));
+        var transactionDTO = transactionBusiness.insertOrUpdate(dataMock).block();
+        assertThat(transactionDTO.getUui(), is(notNullValue()));
     }
 
     @Test
     public void testAprovarTransacao() {
         var dataMock = getDataMock();
-        Mockito.when(transactionBusiness.retrieveItem(uuid.toString())).thenReturn(Optional.of(dataMock));
-        transactionBusiness.aprovarTransacao(dataMock);
+        Mockito.when(dynamoRepository.upsertSituacao(dataMock)).thenReturn(Mono.just(dataMock));
+        transactionBusiness.aprovarTransacao(dataMock).block();
         assertThat(dataMock.getSituacao(), is(SituacaoEnum.ANALISADA));
     }
 
@@ -73,10 +81,11 @@ public class TransactionBusinessTest {
     public void testDelete() {
         var dataMock = getDataMock();
         dataMock.analisada();
-        Mockito.when(transactionBusiness.retrieveItem(uuid.toString())).thenReturn(Optional.of(dataMock));
-        assertThrows(DomainBusinessException.class, () -> {
-            transactionBusiness.removeItem(dataMock);
-        });
+        Mockito.when(dynamoRepository.removeItem(uuid.toString()))
+                .thenReturn(Mono.error(new ConditionFailedException("The conditional request failed", null)));
+        StepVerifier.create(transactionBusiness.removeItem(dataMock))
+                .expectError(DomainBusinessException.class)
+                .verify();
     }
 
     @Test
@@ -84,15 +93,28 @@ public class TransactionBusinessTest {
         var dataMock = getDataMock();
         dataMock.analisada();
         var list = List.of(dataMock);
-        Mockito.when(dynamoRepository.queryTransaction(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(list);
-        List<TransactionDTO> transactionDTOS = transactionBusiness.queryTransaction(1l, 1l);
+        Mockito.when(dynamoRepository.queryTransaction(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(Flux.fromIterable(list));
+        List<TransactionDTO> transactionDTOS = transactionBusiness.queryTransaction(1l, 1l).collectList().block();
         assertThat(transactionDTOS, is(hasItem(dataMock)));
     }
 
+    @Test
+    public void testRetrieveItemCache() {
+        var dataMock = getDataMock();
+        Mockito.when(dynamoRepository.retrieveItem(uuid.toString())).thenReturn(Mono.just(dataMock));
+        Mockito.when(dynamoRepository.updateSituacao(uuid.toString(), SituacaoEnum.REJEITADA)).thenReturn(Mono.just(dataMock));
+        transactionBusiness.retrieveItem(uuid.toString()).block();
+        transactionBusiness.retrieveItem(uuid.toString()).block();
+        Mockito.verify(dynamoRepository, Mockito.times(1)).retrieveItem(uuid.toString());
+        transactionBusiness.alterarSituacao(uuid.toString(), SituacaoEnum.REJEITADA).block();
+        transactionBusiness.retrieveItem(uuid.toString()).block();
+        Mockito.verify(dynamoRepository, Mockito.times(2)).retrieveItem(uuid.toString());
+    }
+
     @Test
     public void testPutItemSemId() {
         var dataMock = getDataMock();
-        Mockito.when(transactionBusiness.retrieveItem(uuid.toString())).thenReturn(Optional.of(getDataMock()));
+        Mockito.when(dynamoRepository.retrieveItem(uuid.toString())).thenReturn(Mono.just(getDataMock()));
         dataMock.setUui(null);
         assertThrows(IllegalArgumentException.class, () -> {
             transactionBusiness.putItem(dataMock);
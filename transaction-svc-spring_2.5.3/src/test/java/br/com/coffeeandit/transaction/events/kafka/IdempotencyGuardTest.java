@@ -0,0 +1,69 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import br.com.coffeeandit.transaction.repository.IdempotencyMarkers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class IdempotencyGuardTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyMarkers idempotencyMarkers;
+    private IdempotencyGuard idempotencyGuard;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyMarkers = Mockito.mock(IdempotencyMarkers.class);
+        idempotencyGuard = new IdempotencyGuard(idempotencyMarkers, meterRegistry);
+        ReflectionTestUtils.setField(idempotencyGuard, "ttl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(idempotencyGuard, "maximumSize", 100L);
+        idempotencyGuard.init();
+    }
+
+    @Test
+    @DisplayName("Reentrega recente descartada pela memória, sem ir ao DynamoDB.")
+    public void testDuplicadaEmMemoria() {
+        var processadas = new AtomicInteger();
+        Mockito.when(idempotencyMarkers.mark("chave")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(idempotencyGuard.once("chave", () -> Mono.fromCallable(processadas::incrementAndGet)))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(idempotencyGuard.once("chave", () -> Mono.fromCallable(processadas::incrementAndGet)))
+                .verifyComplete();
+
+        assertThat(processadas.get(), is(1));
+        Mockito.verify(idempotencyMarkers, Mockito.times(1)).mark("chave");
+        assertThat(meterRegistry.find(IdempotencyGuard.DUPLICATES).tag(IdempotencyGuard.ORIGEM, IdempotencyGuard.MEMORIA)
+                .counter().count(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Chave marcada por outra réplica descartada e marca removida quando o processamento falha.")
+    public void testDuplicadaNoDynamoEFalha() {
+        Mockito.when(idempotencyMarkers.mark("outra")).thenReturn(Mono.just(false));
+        Mockito.when(idempotencyMarkers.mark("falha")).thenReturn(Mono.just(true));
+        Mockito.when(idempotencyMarkers.remove("falha")).thenReturn(Mono.empty());
+
+        StepVerifier.create(idempotencyGuard.once("outra", () -> Mono.just(1)))
+                .verifyComplete();
+        StepVerifier.create(idempotencyGuard.once("falha", () -> Mono.error(new IllegalStateException("Falha"))))
+                .verifyError(IllegalStateException.class);
+
+        Mockito.verify(idempotencyMarkers).remove("falha");
+        assertThat(meterRegistry.find(IdempotencyGuard.DUPLICATES).tag(IdempotencyGuard.ORIGEM, IdempotencyGuard.DYNAMO)
+                .counter().count(), is(1.0));
+    }
+}
@@ -0,0 +1,117 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OrderedRecordExecutorTest {
+
+    private static final String LISTENER = "listener";
+
+    private MessageListenerContainer container;
+    private OrderedRecordExecutor orderedRecordExecutor;
+
+    @BeforeEach
+    public void setUp() {
+        container = Mockito.mock(MessageListenerContainer.class);
+        var registry = Mockito.mock(KafkaListenerEndpointRegistry.class);
+        Mockito.when(registry.getListenerContainer(LISTENER)).thenReturn(container);
+        orderedRecordExecutor = new OrderedRecordExecutor(registry, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orderedRecordExecutor, "laneCount", 2);
+        ReflectionTestUtils.setField(orderedRecordExecutor, "laneCapacity", 2);
+        orderedRecordExecutor.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        orderedRecordExecutor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Commit apenas até o maior offset contíguo concluído.")
+    public void testOffsetContiguo() {
+        var tracker = new OffsetTracker();
+        var acks = List.of(Mockito.mock(Acknowledgment.class), Mockito.mock(Acknowledgment.class),
+                Mockito.mock(Acknowledgment.class));
+        tracker.received(10);
+        tracker.received(11);
+        tracker.received(12);
+
+        assertThat(tracker.completed(11, acks.get(1)), nullValue());
+        assertThat(tracker.completed(12, acks.get(2)), nullValue());
+        assertThat(tracker.lag(), is(3));
+        assertThat(tracker.completed(10, acks.get(0)), is(acks.get(2)));
+        assertThat(tracker.lag(), is(0));
+    }
+
+    @Test
+    @DisplayName("Mensagens da mesma chave em ordem, com pausa do consumo quando a lane enche.")
+    public void testLaneSerialComPausa() throws InterruptedException {
+        var liberar = new CountDownLatch(1);
+        var concluidas = new CountDownLatch(3);
+        var ordem = new CopyOnWriteArrayList<Long>();
+        var ultimo = Mockito.mock(Acknowledgment.class);
+
+        for (long offset = 0; offset < 3; offset++) {
+            var record = new ConsumerRecord<>("transaction", 0, offset, "1210#1242", "{}");
+            var offsetAtual = offset;
+            orderedRecordExecutor.execute(LISTENER, record, offset == 2 ? ultimo : Mockito.mock(Acknowledgment.class), () -> {
+                await(liberar);
+                ordem.add(offsetAtual);
+                concluidas.countDown();
+            });
+        }
+        Mockito.verify(container).pause();
+        assertThat(orderedRecordExecutor.inFlight(), is(3));
+
+        liberar.countDown();
+        assertThat(concluidas.await(5, TimeUnit.SECONDS), is(true));
+        Mockito.verify(ultimo, Mockito.timeout(5000)).acknowledge();
+        Mockito.verify(container, Mockito.timeout(5000)).resume();
+        assertThat(ordem, is(List.of(0L, 1L, 2L)));
+    }
+
+    @Test
+    @DisplayName("Falha na mensagem segura o commit da partição até ela ser relida.")
+    public void testFalhaNaoConfirmaOffset() throws InterruptedException {
+        var concluidas = new CountDownLatch(2);
+        var acks = List.of(Mockito.mock(Acknowledgment.class), Mockito.mock(Acknowledgment.class));
+
+        orderedRecordExecutor.execute(LISTENER, new ConsumerRecord<>("transaction", 0, 0L, "1210#1242", "{}"), acks.get(0), () -> {
+            concluidas.countDown();
+            throw new IllegalStateException("falha");
+        });
+        orderedRecordExecutor.execute(LISTENER, new ConsumerRecord<>("transaction", 0, 1L, "1210#1242", "{}"), acks.get(1),
+                concluidas::countDown);
+
+        assertThat(concluidas.await(5, TimeUnit.SECONDS), is(true));
+        Mockito.verify(acks.get(0), Mockito.after(200).never()).acknowledge();
+        Mockito.verify(acks.get(1), Mockito.never()).acknowledge();
+        assertThat(orderedRecordExecutor.inFlight(), is(0));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
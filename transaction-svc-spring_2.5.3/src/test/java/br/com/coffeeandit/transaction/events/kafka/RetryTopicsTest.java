@@ -0,0 +1,85 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RetryTopicsTest {
+
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private RetryTopics retryTopics;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        kafkaTemplate = Mockito.mock(KafkaTemplate.class);
+        var enviado = new SettableListenableFuture<SendResult<String, byte[]>>();
+        enviado.set(null);
+        Mockito.when(kafkaTemplate.send(Mockito.<ProducerRecord<String, byte[]>>any())).thenReturn(enviado);
+        meterRegistry = new SimpleMeterRegistry();
+        retryTopics = new RetryTopics(kafkaTemplate, Mockito.mock(KafkaListenerEndpointRegistry.class), meterRegistry);
+        ReflectionTestUtils.setField(retryTopics, "delays", List.of(Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(60)));
+    }
+
+    @Test
+    @DisplayName("A falha percorre os níveis de retentativa até o DLT, preservando a origem.")
+    public void testCadeiaAteODlt() {
+        var record = new ConsumerRecord<>("transaction", 3, 42L, "0001#123", "{}".getBytes(StandardCharsets.UTF_8));
+        var destinos = List.of("transaction-retry-1000", "transaction-retry-10000", "transaction-retry-60000", "transaction-dlt");
+
+        for (var destino : destinos) {
+            var enviado = forward(record, new IllegalStateException("Dynamo indisponível"));
+            assertThat(enviado.topic(), is(destino));
+            assertThat(enviado.key(), is("0001#123"));
+            record = new ConsumerRecord<>(enviado.topic(), 0, 7L, enviado.key(), enviado.value());
+            enviado.headers().forEach(record.headers()::add);
+        }
+
+        assertThat(RetryTopics.originalTopic(record), is("transaction"));
+        assertThat(ByteBuffer.wrap(record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong(), is(42L));
+        assertThat(new String(record.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_MESSAGE).value(), StandardCharsets.UTF_8),
+                is("Dynamo indisponível"));
+        assertThat(RetryTopics.remaining(record), is(0L));
+        assertThat(meterRegistry.find(RetryTopics.FORWARDED).tag(RetryTopics.TIER, "transaction-dlt").counter().count(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Mensagem inválida vai direto para o DLT.")
+    public void testMensagemInvalida() {
+        var record = new ConsumerRecord<>("transaction_extorno", 0, 1L, (String) null, "{inválida".getBytes(StandardCharsets.UTF_8));
+
+        var enviado = forward(record, new JsonParseException(null, "Mensagem inválida"));
+
+        assertThat(enviado.topic(), is("transaction_extorno-dlt"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProducerRecord<String, byte[]> forward(final ConsumerRecord<String, byte[]> record, final Exception exception) {
+        Mockito.clearInvocations(kafkaTemplate);
+        retryTopics.forward(record, exception).join();
+        var captor = ArgumentCaptor.forClass(ProducerRecord.class);
+        Mockito.verify(kafkaTemplate).send(captor.capture());
+        return captor.getValue();
+    }
+}
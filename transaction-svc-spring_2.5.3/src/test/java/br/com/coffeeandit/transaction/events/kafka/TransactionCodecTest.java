@@ -0,0 +1,126 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import br.com.coffeeandit.transaction.domain.BeneficiatioDto;
+import br.com.coffeeandit.transaction.domain.Conta;
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
+import br.com.coffeeandit.transaction.domain.TipoTransacao;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class TransactionCodecTest {
+
+    // a mesma mensagem está nos testes do transaction-bff e do limites-svc: as três cópias do codec precisam concordar
+    private static final String REFERENCIA = "/kafka/transaction-v1.bin";
+
+    // o JSON do TransactionDTO deste serviço traz a propriedade derivada "analisada"
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private final TransactionCodec transactionCodec = new TransactionCodec(objectMapper);
+
+    @Test
+    @DisplayName("Transação completa preservada pelo formato binário.")
+    public void testBinario() throws Exception {
+        var transaction = getDataMock();
+
+        var decoded = transactionCodec.decode(TransactionCodec.encode(transaction));
+
+        assertThat(decoded.getUui(), is(transaction.getUui()));
+        assertThat(decoded.getValor(), is(transaction.getValor()));
+        assertThat(decoded.getData(), is(transaction.getData()));
+        assertThat(decoded.getConta().getCodigoAgencia(), is(1210L));
+        assertThat(decoded.getConta().getCodigoConta(), is(-1242L));
+        assertThat(decoded.getBeneficiario().getNomeFavorecido(), is("João da Silva"));
+        assertThat(decoded.getBeneficiario().getAgencia(), is("07649"));
+        assertThat(decoded.getBeneficiario().getCPF(), is(337786583L));
+        assertThat(decoded.getTipoTransacao(), is(TipoTransacao.TED));
+        assertThat(decoded.getSituacao(), is(SituacaoEnum.NAO_ANALISADA));
+    }
+
+    @Test
+    @DisplayName("Campos nulos, JSON e mensagens corrompidas.")
+    public void testCompatibilidade() throws Exception {
+        var parcial = new TransactionDTO();
+        parcial.setConta(new Conta());
+        var decoded = transactionCodec.decode(TransactionCodec.encode(parcial));
+        assertThat(decoded.getUui(), is(nullValue()));
+        assertThat(decoded.getConta().getCodigoConta(), is(nullValue()));
+        assertThat(decoded.getBeneficiario(), is(nullValue()));
+
+        var transaction = getDataMock();
+        var json = transactionCodec.decode(objectMapper.writeValueAsBytes(transaction));
+        assertThat(json.getUui(), is(transaction.getUui()));
+
+        var binary = TransactionCodec.encode(transaction);
+        Assertions.assertThrows(SerializationException.class,
+                () -> transactionCodec.decode(Arrays.copyOf(binary, binary.length - 4)));
+        binary[1] = 2;
+        Assertions.assertThrows(SerializationException.class, () -> transactionCodec.decode(binary));
+    }
+
+    @Test
+    @DisplayName("Mensagem binária com menos da metade dos bytes do JSON.")
+    public void testTamanho() throws Exception {
+        var transaction = getDataMock();
+        var json = objectMapper.writeValueAsBytes(transaction);
+        var binary = TransactionCodec.encode(transaction);
+
+        assertThat(binary.length, lessThan(json.length / 2));
+        assertThat(new String(json, StandardCharsets.UTF_8).contains("nomeFavorecido"), is(true));
+    }
+
+    @Test
+    @DisplayName("Mensagem de referência, compartilhada com o transaction-bff e o limites-svc.")
+    public void testMensagemDeReferencia() throws Exception {
+        var referencia = Objects.requireNonNull(getClass().getResourceAsStream(REFERENCIA)).readAllBytes();
+
+        var decoded = transactionCodec.decode(referencia);
+
+        assertThat(decoded.getUui(), is(UUID.fromString("5d3c1a7e-8b2f-4c6d-9e0a-1f2b3c4d5e6f")));
+        assertThat(decoded.getValor(), is(new BigDecimal("1234.56")));
+        assertThat(decoded.getData(), is(LocalDateTime.of(2021, 7, 20, 10, 15, 30, 123_000_000)));
+        assertThat(decoded.getConta().getCodigoConta(), is(1242L));
+        assertThat(decoded.getBeneficiario().getNomeFavorecido(), is("João da Silva"));
+        assertThat(decoded.getSituacao(), is(SituacaoEnum.ANALISADA));
+        assertThat(TransactionCodec.encode(decoded), is(referencia));
+    }
+
+    private TransactionDTO getDataMock() {
+        var transaction = new TransactionDTO();
+        transaction.setUui(UUID.randomUUID());
+        transaction.setValor(new BigDecimal("1234.56"));
+        transaction.setData(LocalDateTime.of(2021, 7, 20, 10, 15, 30, 123_000_000));
+        var conta = new Conta();
+        conta.setCodigoAgencia(1210L);
+        conta.setCodigoConta(-1242L);
+        transaction.setConta(conta);
+        var beneficiario = new BeneficiatioDto();
+        beneficiario.setCPF(337786583L);
+        beneficiario.setCodigoBanco(341L);
+        beneficiario.setAgencia("07649");
+        beneficiario.setConta("076491");
+        beneficiario.setNomeFavorecido("João da Silva");
+        transaction.setBeneficiario(beneficiario);
+        transaction.setTipoTransacao(TipoTransacao.TED);
+        transaction.setSituacao(SituacaoEnum.NAO_ANALISADA);
+        return transaction;
+    }
+}
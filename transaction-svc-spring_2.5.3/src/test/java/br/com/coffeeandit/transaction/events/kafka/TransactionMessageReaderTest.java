@@ -0,0 +1,189 @@
+package br.com.coffeeandit.transaction.events.kafka;
+
+import br.com.coffeeandit.transaction.business.TransactionDomain;
+import br.com.coffeeandit.transaction.domain.SituacaoEnum;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import br.com.coffeeandit.transaction.events.observer.TransactionObserverService;
+import br.com.coffeeandit.transaction.repository.IdempotencyMarkers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.messaging.Message;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.any;
+
+public class TransactionMessageReaderTest {
+
+    private static final String LIQUIDACAO_KEY = "chave" + TransactionMessageReader.LIQUIDACAO_KEY_SUFFIX;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private TransactionDomain transactionDomain;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+    private RetryTopics retryTopics;
+    private TransactionMessageReader transactionMessageReader;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        transactionDomain = Mockito.mock(TransactionDomain.class);
+        kafkaTemplate = Mockito.mock(KafkaTemplate.class);
+        var enviado = new SettableListenableFuture<SendResult<String, byte[]>>();
+        enviado.set(null);
+        Mockito.when(kafkaTemplate.send(Mockito.<Message<byte[]>>any())).thenReturn(enviado);
+        var idempotencyGuard = Mockito.mock(IdempotencyGuard.class);
+        Mockito.when(idempotencyGuard.once(any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<Mono<?>>>getArgument(1).get());
+        retryTopics = Mockito.mock(RetryTopics.class);
+        Mockito.when(retryTopics.forward(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        transactionMessageReader = new TransactionMessageReader(objectMapper, transactionDomain,
+                Mockito.mock(TransactionObserverService.class), kafkaTemplate, Mockito.mock(OrderedRecordExecutor.class),
+                idempotencyGuard, retryTopics, new TransactionCodec(objectMapper));
+    }
+
+    @Test
+    @DisplayName("Falha de uma mensagem não interrompe o lote, que é confirmado uma única vez.")
+    public void testLoteComFalhaIsolada() {
+        var tentativas = new AtomicInteger();
+        var comFalha = getDataMock(SituacaoEnum.ANALISADA);
+        Mockito.when(transactionDomain.aprovarTransacao(any())).thenAnswer(invocation -> {
+            TransactionDTO transaction = invocation.getArgument(0);
+            if (transaction.getUui().equals(comFalha.getUui()) && tentativas.getAndIncrement() == 0) {
+                return Mono.error(new IllegalStateException("Falha temporária"));
+            }
+            return Mono.just(transaction);
+        });
+        var acknowledgment = Mockito.mock(Acknowledgment.class);
+
+        transactionMessageReader.onConsumeExtornoBatch(List.of(
+                record(0, getDataMock(SituacaoEnum.ANALISADA)),
+                record(1, comFalha),
+                record(2, getDataMock(SituacaoEnum.REJEITADA)),
+                new ConsumerRecord<>("transaction_extorno", 0, 3, null, "{inválida".getBytes(StandardCharsets.UTF_8))), acknowledgment);
+
+        Mockito.verify(transactionDomain, Mockito.times(3)).aprovarTransacao(any());
+        Mockito.verify(kafkaTemplate, Mockito.times(2)).send(Mockito.<Message<byte[]>>any());
+        // só a mensagem inválida sai para o DLT; a falha temporária foi resolvida dentro do lote
+        Mockito.verify(retryTopics, Mockito.times(1)).forward(Mockito.argThat(record -> record.offset() == 3), any());
+        Mockito.verify(acknowledgment, Mockito.times(1)).acknowledge();
+    }
+
+    @Test
+    @DisplayName("Liquidação que falha no lote leva a mensagem para a retentativa.")
+    public void testLoteComFalhaNaLiquidacao() {
+        var semLiquidacao = getDataMock(SituacaoEnum.ANALISADA);
+        Mockito.when(transactionDomain.aprovarTransacao(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        Mockito.when(kafkaTemplate.send(Mockito.<Message<byte[]>>any())).thenAnswer(invocation -> {
+            var future = new SettableListenableFuture<SendResult<String, byte[]>>();
+            var payload = new String(invocation.<Message<byte[]>>getArgument(0).getPayload(), StandardCharsets.UTF_8);
+            if (payload.contains(semLiquidacao.getUui().toString())) {
+                future.setException(new IllegalStateException("Broker indisponível"));
+            } else {
+                future.set(null);
+            }
+            return future;
+        });
+        var acknowledgment = Mockito.mock(Acknowledgment.class);
+
+        transactionMessageReader.onConsumeExtornoBatch(List.of(
+                record(0, getDataMock(SituacaoEnum.ANALISADA)),
+                record(1, semLiquidacao)), acknowledgment);
+
+        Mockito.verify(retryTopics, Mockito.times(1)).forward(Mockito.argThat(record -> record.offset() == 1), any());
+        Mockito.verify(retryTopics, Mockito.never()).forward(Mockito.argThat(record -> record.offset() == 0), any());
+        Mockito.verify(acknowledgment, Mockito.times(1)).acknowledge();
+    }
+
+    @Test
+    @DisplayName("Liquidação que falha é enviada na retentativa, com a marca de idempotência liberada.")
+    public void testRetentativaDaLiquidacao() {
+        var idempotencyMarkers = Mockito.mock(IdempotencyMarkers.class);
+        Mockito.when(idempotencyMarkers.mark(LIQUIDACAO_KEY)).thenReturn(Mono.just(true));
+        Mockito.when(idempotencyMarkers.remove(LIQUIDACAO_KEY)).thenReturn(Mono.empty());
+        var reader = readerComMarcas(idempotencyMarkers);
+        Mockito.when(transactionDomain.aprovarTransacao(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        var falha = new SettableListenableFuture<SendResult<String, byte[]>>();
+        falha.setException(new IllegalStateException("Broker indisponível"));
+        var enviado = new SettableListenableFuture<SendResult<String, byte[]>>();
+        enviado.set(null);
+        Mockito.when(kafkaTemplate.send(Mockito.<Message<byte[]>>any())).thenReturn(falha).thenReturn(enviado);
+
+        var original = record(0, getDataMock(SituacaoEnum.ANALISADA));
+        original.headers().add(IdempotencyGuard.IDEMPOTENCY_KEY, "chave".getBytes(StandardCharsets.UTF_8));
+        reader.onConsumeExtorno(original, Mockito.mock(Acknowledgment.class));
+        Mockito.verify(retryTopics).forward(Mockito.eq(original), any());
+
+        var retentativa = new ConsumerRecord<String, byte[]>("transaction_extorno-retry-1000", 0, 0, null, original.value());
+        original.headers().forEach(header -> retentativa.headers().add(header));
+        retentativa.headers().add(KafkaHeaders.DLT_ORIGINAL_TOPIC, "transaction_extorno".getBytes(StandardCharsets.UTF_8));
+        reader.onConsumeRetry(retentativa, Mockito.mock(Acknowledgment.class));
+
+        Mockito.verify(kafkaTemplate, Mockito.times(2)).send(Mockito.<Message<byte[]>>any());
+        Mockito.verify(retryTopics).recovered(retentativa);
+        Mockito.verify(retryTopics, Mockito.times(1)).forward(any(), any());
+    }
+
+    @Test
+    @DisplayName("Retorno reentregue não envia a liquidação de novo.")
+    public void testRetornoReentregue() {
+        var idempotencyMarkers = Mockito.mock(IdempotencyMarkers.class);
+        Mockito.when(idempotencyMarkers.mark(LIQUIDACAO_KEY)).thenReturn(Mono.just(true)).thenReturn(Mono.just(false));
+        var reader = readerComMarcas(idempotencyMarkers);
+        Mockito.when(transactionDomain.aprovarTransacao(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        var retorno = record(0, getDataMock(SituacaoEnum.ANALISADA));
+        retorno.headers().add(IdempotencyGuard.IDEMPOTENCY_KEY, "chave".getBytes(StandardCharsets.UTF_8));
+        reader.onConsumeExtorno(retorno, Mockito.mock(Acknowledgment.class));
+        reader.onConsumeExtorno(retorno, Mockito.mock(Acknowledgment.class));
+
+        Mockito.verify(kafkaTemplate, Mockito.times(1)).send(Mockito.<Message<byte[]>>any());
+        Mockito.verify(idempotencyMarkers, Mockito.never()).mark("chave");
+        Mockito.verify(retryTopics, Mockito.never()).forward(any(), any());
+    }
+
+    private TransactionMessageReader readerComMarcas(final IdempotencyMarkers idempotencyMarkers) {
+        var idempotencyGuard = new IdempotencyGuard(idempotencyMarkers, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(idempotencyGuard, "ttl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(idempotencyGuard, "maximumSize", 100L);
+        idempotencyGuard.init();
+        var reader = new TransactionMessageReader(objectMapper, transactionDomain,
+                Mockito.mock(TransactionObserverService.class), kafkaTemplate, Mockito.mock(OrderedRecordExecutor.class),
+                idempotencyGuard, retryTopics, new TransactionCodec(objectMapper));
+        ReflectionTestUtils.setField(reader, "returnTopic", "transaction_extorno");
+        return reader;
+    }
+
+    // JSON e binário convivem no mesmo tópico durante a migração do formato
+    private ConsumerRecord<String, byte[]> record(final long offset, final TransactionDTO transaction) {
+        var value = offset % 2 == 0
+                ? String.format("{\"uui\": \"%s\", \"situacao\": \"%s\"}", transaction.getUui(), transaction.getSituacao())
+                .getBytes(StandardCharsets.UTF_8)
+                : TransactionCodec.encode(transaction);
+        return new ConsumerRecord<>("transaction_extorno", 0, offset, null, value);
+    }
+
+    private TransactionDTO getDataMock(final SituacaoEnum situacao) {
+        var transaction = new TransactionDTO();
+        transaction.setUui(UUID.randomUUID());
+        transaction.setSituacao(situacao);
+        return transaction;
+    }
+}
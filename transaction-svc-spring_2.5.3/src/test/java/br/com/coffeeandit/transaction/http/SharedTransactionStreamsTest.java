@@ -0,0 +1,135 @@
+package br.com.coffeeandit.transaction.http;
+
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SharedTransactionStreamsTest {
+
+    private static final String CONTA = "1210#1242";
+
+    private SimpleMeterRegistry meterRegistry;
+    private SharedTransactionStreams sharedTransactionStreams;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sharedTransactionStreams = new SharedTransactionStreams(new ObjectMapper().findAndRegisterModules(), meterRegistry);
+        ReflectionTestUtils.setField(sharedTransactionStreams, "bufferSize", 16);
+        ReflectionTestUtils.setField(sharedTransactionStreams, "replaySize", 2);
+        ReflectionTestUtils.setField(sharedTransactionStreams, "replayTtl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(sharedTransactionStreams, "snapshotSize", 10);
+        sharedTransactionStreams.init();
+    }
+
+    @Test
+    @DisplayName("Assinantes da mesma conta compartilham a consulta, que é encerrada com o último assinante.")
+    public void testConsultaCompartilhada() {
+        var consultas = new AtomicInteger();
+        var canceladas = new AtomicInteger();
+        Sinks.Many<List<TransactionDTO>> upstream = Sinks.many().multicast().directBestEffort();
+        var source = Flux.defer(() -> {
+            consultas.incrementAndGet();
+            return upstream.asFlux();
+        });
+
+        var primeiro = sharedTransactionStreams.share(CONTA, null, Flux::empty, () -> source).collectList().toFuture();
+        var segundo = sharedTransactionStreams.share(CONTA, null, Flux::empty, () -> source).collectList().toFuture();
+        upstream.tryEmitNext(List.of(getDataMock()));
+        upstream.tryEmitComplete();
+
+        var eventosPrimeiro = primeiro.join();
+        var eventosSegundo = segundo.join();
+        assertThat(consultas.get(), is(1));
+        assertThat(eventosPrimeiro.size(), is(1));
+        assertThat(eventosSegundo.get(0).data(), sameInstance(eventosPrimeiro.get(0).data()));
+        assertThat(meterRegistry.find(SharedTransactionStreams.UPSTREAM).counter().count(), is(1.0));
+        assertThat(meterRegistry.find(SharedTransactionStreams.UPSTREAM_SAVED).counter().count(), is(1.0));
+        assertThat(sharedTransactionStreams.subscribers(CONTA), is(0));
+
+        StepVerifier.create(sharedTransactionStreams.share(CONTA, null, Flux::empty, () -> Flux.<List<TransactionDTO>>never()
+                        .doOnCancel(canceladas::incrementAndGet)))
+                .then(() -> assertThat(sharedTransactionStreams.subscribers(CONTA), is(1)))
+                .thenCancel()
+                .verify();
+        assertThat(canceladas.get(), is(1));
+        assertThat(meterRegistry.find(SharedTransactionStreams.STREAMS).gauge().value(), is(0.0));
+    }
+
+    @Test
+    @DisplayName("Eventos só com as transações alteradas e reconexão pelo Last-Event-ID.")
+    public void testDeltaEReconexao() {
+        Sinks.Many<List<TransactionDTO>> upstream = Sinks.many().multicast().directBestEffort();
+        var primeira = getDataMock();
+        var segunda = getDataMock();
+        var ids = new String[2];
+
+        StepVerifier.create(sharedTransactionStreams.share(CONTA, null, Flux::empty, upstream::asFlux))
+                .then(() -> upstream.tryEmitNext(List.of(primeira)))
+                .assertNext(event -> {
+                    ids[0] = event.id();
+                    assertThat(event.data().contains(primeira.getUui().toString()), is(true));
+                })
+                .then(() -> {
+                    upstream.tryEmitNext(List.of(primeira));
+                    upstream.tryEmitNext(List.of(primeira, segunda));
+                })
+                .assertNext(event -> {
+                    ids[1] = event.id();
+                    assertThat(event.data().contains(primeira.getUui().toString()), is(false));
+                    assertThat(event.data().contains(segunda.getUui().toString()), is(true));
+                })
+                .thenCancel()
+                .verify();
+        assertThat(sequencia(ids[1]), is(sequencia(ids[0]) + 1));
+
+        // a reconexão reaproveita o histórico guardado depois que o último assinante saiu
+        StepVerifier.create(sharedTransactionStreams.share(CONTA, ids[0], Flux::empty, upstream::asFlux))
+                .assertNext(event -> assertThat(event.id(), is(ids[1])))
+                .thenCancel()
+                .verify();
+
+        // id de outra réplica dentro da faixa de sequências deste stream: snapshot do repositório, não replay
+        var outraEpoca = "outra" + SharedTransactionStreams.EPOCH_SEPARATOR + sequencia(ids[0]);
+        StepVerifier.create(sharedTransactionStreams.share(CONTA, outraEpoca, () -> Flux.just(primeira, segunda), upstream::asFlux))
+                .assertNext(event -> {
+                    assertThat(event.event(), is(TransactionController.TRANSACTION_SNAPSHOT));
+                    assertThat(event.id(), is(ids[1]));
+                    assertThat(event.data().contains(primeira.getUui().toString()), is(true));
+                    assertThat(event.data().contains(segunda.getUui().toString()), is(true));
+                })
+                .thenCancel()
+                .verify();
+
+        assertThat(meterRegistry.find(SharedTransactionStreams.UPSTREAM).counter().count(), is(3.0));
+        assertThat(meterRegistry.find(SharedTransactionStreams.REPLAYED).counter().count(), is(1.0));
+        assertThat(meterRegistry.find(SharedTransactionStreams.SNAPSHOTS).counter().count(), is(1.0));
+    }
+
+    private static long sequencia(final String id) {
+        return Long.parseLong(id.substring(id.indexOf(SharedTransactionStreams.EPOCH_SEPARATOR) + 1));
+    }
+
+    private TransactionDTO getDataMock() {
+        var transaction = new TransactionDTO();
+        transaction.setUui(UUID.randomUUID());
+        transaction.naoAnalisada();
+        return transaction;
+    }
+}
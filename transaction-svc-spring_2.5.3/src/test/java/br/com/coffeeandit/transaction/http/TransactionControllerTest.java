@@ -1,7 +1,9 @@
 package br.com.coffeeandit.transaction.http;
 
 import br.com.coffeeandit.transaction.infrastructure.TransactionBusiness;
+import br.com.coffeeandit.transaction.infrastructure.TransactionEventHub;
 import br.com.coffeeandit.transaction.domain.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
@@ -11,22 +13,34 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 
 @ExtendWith(SpringExtension.class)
 @WebFluxTest(controllers = TransactionController.class, properties = "spring.profiles.active=test")
-@ContextConfiguration(classes = {TransactionBusiness.class, TransactionController.class})
+@ContextConfiguration(classes = {TransactionBusiness.class, TransactionController.class, SharedTransactionStreams.class,
+        SimpleMeterRegistry.class})
 public class TransactionControllerTest {
 
     @Autowired
@@ -37,6 +51,9 @@ public class TransactionControllerTest {
     @MockBean
     private TransactionBusiness transactionBusiness;
 
+    @MockBean
+    private TransactionEventHub transactionEventHub;
+
     private TransactionDTO transactionDTO;
 
     @BeforeEach
@@ -45,12 +62,36 @@ public class TransactionControllerTest {
         transactionDTO = getDataMock();
     }
 
+    @Test
+    @DisplayName("Teste de SSE com eventos da própria conta, agrupados por transação.")
+    @Tag("V1")
+    public void testEventosDaConta() {
+        Mockito.when(transactionEventHub.subscribe(1210L, 1242L)).thenReturn(Flux.just(transactionDTO, transactionDTO));
+        Mockito.when(transactionEventHub.subscribeRemovals(1210L, 1242L)).thenReturn(Flux.empty());
+        Mockito.when(transactionBusiness.queryTransaction(1210L, 1242L)).thenReturn(Flux.empty());
+        var events = webClient.
+                get()
+                .uri("/v1/transactions?agencia=1210&conta=1242")
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+                .header("Content-type", MediaType.APPLICATION_JSON_VALUE)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<List<TransactionDTO>>>() {
+                })
+                .getResponseBody()
+                .collectList()
+                .block();
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).data().size(), is(1));
+        Mockito.verify(transactionBusiness, Mockito.never()).queryTransactionFewSeconds(any(), any());
+    }
+
     @Test
     @DisplayName("Teste de busca de transações pelo Id.")
     @Tag("V1")
     public void testFindById() {
         String uui = uuid.toString();
-        Mockito.when(transactionBusiness.retrieveItem(uui)).thenReturn(Optional.of(transactionDTO));
+        Mockito.when(transactionBusiness.retrieveItem(uui)).thenReturn(Mono.just(transactionDTO));
         webClient.
                 get()
                 .uri("/v1/transactions/" + uui)
@@ -66,7 +107,7 @@ public class TransactionControllerTest {
     @Tag("V1")
     public void testNotFoundById() {
         String uui = uuid.toString();
-        Mockito.when(transactionBusiness.retrieveItem(uui)).thenReturn(Optional.empty());
+        Mockito.when(transactionBusiness.retrieveItem(uui)).thenReturn(Mono.empty());
         webClient.
                 get()
                 .uri("/v1/transactions/" + uui)
@@ -82,7 +123,7 @@ public class TransactionControllerTest {
     @Tag("V1")
     public void testDeleteById() {
         String uui = uuid.toString();
-        Mockito.when(transactionBusiness.retrieveItem(uui)).thenReturn(Optional.of(transactionDTO));
+        Mockito.when(transactionBusiness.removeItem(uui)).thenReturn(Mono.just(transactionDTO));
         webClient.
                 delete().uri("/v1/transactions/" + uui)
                 .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
@@ -98,9 +139,8 @@ public class TransactionControllerTest {
         String uui = uuid.toString();
         var alteracaoSituacaoDTO = new AlteracaoSituacaoDTO();
         alteracaoSituacaoDTO.setSituacao(SituacaoEnum.REJEITADA);
-        Mockito.when(transactionBusiness.retrieveItem(uui)).thenReturn(Optional.of(transactionDTO));
         ///Mockito.when(transactionBusiness.updateItem(transactionDTO)).thenReturn(Optional.of(new UpdateItemOutcome(new UpdateItemResult())));
-        Mockito.when(transactionBusiness.updateAndRetrieveItem(transactionDTO)).thenReturn(Optional.of(transactionDTO));
+        Mockito.when(transactionBusiness.alterarSituacao(uui, SituacaoEnum.REJEITADA)).thenReturn(Mono.just(transactionDTO));
         webClient.
                 patch().uri("/v1/transactions/" + uui)
                 .body(BodyInserters.fromValue(alteracaoSituacaoDTO))
@@ -110,6 +150,54 @@ public class TransactionControllerTest {
                 .expectStatus().isNoContent();
     }
 
+    @Test
+    @DisplayName("Teste de busca de várias transações pelo Id.")
+    @Tag("V1")
+    public void testBatchGet() {
+        var uuids = List.of(uuid.toString(), UUID.randomUUID().toString());
+        Mockito.when(transactionBusiness.retrieveItems(uuids)).thenReturn(Flux.just(transactionDTO));
+        webClient.
+                post().uri("/v1/transactions/batch-get")
+                .body(BodyInserters.fromValue(uuids))
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE)
+                .header("Content-type", MediaType.APPLICATION_JSON_VALUE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(TransactionDTO.class).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Teste de histórico paginado com token de continuação.")
+    @Tag("V1")
+    public void testHistoricoPaginado() {
+        Mockito.when(transactionBusiness.queryTransactionPage(eq(1210L), eq(1242L), any(LocalDateTime.class),
+                        any(LocalDateTime.class), eq(TransactionController.MAX_HISTORY_LIMIT), isNull()))
+                .thenReturn(Mono.just(new TransactionPage(List.of(transactionDTO), "proxima")));
+        webClient.
+                get().uri("/v1/transactions/history?agencia=1210&conta=1242&from=2021-08-01T00:00:00&to=2021-08-31T23:59:59&limit=5000")
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(TransactionController.CONTINUATION_TOKEN, "proxima")
+                .expectBodyList(TransactionDTO.class).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Teste de busca de mais transações do que o permitido.")
+    @Tag("V1")
+    public void testBatchGetAcimaDoLimite() {
+        var uuids = Stream.generate(() -> UUID.randomUUID().toString())
+                .limit(TransactionController.MAX_BATCH_GET + 1)
+                .collect(Collectors.toList());
+        webClient.
+                post().uri("/v1/transactions/batch-get")
+                .body(BodyInserters.fromValue(uuids))
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE)
+                .header("Content-type", MediaType.APPLICATION_JSON_VALUE)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     private TransactionDTO getDataMock() {
 
 
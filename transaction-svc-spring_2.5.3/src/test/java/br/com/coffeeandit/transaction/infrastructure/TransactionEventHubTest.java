@@ -0,0 +1,94 @@
+package br.com.coffeeandit.transaction.infrastructure;
+
+import br.com.coffeeandit.transaction.domain.Conta;
+import br.com.coffeeandit.transaction.domain.TransactionDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TransactionEventHubTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransactionEventHub transactionEventHub;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        transactionEventHub = new TransactionEventHub(meterRegistry);
+        ReflectionTestUtils.setField(transactionEventHub, "bufferSize", 2);
+    }
+
+    @Test
+    @DisplayName("Eventos entregues somente aos assinantes da mesma conta.")
+    public void testEventosPorConta() {
+        var daConta = getDataMock(1242L);
+        StepVerifier.create(transactionEventHub.subscribe(1210L, 1242L))
+                .then(() -> {
+                    assertThat(meterRegistry.get(TransactionEventHub.SUBSCRIBERS).gauge().value(), is(1.0));
+                    transactionEventHub.publish(getDataMock(9999L));
+                    transactionEventHub.publish(daConta);
+                })
+                .expectNext(daConta)
+                .thenCancel()
+                .verify();
+
+        assertThat(transactionEventHub.subscribers(1210L, 1242L), is(0));
+        assertThat(meterRegistry.get(TransactionEventHub.SUBSCRIBERS).gauge().value(), is(0.0));
+        assertThat(meterRegistry.find(TransactionEventHub.SUBSCRIBERS).gauges().size(), is(1));
+    }
+
+    @Test
+    @DisplayName("Assinante lento descarta os eventos mais antigos.")
+    public void testBufferLimitado() {
+        var eventos = new TransactionDTO[]{getDataMock(1242L), getDataMock(1242L), getDataMock(1242L)};
+        StepVerifier.create(transactionEventHub.subscribe(1210L, 1242L), 0)
+                .then(() -> {
+                    for (var evento : eventos) {
+                        transactionEventHub.publish(evento);
+                    }
+                })
+                .thenRequest(2)
+                .expectNext(eventos[1], eventos[2])
+                .thenCancel()
+                .verify();
+
+        assertThat(meterRegistry.find(TransactionEventHub.DROPPED).counter().count(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Remoções entregues à conta, com o canal aberto até a última assinatura sair.")
+    public void testRemocoes() {
+        var removida = getDataMock(1242L);
+        StepVerifier.create(transactionEventHub.subscribeRemovals(1210L, 1242L))
+                .then(() -> {
+                    assertThat(transactionEventHub.subscribers(1210L, 1242L), is(0));
+                    transactionEventHub.publishRemoval(getDataMock(9999L));
+                    transactionEventHub.publishRemoval(removida);
+                })
+                .expectNext(removida.getUui())
+                .thenCancel()
+                .verify();
+
+        assertThat(meterRegistry.get(TransactionEventHub.SUBSCRIBERS).gauge().value(), is(0.0));
+    }
+
+    private TransactionDTO getDataMock(final Long codigoConta) {
+        var transactionDTO = new TransactionDTO();
+        transactionDTO.setUui(UUID.randomUUID());
+        transactionDTO.setData(LocalDateTime.now());
+        var conta = new Conta();
+        conta.setCodigoAgencia(1210L);
+        conta.setCodigoConta(codigoConta);
+        transactionDTO.setConta(conta);
+        return transactionDTO;
+    }
+}
@@ -0,0 +1,155 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.domain.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+
+public class DynamoBatchWriterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+    private TransactionItemMapper transactionItemMapper;
+    private DynamoBatchWriter dynamoBatchWriter;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dynamoDbAsyncClient = Mockito.mock(DynamoDbAsyncClient.class);
+        transactionItemMapper = new TransactionItemMapper(new AccountBuckets());
+        dynamoBatchWriter = new DynamoBatchWriter(dynamoDbAsyncClient, transactionItemMapper,
+                new DynamoCallMetrics(meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(dynamoBatchWriter, "flushInterval", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(dynamoBatchWriter, "maxRetries", 3);
+        ReflectionTestUtils.setField(dynamoBatchWriter, "backoff", Duration.ofMillis(1));
+        dynamoBatchWriter.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dynamoBatchWriter.stop();
+    }
+
+    @Test
+    @DisplayName("Agrupa as gravações em lotes de até 25 itens.")
+    public void testAgruparGravacoes() {
+        Mockito.when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+
+        Flux.range(0, 30)
+                .flatMap(index -> dynamoBatchWriter.write(getDataMock()))
+                .then()
+                .block(Duration.ofSeconds(5));
+
+        Mockito.verify(dynamoDbAsyncClient, Mockito.times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertThat(meterRegistry.get(DynamoBatchWriter.BATCH_FILL).summary().totalAmount(), is(30.0 / DynamoBatchWriter.MAX_BATCH_SIZE));
+    }
+
+    @Test
+    @DisplayName("Reenvia os itens não processados pelo BatchWriteItem.")
+    public void testReenviarNaoProcessados() {
+        Mockito.when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenAnswer(invocation -> {
+                    BatchWriteItemRequest request = invocation.getArgument(0);
+                    return CompletableFuture.completedFuture(BatchWriteItemResponse.builder()
+                            .unprocessedItems(request.requestItems())
+                            .build());
+                })
+                .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+
+        dynamoBatchWriter.write(getDataMock()).block(Duration.ofSeconds(5));
+
+        Mockito.verify(dynamoDbAsyncClient, Mockito.times(2)).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertThat(meterRegistry.get(DynamoBatchWriter.BATCH_RETRIES).counter().count(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Gravações da mesma transação no lote viram um único item, com a última versão.")
+    public void testGravacoesDuplicadas() {
+        Mockito.when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+        var primeira = getDataMock();
+        var reentrega = getDataMock();
+        reentrega.setUui(primeira.getUui());
+        reentrega.setValor(BigDecimal.ONE);
+
+        Mono.when(dynamoBatchWriter.write(primeira), dynamoBatchWriter.write(reentrega), dynamoBatchWriter.write(getDataMock()))
+                .block(Duration.ofSeconds(5));
+
+        var captor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        Mockito.verify(dynamoDbAsyncClient, Mockito.times(1)).batchWriteItem(captor.capture());
+        var writeRequests = captor.getValue().requestItems().get(DynamoRepository.TRANSACAO);
+        assertThat(writeRequests.size(), is(2));
+        assertThat(writeRequests.get(0).putRequest().item(), is(transactionItemMapper.toItem(reentrega)));
+    }
+
+    @Test
+    @DisplayName("Pipeline interrompido por um erro é reiniciado para as próximas gravações.")
+    @SuppressWarnings("unchecked")
+    public void testReiniciarPipeline() {
+        Mockito.when(dynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(BatchWriteItemResponse.builder().build()));
+        var pendingWrites = (Sinks.Many<Object>) ReflectionTestUtils.getField(dynamoBatchWriter, "pendingWrites");
+        pendingWrites.tryEmitError(new IllegalStateException("Falha no pipeline"));
+
+        dynamoBatchWriter.write(getDataMock()).block(Duration.ofSeconds(5));
+
+        Mockito.verify(dynamoDbAsyncClient, Mockito.times(1)).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    @Test
+    @DisplayName("Gravação depois do encerramento falha na hora, sem esperar um lote.")
+    public void testGravacaoEncerrada() {
+        dynamoBatchWriter.stop();
+
+        StepVerifier.create(dynamoBatchWriter.write(getDataMock()))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+
+        Mockito.verify(dynamoDbAsyncClient, Mockito.never()).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    private TransactionDTO getDataMock() {
+
+        var transactionDTO = new TransactionDTO();
+        transactionDTO.setData(LocalDateTime.now());
+        transactionDTO.setUui(UUID.randomUUID());
+        transactionDTO.setValor(BigDecimal.TEN);
+        transactionDTO.setTipoTransacao(TipoTransacao.TED);
+        var conta = new Conta();
+        conta.setCodigoAgencia(1210l);
+        conta.setCodigoConta(1242l);
+        transactionDTO.setConta(conta);
+        transactionDTO.naoAnalisada();
+        var beneficiario = new BeneficiatioDto();
+        beneficiario.setAgencia("1219");
+        beneficiario.setCodigoBanco(1212l);
+        beneficiario.setCPF(12240181l);
+        beneficiario.setNomeFavorecido("Favorecido");
+        transactionDTO.setBeneficiario(beneficiario);
+
+        return transactionDTO;
+    }
+}
@@ -0,0 +1,296 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.business.TransactionDomain;
+import br.com.coffeeandit.transaction.domain.*;
+import br.com.coffeeandit.transaction.infrastructure.TransactionBusiness;
+import br.com.coffeeandit.transaction.infrastructure.TransactionCache;
+import br.com.coffeeandit.transaction.infrastructure.TransactionEventHub;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.paginators.QueryPublisher;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+
+public class ReactiveDynamoRepositoryTest {
+
+    private static final String ACCOUNT_INDEX = "agenciaConta-dtTransaction-index";
+
+    private SimpleMeterRegistry meterRegistry;
+    private DynamoDbAsyncClient dynamoDbAsyncClient;
+    private AccountBuckets accountBuckets;
+    private TransactionItemMapper transactionItemMapper;
+    private ReactiveDynamoRepository repository;
+    private TransactionBusiness transactionBusiness;
+    private TransactionDomain transactionDomain;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dynamoDbAsyncClient = Mockito.mock(DynamoDbAsyncClient.class);
+        accountBuckets = new AccountBuckets();
+        ReflectionTestUtils.setField(accountBuckets, "index", "bk-dt-index");
+        ReflectionTestUtils.setField(accountBuckets, "bucket", Duration.ofHours(1));
+        ReflectionTestUtils.setField(accountBuckets, "shards", 2);
+        ReflectionTestUtils.setField(accountBuckets, "parallelism", 2);
+        transactionItemMapper = new TransactionItemMapper(accountBuckets);
+        var shardedAccountQuery = new ShardedAccountQuery(accountBuckets, transactionItemMapper, meterRegistry);
+        var transactionCache = new TransactionCache();
+        ReflectionTestUtils.setField(transactionCache, "transactionTtl", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(transactionCache, "transactionMaximumSize", 100);
+        ReflectionTestUtils.setField(transactionCache, "accountTtl", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(transactionCache, "accountMaximumSize", 100);
+        transactionCache.init();
+        var transactionHistoryPager = new TransactionHistoryPager(transactionItemMapper, shardedAccountQuery, new ObjectMapper());
+        ReflectionTestUtils.setField(transactionHistoryPager, "compactIndex", "ac-dt-index");
+        ReflectionTestUtils.setField(transactionHistoryPager, "legacyIndex", false);
+        repository = new ReactiveDynamoRepository(dynamoDbAsyncClient, transactionItemMapper,
+                new DynamoCallMetrics(meterRegistry), Mockito.mock(DynamoBatchWriter.class), transactionHistoryPager, shardedAccountQuery);
+        ReflectionTestUtils.setField(repository, "queryByIndex", true);
+        ReflectionTestUtils.setField(repository, "accountIndex", ACCOUNT_INDEX);
+        ReflectionTestUtils.setField(repository, "compactIndex", "ac-dt-index");
+        var transactionEventHub = new TransactionEventHub(meterRegistry);
+        ReflectionTestUtils.setField(transactionEventHub, "bufferSize", 16);
+        transactionBusiness = new TransactionBusiness(repository, transactionCache, transactionEventHub);
+        transactionDomain = new TransactionDomain(transactionBusiness);
+    }
+
+    @Test
+    @DisplayName("Inserção de transação em uma única chamada ao DynamoDB.")
+    public void testInserirTransacao() {
+        Mockito.when(dynamoDbAsyncClient.putItem(any(PutItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutItemResponse.builder().build()));
+        transactionDomain.inserirTransacao(getDataMock()).block();
+        assertThat(dynamoCalls(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Aprovação de transação não analisada abaixo do limite em uma única chamada ao DynamoDB.")
+    public void testAprovarTransacao() {
+        var dataMock = getDataMock();
+        var anterior = transactionItemMapper.toItem(dataMock);
+        Mockito.when(dynamoDbAsyncClient.updateItem(any(UpdateItemRequest.class))).thenAnswer(invocation -> {
+            UpdateItemRequest request = invocation.getArgument(0);
+            assertThat(request.conditionExpression(), is(DynamoRepository.ANALISAVEL));
+            assertThat(request.returnValues(), is(ReturnValue.ALL_NEW));
+            var atual = new HashMap<>(anterior);
+            atual.put(TransactionItemMapper.SITUACAO_V2, request.expressionAttributeValues().get(":s"));
+            return CompletableFuture.completedFuture(UpdateItemResponse.builder().attributes(atual).build());
+        });
+        var transaction = transactionDomain.aprovarTransacao(dataMock).block();
+        assertThat(transaction.getSituacao(), is(SituacaoEnum.APROVADA));
+        assertThat(dynamoCalls(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Aprovação recusada pela condição do DynamoDB quando o valor passa do limite.")
+    public void testAprovarTransacaoAcimaDoLimite() {
+        var dataMock = getDataMock();
+        dataMock.setValor(BigDecimal.valueOf(TransactionDomain.LIMITE_MAXIMO + 1));
+        Mockito.when(dynamoDbAsyncClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(ConditionalCheckFailedException.builder()
+                        .message("The conditional request failed").build()));
+        var erro = assertThrows(IllegalArgumentException.class, () -> transactionDomain.aprovarTransacao(dataMock).block());
+        assertThat(erro.getMessage(), is("Não foi possivel atualizar a transacao"));
+        assertThat(dynamoCalls(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Atualização de transação em uma única chamada ao DynamoDB.")
+    public void testAtualizarTransacao() {
+        var dataMock = getDataMock();
+        Mockito.when(dynamoDbAsyncClient.updateItem(any(UpdateItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(UpdateItemResponse.builder()
+                        .attributes(transactionItemMapper.toItem(dataMock)).build()));
+        transactionDomain.atualizarTransacao(dataMock).block();
+        transactionDomain.rejeitarTransacao(dataMock).block();
+        assertThat(dynamoCalls(), is(2.0));
+    }
+
+    @Test
+    @DisplayName("Remoção de transação em uma única chamada ao DynamoDB.")
+    public void testRemoverTransacao() {
+        var dataMock = getDataMock();
+        Mockito.when(dynamoDbAsyncClient.deleteItem(any(DeleteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(DeleteItemResponse.builder()
+                        .attributes(transactionItemMapper.toItem(dataMock)).build()));
+        transactionBusiness.removeItem(dataMock.getUui().toString()).block();
+        assertThat(dynamoCalls(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("Histórico paginado com uma Query por página, retomando pelo token de continuação.")
+    public void testHistoricoPaginado() {
+        var primeira = transactionItemMapper.toItem(getDataMock());
+        var segunda = transactionItemMapper.toItem(getDataMock());
+        var terceira = transactionItemMapper.toItem(getDataMock());
+        var chaveSegunda = Map.of(DynamoRepository.UUI, segunda.get(DynamoRepository.UUI),
+                TransactionItemMapper.AGENCIA_CONTA_V2, segunda.get(TransactionItemMapper.AGENCIA_CONTA_V2),
+                TransactionItemMapper.DATA_V2, segunda.get(TransactionItemMapper.DATA_V2));
+        Mockito.when(dynamoDbAsyncClient.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            QueryRequest request = invocation.getArgument(0);
+            if (!request.hasExclusiveStartKey()) {
+                return CompletableFuture.completedFuture(QueryResponse.builder()
+                        .items(List.of(primeira, segunda)).lastEvaluatedKey(chaveSegunda).build());
+            }
+            assertThat(request.exclusiveStartKey(), is(chaveSegunda));
+            return CompletableFuture.completedFuture(QueryResponse.builder().items(List.of(terceira)).build());
+        });
+
+        var end = LocalDateTime.now();
+        var start = end.minusDays(30);
+        var page = transactionBusiness.queryTransactionPage(1210L, 1242L, start, end, 2, null).block();
+        assertThat(page.getTransactions().size(), is(2));
+        assertThat(page.getCursor(), notNullValue());
+
+        var next = transactionBusiness.queryTransactionPage(1210L, 1242L, start, end, 2, page.getCursor()).block();
+        assertThat(next.getTransactions().size(), is(1));
+        assertThat(next.getCursor(), nullValue());
+        assertThat(dynamoCalls(), is(2.0));
+    }
+
+    @Test
+    @DisplayName("Consulta scatter/gather nos baldes e shards do período, intercalando os itens pela data.")
+    public void testConsultaParticionada() {
+        ReflectionTestUtils.setField(accountBuckets, "enabled", true);
+        var end = LocalDateTime.of(2021, 8, 10, 12, 30);
+        var start = end.minusHours(2);
+        var items = new HashMap<String, List<Map<String, AttributeValue>>>();
+        for (int minutos = 110; minutos > 0; minutos -= 20) {
+            var dataMock = getDataMock();
+            dataMock.setData(end.minusMinutes(minutos));
+            var item = transactionItemMapper.toItem(dataMock);
+            items.computeIfAbsent(item.get(TransactionItemMapper.BUCKET_V2).s(), bk -> new ArrayList<>()).add(item);
+        }
+        Mockito.when(dynamoDbAsyncClient.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            QueryRequest request = invocation.getArgument(0);
+            var bucketItems = List.<Map<String, AttributeValue>>of();
+            if ("bk-dt-index".equals(request.indexName())) {
+                bucketItems = items.getOrDefault(request.expressionAttributeValues().get(":bk").s(), List.of());
+            }
+            return CompletableFuture.completedFuture(QueryResponse.builder().items(bucketItems).build());
+        });
+        Mockito.when(dynamoDbAsyncClient.queryPaginator(any(QueryRequest.class)))
+                .thenAnswer(invocation -> new QueryPublisher(dynamoDbAsyncClient, invocation.getArgument(0)));
+
+        var transactions = transactionBusiness.queryTransaction(1210L, 1242L, start, end).collectList().block();
+
+        assertThat(transactions.size(), is(6));
+        for (int i = 1; i < transactions.size(); i++) {
+            assertThat(transactions.get(i - 1).getData().isBefore(transactions.get(i).getData()), is(true));
+        }
+        assertThat(items.keySet().stream().allMatch(bk -> bk.startsWith("1210#1242#20210810")), is(true));
+        assertThat(meterRegistry.find(ShardedAccountQuery.SHARD_FANOUT).summary().totalAmount(), is(6.0));
+    }
+
+    @Test
+    @DisplayName("Consulta pelo índice agenciaConta-dtTransaction, seguindo o LastEvaluatedKey entre as páginas.")
+    public void testConsultaPorIndiceDaConta() {
+        ReflectionTestUtils.setField(repository, "legacyIndex", true);
+        var end = LocalDateTime.of(2021, 8, 10, 12, 30);
+        var start = end.minusWeeks(1);
+        var primeira = getLegacyItem(end.minusDays(3));
+        var segunda = getLegacyItem(end.minusDays(2));
+        var terceira = getLegacyItem(end.minusDays(1));
+        var chaveSegunda = Map.of(DynamoRepository.UUI, segunda.get(DynamoRepository.UUI),
+                DynamoRepository.AGENCIA_CONTA, segunda.get(DynamoRepository.AGENCIA_CONTA),
+                DynamoRepository.DT_TRANSACTION, segunda.get(DynamoRepository.DT_TRANSACTION));
+        var consultas = new ArrayList<QueryRequest>();
+        Mockito.when(dynamoDbAsyncClient.query(any(QueryRequest.class))).thenAnswer(invocation -> {
+            QueryRequest request = invocation.getArgument(0);
+            if (!ACCOUNT_INDEX.equals(request.indexName())) {
+                return CompletableFuture.completedFuture(QueryResponse.builder().items(List.of()).build());
+            }
+            consultas.add(request);
+            if (!request.hasExclusiveStartKey()) {
+                return CompletableFuture.completedFuture(QueryResponse.builder()
+                        .items(List.of(primeira, segunda)).lastEvaluatedKey(chaveSegunda).build());
+            }
+            assertThat(request.exclusiveStartKey(), is(chaveSegunda));
+            return CompletableFuture.completedFuture(QueryResponse.builder().items(List.of(terceira)).build());
+        });
+        Mockito.when(dynamoDbAsyncClient.queryPaginator(any(QueryRequest.class)))
+                .thenAnswer(invocation -> new QueryPublisher(dynamoDbAsyncClient, invocation.getArgument(0)));
+
+        var transactions = transactionBusiness.queryTransaction(1210L, 1242L, start, end).collectList().block();
+
+        assertThat(consultas.size(), is(2));
+        var consulta = consultas.get(0);
+        assertThat(consulta.keyConditionExpression(), is(DynamoRepository.TRANSACOES_CONTA));
+        assertThat(consulta.expressionAttributeValues().get(":agenciaConta").s(), is("1210#1242"));
+        assertThat(consulta.expressionAttributeValues().get(":dataInicial").s(), is(start.toString()));
+        assertThat(consulta.expressionAttributeValues().get(":dataFinal").s(), is(end.toString()));
+        assertThat(transactions.stream().map(transaction -> transaction.getUui().toString()).collect(Collectors.toList()),
+                is(List.of(primeira.get(DynamoRepository.UUI).s(), segunda.get(DynamoRepository.UUI).s(),
+                        terceira.get(DynamoRepository.UUI).s())));
+        var transaction = transactions.get(2);
+        assertThat(transaction.getData(), is(end.minusDays(1)));
+        assertThat(transaction.getValor(), is(new BigDecimal("150.25")));
+        assertThat(transaction.getConta().getCodigoConta(), is(1242L));
+        assertThat(transaction.getSituacao(), is(SituacaoEnum.ANALISADA));
+    }
+
+    private double dynamoCalls() {
+        return meterRegistry.find(DynamoCallMetrics.DYNAMO_CALLS).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    // item gravado antes do layout compacto, o formato indexado pelo agenciaConta-dtTransaction-index
+    private Map<String, AttributeValue> getLegacyItem(final LocalDateTime data) {
+        return Map.of(
+                DynamoRepository.UUI, AttributeValue.builder().s(UUID.randomUUID().toString()).build(),
+                DynamoRepository.AGENCIA, AttributeValue.builder().n("1210").build(),
+                DynamoRepository.CONTA, AttributeValue.builder().n("1242").build(),
+                DynamoRepository.AGENCIA_CONTA, AttributeValue.builder().s("1210#1242").build(),
+                DynamoRepository.DT_TRANSACTION, AttributeValue.builder().s(data.toString()).build(),
+                DynamoRepository.VALOR, AttributeValue.builder().n("150.25").build(),
+                DynamoRepository.TIPOTRANSACAO, AttributeValue.builder().s(TipoTransacao.TED.name()).build(),
+                DynamoRepository.STATUS_RISCO, AttributeValue.builder().s(SituacaoEnum.ANALISADA.name()).build());
+    }
+
+    private TransactionDTO getDataMock() {
+
+        var transactionDTO = new TransactionDTO();
+        transactionDTO.setData(LocalDateTime.now());
+        transactionDTO.setUui(UUID.randomUUID());
+        transactionDTO.setValor(BigDecimal.TEN);
+        transactionDTO.setTipoTransacao(TipoTransacao.TED);
+        var conta = new Conta();
+        conta.setCodigoAgencia(1210l);
+        conta.setCodigoConta(1242l);
+        transactionDTO.setConta(conta);
+        transactionDTO.naoAnalisada();
+        var beneficiario = new BeneficiatioDto();
+        beneficiario.setAgencia("1219");
+        beneficiario.setCodigoBanco(1212l);
+        beneficiario.setCPF(12240181l);
+        beneficiario.setNomeFavorecido("Favorecido");
+        transactionDTO.setBeneficiario(beneficiario);
+
+        return transactionDTO;
+    }
+}
@@ -0,0 +1,86 @@
+package br.com.coffeeandit.transaction.repository;
+
+import br.com.coffeeandit.transaction.domain.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.UUID;
+
+import static br.com.coffeeandit.transaction.repository.DynamoRepository.*;
+import static br.com.coffeeandit.transaction.repository.TransactionItemMapper.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TransactionItemMapperTest {
+
+    private final TransactionItemMapper transactionItemMapper = new TransactionItemMapper(new AccountBuckets());
+
+    @Test
+    @DisplayName("Grava e lê o layout compacto.")
+    public void testLayoutCompacto() {
+        var transaction = getDataMock();
+        var item = transactionItemMapper.toItem(transaction);
+
+        assertThat(item.get(VERSAO).n(), is(String.valueOf(VERSAO_COMPACTA)));
+        assertThat(item.containsKey(NOME_FAVORECIDO), is(false));
+
+        var lida = transactionItemMapper.toTransaction(item);
+        assertThat(lida.getUui(), is(transaction.getUui()));
+        assertThat(lida.getData(), is(transaction.getData()));
+        assertThat(lida.getValor(), is(transaction.getValor()));
+        assertThat(lida.getSituacao(), is(SituacaoEnum.EM_ANALISE_HUMANA));
+        assertThat(lida.getTipoTransacao(), is(TipoTransacao.DOC));
+        assertThat(lida.getConta().getCodigoConta(), is(1242l));
+        assertThat(lida.getBeneficiario().getNomeFavorecido(), is("Favorecido"));
+    }
+
+    @Test
+    @DisplayName("Lê itens do layout anterior, inclusive com situação já atualizada no layout compacto.")
+    public void testLayoutAnterior() {
+        var uuid = UUID.randomUUID();
+        var item = new HashMap<String, AttributeValue>();
+        item.put(UUI, AttributeValue.builder().s(uuid.toString()).build());
+        item.put(VALOR, AttributeValue.builder().n("150.5").build());
+        item.put(TIPOTRANSACAO, AttributeValue.builder().s(TipoTransacao.TED.name()).build());
+        item.put(CONTA, AttributeValue.builder().n("1242").build());
+        item.put(AGENCIA, AttributeValue.builder().n("1210").build());
+        item.put(NOME_FAVORECIDO, AttributeValue.builder().s("Favorecido").build());
+        item.put(DT_TRANSACTION, AttributeValue.builder().s("2021-08-10T10:15:30").build());
+        item.put(SITUACAO_V2, transactionItemMapper.situacao(SituacaoEnum.REJEITADA));
+
+        var lida = transactionItemMapper.toTransaction(item);
+        assertThat(lida.getUui(), is(uuid));
+        assertThat(lida.getValor(), is(new BigDecimal("150.5")));
+        assertThat(lida.getData(), is(LocalDateTime.parse("2021-08-10T10:15:30")));
+        assertThat(lida.getTipoTransacao(), is(TipoTransacao.TED));
+        assertThat(lida.getConta().getCodigoAgencia(), is(1210l));
+        assertThat(lida.getSituacao(), is(SituacaoEnum.REJEITADA));
+        assertThat(lida.getBeneficiario().getNomeFavorecido(), is("Favorecido"));
+    }
+
+    private TransactionDTO getDataMock() {
+
+        var transactionDTO = new TransactionDTO();
+        transactionDTO.setData(LocalDateTime.parse("2021-08-10T10:15:30.123"));
+        transactionDTO.setUui(UUID.randomUUID());
+        transactionDTO.setValor(new BigDecimal("1234.56"));
+        transactionDTO.setTipoTransacao(TipoTransacao.DOC);
+        var conta = new Conta();
+        conta.setCodigoAgencia(1210l);
+        conta.setCodigoConta(1242l);
+        transactionDTO.setConta(conta);
+        transactionDTO.analiseHumana();
+        var beneficiario = new BeneficiatioDto();
+        beneficiario.setAgencia("1219");
+        beneficiario.setCodigoBanco(1212l);
+        beneficiario.setCPF(12240181l);
+        beneficiario.setNomeFavorecido("Favorecido");
+        transactionDTO.setBeneficiario(beneficiario);
+
+        return transactionDTO;
+    }
+}
@@ -5,5 +5,27 @@ bin/zookeeper-server-start.sh config/zookeeper.properties
 cd /home/cleber/programs/kafka_2.11-2.3.1;
   bin/kafka-server-start.sh config/server.properties
 
-/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 1 --topic transaction
-/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 1 --topic transaction_extorno
+/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 12 --topic transaction
+/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 12 --topic transaction_extorno
+/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 12 --topic liquidacao
+
+# Retentativa (app.kafka.retry.delays) e DLT dos tópicos consumidos pelo transaction-svc
+for topic in transaction transaction_extorno; do
+  for tier in retry-1000 retry-10000 retry-60000 dlt; do
+    /home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 12 --topic $topic-$tier
+  done
+done
+# Retentativa e DLT do limites-svc
+for tier in retry-1000 retry-10000 retry-60000 dlt; do
+  /home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --create --bootstrap-server localhost:9092 --replication-factor 1 --partitions 12 --topic transaction-limites-$tier
+done
+
+# Migração dos tópicos criados com uma partição:
+# 1) publicar os produtores com a chave agencia#conta e os consumidores com
+#    CooperativeStickyAssignor,RangeAssignor (versões antigas e novas convivem no mesmo grupo);
+# 2) esperar o lag dos grupos zerar, para que nenhuma conta tenha mensagens pendentes na partição 0;
+# 3) aumentar as partições (a chave passa a mapear para outra partição, por isso o passo 2);
+# 4) num próximo deploy, deixar só o CooperativeStickyAssignor.
+/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --alter --bootstrap-server localhost:9092 --partitions 12 --topic transaction
+/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --alter --bootstrap-server localhost:9092 --partitions 12 --topic transaction_extorno
+/home/cleber/programs/kafka_2.11-2.3.1/bin/kafka-topics.sh --alter --bootstrap-server localhost:9092 --partitions 12 --topic liquidacao